@@ -235,8 +235,9 @@ public class UserItem extends AbstractFlexibleItem<UserItem.UserItemViewHolder>
 
     @Override
     public boolean filter(String constraint) {
-        return participant.getDisplayName() != null &&
-                StringUtils.containsIgnoreCase(participant.getDisplayName().trim(), constraint);
+        return (participant.getDisplayName() != null &&
+                StringUtils.containsIgnoreCase(participant.getDisplayName().trim(), constraint)) ||
+                (participant.getUserId() != null && StringUtils.containsIgnoreCase(participant.getUserId(), constraint));
     }
 
     @Override
@@ -39,9 +39,9 @@ import com.facebook.drawee.view.SimpleDraweeView;
 import com.google.android.flexbox.FlexboxLayout;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.models.RenderedRichMessage;
 import com.nextcloud.talk.models.json.chat.ChatMessage;
 import com.nextcloud.talk.utils.DisplayUtils;
-import com.nextcloud.talk.utils.TextMatchers;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.stfalcon.chatkit.messages.MessageHolders;
 import com.vanniktech.emoji.EmojiTextView;
@@ -83,6 +83,7 @@ public class MagicIncomingTextMessageViewHolder
     @Override
     public void onBind(ChatMessage message) {
         super.onBind(message);
+        itemView.setTag(R.id.chat_message, message);
         String author;
 
         if (!TextUtils.isEmpty(author = message.getActorDisplayName())) {
@@ -130,22 +131,24 @@ public class MagicIncomingTextMessageViewHolder
         float emojiSize = DisplayUtils.getDefaultEmojiFontSize(messageText);
 
         if (messageParameters != null && messageParameters.size() > 0) {
+            for (RenderedRichMessage.MentionRange mentionRange : message.getMentionRanges()) {
+                int color;
+
+                if (mentionRange.getId() != null && mentionRange.getId().equals(message.getActiveUserId())) {
+                    color = NextcloudTalkApplication.getSharedApplication().getResources().getColor(R.color
+                            .nc_incoming_text_mention_you);
+                } else {
+                    color = NextcloudTalkApplication.getSharedApplication().getResources().getColor(R.color
+                            .nc_incoming_text_mention_others);
+                }
+
+                messageString = DisplayUtils.colorRange(messageString, mentionRange.getStart(),
+                        mentionRange.getEnd(), color);
+            }
+
             for (String key : messageParameters.keySet()) {
                 Map<String, String> individualHashMap = message.getMessageParameters().get(key);
-                if (individualHashMap.get("type").equals("user") || individualHashMap.get("type").equals("guest")) {
-                    int color;
-
-                    if (individualHashMap.get("id").equals(message.getActiveUserId())) {
-                        color = NextcloudTalkApplication.getSharedApplication().getResources().getColor(R.color
-                                .nc_incoming_text_mention_you);
-                    } else {
-                        color = NextcloudTalkApplication.getSharedApplication().getResources().getColor(R.color
-                                .nc_incoming_text_mention_others);
-                    }
-
-                    messageString = DisplayUtils.searchAndColor(messageText.getText().toString(),
-                            messageString, "@" + individualHashMap.get("name"), color);
-                } else if (individualHashMap.get("type").equals("file")) {
+                if (individualHashMap.get("type").equals("file")) {
                     itemView.setOnClickListener(v -> {
                         Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(individualHashMap.get("link")));
                         context.startActivity(browserIntent);
@@ -154,7 +157,7 @@ public class MagicIncomingTextMessageViewHolder
                 }
             }
 
-        } else if (TextMatchers.isMessageWithSingleEmoticonOnly(message.getText())) {
+        } else if (message.isSingleEmoticonOnly()) {
             emojiSize *= 2.5f;
             layoutParams.setWrapBefore(true);
             itemView.setSelected(true);
@@ -36,9 +36,9 @@ import butterknife.ButterKnife;
 import com.google.android.flexbox.FlexboxLayout;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.models.RenderedRichMessage;
 import com.nextcloud.talk.models.json.chat.ChatMessage;
 import com.nextcloud.talk.utils.DisplayUtils;
-import com.nextcloud.talk.utils.TextMatchers;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.stfalcon.chatkit.messages.MessageHolders;
 import com.vanniktech.emoji.EmojiTextView;
@@ -71,6 +71,7 @@ public class MagicOutcomingTextMessageViewHolder extends MessageHolders.Outcomin
     @Override
     public void onBind(ChatMessage message) {
         super.onBind(message);
+        itemView.setTag(R.id.chat_message, message);
 
         HashMap<String, HashMap<String, String>> messageParameters = message.getMessageParameters();
 
@@ -78,6 +79,8 @@ public class MagicOutcomingTextMessageViewHolder extends MessageHolders.Outcomin
 
         Context context = NextcloudTalkApplication.getSharedApplication().getApplicationContext();
         itemView.setSelected(false);
+        // not yet acknowledged by the server
+        itemView.setAlpha(message.isPending() ? 0.5f : 1.0f);
         messageTimeView.setTextColor(context.getResources().getColor(R.color.white60));
 
         FlexboxLayout.LayoutParams layoutParams = (FlexboxLayout.LayoutParams) messageTimeView.getLayoutParams();
@@ -86,16 +89,17 @@ public class MagicOutcomingTextMessageViewHolder extends MessageHolders.Outcomin
         float emojiSize = DisplayUtils.getDefaultEmojiFontSize(messageText);
 
         if (messageParameters != null && messageParameters.size() > 0) {
+            for (RenderedRichMessage.MentionRange mentionRange : message.getMentionRanges()) {
+                if (mentionRange.getId() == null || !mentionRange.getId().equals(message.getActiveUserId())) {
+                    messageString = DisplayUtils.colorRange(messageString, mentionRange.getStart(),
+                            mentionRange.getEnd(), NextcloudTalkApplication.getSharedApplication().getResources()
+                                    .getColor(R.color.nc_outcoming_text_default));
+                }
+            }
+
             for (String key : messageParameters.keySet()) {
                 Map<String, String> individualHashMap = message.getMessageParameters().get(key);
-                if (individualHashMap.get("type").equals("user") || individualHashMap.get("type").equals("guest")) {
-                    if (!individualHashMap.get("id").equals(message.getActiveUserId())) {
-                        messageString = DisplayUtils.searchAndColor(messageText.getText().toString(),
-                                messageString, "@" + individualHashMap.get("name"), NextcloudTalkApplication
-                                        .getSharedApplication().getResources().getColor(R.color.nc_outcoming_text_default));
-                    }
-
-                } else if (individualHashMap.get("type").equals("file")) {
+                if (individualHashMap.get("type").equals("file")) {
                     itemView.setOnClickListener(v -> {
                         Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(individualHashMap.get("link")));
                         context.startActivity(browserIntent);
@@ -104,7 +108,7 @@ public class MagicOutcomingTextMessageViewHolder extends MessageHolders.Outcomin
                 }
             }
 
-        } else if (TextMatchers.isMessageWithSingleEmoticonOnly(message.getText())) {
+        } else if (message.isSingleEmoticonOnly()) {
             emojiSize *= 2.5f;
             layoutParams.setWrapBefore(true);
             messageTimeView.setTextColor(context.getResources().getColor(R.color.warm_grey_four));
@@ -47,6 +47,7 @@ public class MagicPreviewMessageViewHolder extends MessageHolders.IncomingImageM
     @Override
     public void onBind(ChatMessage message) {
         super.onBind(message);
+        itemView.setTag(R.id.chat_message, message);
 
         if (userAvatar != null) {
             if (message.isGrouped) {
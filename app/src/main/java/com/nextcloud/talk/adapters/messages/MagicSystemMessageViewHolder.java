@@ -29,12 +29,11 @@ import android.view.View;
 import androidx.core.view.ViewCompat;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.models.RenderedRichMessage;
 import com.nextcloud.talk.models.json.chat.ChatMessage;
 import com.nextcloud.talk.utils.DisplayUtils;
 import com.stfalcon.chatkit.messages.MessageHolders;
 
-import java.util.Map;
-
 public class MagicSystemMessageViewHolder extends MessageHolders.IncomingTextMessageViewHolder<ChatMessage> {
 
     public MagicSystemMessageViewHolder(View itemView) {
@@ -44,6 +43,7 @@ public class MagicSystemMessageViewHolder extends MessageHolders.IncomingTextMes
     @Override
     public void onBind(ChatMessage message) {
         super.onBind(message);
+        itemView.setTag(R.id.chat_message, message);
 
         Resources resources = NextcloudTalkApplication.getSharedApplication().getResources();
 
@@ -55,22 +55,16 @@ public class MagicSystemMessageViewHolder extends MessageHolders.IncomingTextMes
         Spannable messageString = new SpannableString(message.getText());
 
         Context context = NextcloudTalkApplication.getSharedApplication().getApplicationContext();
-        if (message.getMessageParameters() != null && message.getMessageParameters().size() > 0) {
-            for (String key : message.getMessageParameters().keySet()) {
-                Map<String, String> individualHashMap = message.getMessageParameters().get(key);
-                int color;
-                if (individualHashMap.get("type").equals("user") || individualHashMap.get("type").equals("guest")) {
-
-                    if (individualHashMap.get("id").equals(message.getActiveUserId())) {
-                        color = context.getResources().getColor(R.color.nc_incoming_text_mention_you);
-                    } else {
-                        color = context.getResources().getColor(R.color.nc_incoming_text_mention_others);
-                    }
-
-                    messageString = DisplayUtils.searchAndColor(message.getText(),
-                            messageString, "@" + individualHashMap.get("name"), color);
-                }
+        for (RenderedRichMessage.MentionRange mentionRange : message.getMentionRanges()) {
+            int color;
+            if (mentionRange.getId() != null && mentionRange.getId().equals(message.getActiveUserId())) {
+                color = context.getResources().getColor(R.color.nc_incoming_text_mention_you);
+            } else {
+                color = context.getResources().getColor(R.color.nc_incoming_text_mention_others);
             }
+
+            messageString = DisplayUtils.colorRange(messageString, mentionRange.getStart(), mentionRange.getEnd(),
+                    color);
         }
 
         text.setText(messageString);
@@ -0,0 +1,105 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.api;
+
+/**
+ * Tracks the health of one server. After a run of failed requests the breaker opens and requests fail
+ * right away instead of adding to the load of a server that is restarting or overloaded. Once the open
+ * period is over a single probe request is let through (half-open); if it succeeds the breaker closes,
+ * otherwise it opens again for twice as long.
+ */
+public class CircuitBreaker {
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long INITIAL_OPEN_MILLIS = 5 * 1000;
+    private static final long MAX_OPEN_MILLIS = 2 * 60 * 1000;
+    // how long the other requests wait while the probe of a half-open breaker is running
+    private static final long PROBE_WAIT_MILLIS = 1000;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openMillis = INITIAL_OPEN_MILLIS;
+    private long openUntil;
+    private boolean probeRunning;
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Returns 0 if a request may be sent now, otherwise the time until the breaker lets one through.
+     */
+    synchronized long tryAcquire() {
+        switch (state) {
+            case OPEN:
+                long now = System.currentTimeMillis();
+                if (now < openUntil) {
+                    return openUntil - now;
+                }
+                state = State.HALF_OPEN;
+                probeRunning = true;
+                return 0;
+            case HALF_OPEN:
+                if (probeRunning) {
+                    return PROBE_WAIT_MILLIS;
+                }
+                probeRunning = true;
+                return 0;
+            default:
+                return 0;
+        }
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeRunning = false;
+        openMillis = INITIAL_OPEN_MILLIS;
+        state = State.CLOSED;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        probeRunning = false;
+
+        if (state == State.HALF_OPEN) {
+            open(Math.min(openMillis * 2, MAX_OPEN_MILLIS));
+        } else if (state == State.CLOSED && consecutiveFailures >= FAILURE_THRESHOLD) {
+            open(INITIAL_OPEN_MILLIS);
+        }
+    }
+
+    /**
+     * A canceled request, or one that failed because the device is offline, says nothing about the server,
+     * but must not keep the probe slot taken.
+     */
+    synchronized void onInconclusive() {
+        probeRunning = false;
+    }
+
+    private void open(long millis) {
+        openMillis = millis;
+        openUntil = System.currentTimeMillis() + millis;
+        state = State.OPEN;
+    }
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+}
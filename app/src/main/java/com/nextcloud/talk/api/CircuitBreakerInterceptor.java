@@ -0,0 +1,134 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.api;
+
+import androidx.annotation.NonNull;
+import com.nextcloud.talk.dagger.modules.RestModule;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Puts a {@link CircuitBreaker} in front of every server the shared client talks to. Connection errors
+ * and the answers of a server that is down or restarting (502, 503, 504) count as failures, anything
+ * else the server answered counts as success. While a breaker is open requests fail with a
+ * {@link CircuitBreakerOpenException}, which {@link RetryPolicy} waits out before retrying.
+ * <p>
+ * Long polls are left out: they would hold the probe of a half-open breaker for as long as the server keeps
+ * them open, and their timeouts say little about the server. Neither do errors of a device that is offline.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+    private static final CircuitBreakerInterceptor holder = new CircuitBreakerInterceptor();
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new HashMap<>();
+
+    public static CircuitBreakerInterceptor getInstance() {
+        return holder;
+    }
+
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        if (RestModule.TimeoutInterceptor.getLongPollSeconds(chain.request()) >= 0) {
+            return chain.proceed(chain.request());
+        }
+
+        HttpUrl url = chain.request().url();
+        String server = url.scheme() + "://" + url.host() + ":" + url.port();
+        CircuitBreaker circuitBreaker = getCircuitBreaker(server);
+
+        long retryAfterMillis = circuitBreaker.tryAcquire();
+        if (retryAfterMillis > 0) {
+            ApplicationWideMetricsHolder.getInstance().incrementCounter("circuit_breaker.rejected_requests", 1);
+            throw new CircuitBreakerOpenException(server, retryAfterMillis);
+        }
+
+        CircuitBreaker.State previousState = circuitBreaker.getState();
+        Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            if (chain.call().isCanceled() || isOffline(e)) {
+                circuitBreaker.onInconclusive();
+            } else {
+                circuitBreaker.onFailure();
+                onStateChecked(server, previousState, circuitBreaker.getState());
+            }
+            throw e;
+        }
+
+        int code = response.code();
+        if (code == 502 || code == 503 || code == 504) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.onSuccess();
+        }
+        onStateChecked(server, previousState, circuitBreaker.getState());
+
+        return response;
+    }
+
+    // the server can't be blamed if the device has no network to resolve or reach it with
+    private boolean isOffline(IOException e) {
+        return e instanceof UnknownHostException || e instanceof NoRouteToHostException;
+    }
+
+    private synchronized CircuitBreaker getCircuitBreaker(String server) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(server);
+        if (circuitBreaker == null) {
+            circuitBreaker = new CircuitBreaker();
+            circuitBreakers.put(server, circuitBreaker);
+        }
+
+        return circuitBreaker;
+    }
+
+    private synchronized void onStateChecked(String server, CircuitBreaker.State previousState,
+                                             CircuitBreaker.State state) {
+        if (previousState == state) {
+            return;
+        }
+
+        ApplicationWideMetricsHolder metricsHolder = ApplicationWideMetricsHolder.getInstance();
+        if (state == CircuitBreaker.State.OPEN) {
+            metricsHolder.incrementCounter("circuit_breaker.opened", 1);
+        } else if (state == CircuitBreaker.State.CLOSED) {
+            metricsHolder.incrementCounter("circuit_breaker.closed", 1);
+        }
+
+        // 0 is closed, 1 half-open and 2 open
+        metricsHolder.setGauge("circuit_breaker.state." + server, state.ordinal());
+
+        int openServers = 0;
+        for (CircuitBreaker circuitBreaker : circuitBreakers.values()) {
+            if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+                openServers++;
+            }
+        }
+        metricsHolder.setGauge("circuit_breaker.open_servers", openServers);
+    }
+}
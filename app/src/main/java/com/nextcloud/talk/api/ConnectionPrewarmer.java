@@ -0,0 +1,182 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.api;
+
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opens a connection to the server of every account ahead of the first real request, by fetching
+ * status.php when the app comes to the foreground or a push arrives. The connection then waits in the
+ * pool of the shared client, so the first request that needs it skips DNS, TCP and the TLS handshake.
+ *
+ * {@link NetworkTelemetry} reports every connection of the shared client back, which records whether the
+ * first request after a pre-warm found the warm connection, and how long the handshake it saved took.
+ */
+public class ConnectionPrewarmer {
+    private static final String TAG = "ConnectionPrewarmer";
+    // well below the five minutes OkHttp keeps an idle connection around
+    private static final long PREWARM_INTERVAL_MILLIS = 60 * 1000;
+
+    private static final ConnectionPrewarmer holder = new ConnectionPrewarmer();
+
+    private final Map<String, Long> lastPrewarmTimes = new HashMap<>();
+    // handshake paid by the pre-warm of a server that has not seen a real request since
+    private final Map<String, Long> pendingHandshakeMillis = new HashMap<>();
+
+    public static ConnectionPrewarmer getInstance() {
+        return holder;
+    }
+
+    public void prewarm(OkHttpClient okHttpClient, List<UserEntity> userEntities) {
+        for (UserEntity userEntity : userEntities) {
+            if (!userEntity.getScheduledForDeletion()) {
+                prewarm(okHttpClient, userEntity.getBaseUrl());
+            }
+        }
+    }
+
+    public void prewarm(OkHttpClient okHttpClient, String baseUrl) {
+        HttpUrl url = HttpUrl.parse(baseUrl + ApiUtils.getUrlPostfixForStatus());
+        if (url == null) {
+            return;
+        }
+
+        String server = getServer(url);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Long lastPrewarmTime = lastPrewarmTimes.get(server);
+            if (lastPrewarmTime != null && now - lastPrewarmTime < PREWARM_INTERVAL_MILLIS) {
+                return;
+            }
+            lastPrewarmTimes.put(server, now);
+        }
+
+        Request request = new Request.Builder()
+                .url(url)
+                .cacheControl(CacheControl.FORCE_NETWORK)
+                .build();
+
+        // newBuilder() keeps the connection pool, the listener keeps status.php out of the telemetry
+        okHttpClient.newBuilder()
+                .eventListener(new PrewarmListener())
+                .build()
+                .newCall(request)
+                .enqueue(new Callback() {
+                    @Override
+                    public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                        Log.d(TAG, "Failed to pre-warm a connection to " + server);
+                        ApplicationWideMetricsHolder.getInstance().incrementCounter("connections.prewarm_failures", 1);
+                    }
+
+                    @Override
+                    public void onResponse(@NonNull Call call, @NonNull Response response) {
+                        response.close();
+                    }
+                });
+    }
+
+    /**
+     * Called once per request of the shared client, with the time spent on DNS, TCP and TLS, or -1 when a
+     * pooled connection was reused.
+     */
+    void onRequestConnected(HttpUrl url, long handshakeMillis) {
+        onConnectionAcquired(getServer(url), false, handshakeMillis);
+    }
+
+    private synchronized void onConnectionAcquired(String server, boolean isPrewarm, long handshakeMillis) {
+        ApplicationWideMetricsHolder metricsHolder = ApplicationWideMetricsHolder.getInstance();
+
+        if (isPrewarm) {
+            if (handshakeMillis >= 0) {
+                pendingHandshakeMillis.put(server, handshakeMillis);
+                metricsHolder.recordTiming("connections.prewarm_handshake", handshakeMillis);
+            } else {
+                metricsHolder.incrementCounter("connections.prewarm_already_warm", 1);
+            }
+            return;
+        }
+
+        Long savedHandshakeMillis = pendingHandshakeMillis.remove(server);
+        if (savedHandshakeMillis != null) {
+            if (handshakeMillis < 0) {
+                metricsHolder.incrementCounter("connections.prewarm_hits", 1);
+                metricsHolder.recordTiming("connections.prewarm_saved_handshake", savedHandshakeMillis);
+            } else {
+                // the warm connection was gone by the time it was needed
+                metricsHolder.incrementCounter("connections.prewarm_misses", 1);
+            }
+        }
+
+        if (handshakeMillis >= 0) {
+            metricsHolder.recordTiming("connections.cold_handshake", handshakeMillis);
+        }
+    }
+
+    private static String getServer(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port();
+    }
+
+    private class PrewarmListener extends EventListener {
+        private long handshakeStartNanos = -1;
+        private long handshakeMillis = -1;
+        private boolean connectionAcquired;
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            if (handshakeStartNanos < 0) {
+                handshakeStartNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            if (handshakeStartNanos < 0) {
+                handshakeStartNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            handshakeMillis = (System.nanoTime() - handshakeStartNanos) / 1000000;
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            // follow-ups and redirects acquire again, only the first connection of a call counts
+            if (!connectionAcquired) {
+                connectionAcquired = true;
+                onConnectionAcquired(getServer(call.request().url()), true, handshakeMillis);
+            }
+        }
+    }
+}
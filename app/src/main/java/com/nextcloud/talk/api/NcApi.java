@@ -24,6 +24,7 @@ import androidx.annotation.Nullable;
 import com.nextcloud.talk.models.json.call.CallOverall;
 import com.nextcloud.talk.models.json.capabilities.CapabilitiesOverall;
 import com.nextcloud.talk.models.json.chat.ChatOverall;
+import com.nextcloud.talk.models.json.chat.ChatOverallSingleMessage;
 import com.nextcloud.talk.models.json.generic.GenericOverall;
 import com.nextcloud.talk.models.json.generic.Status;
 import com.nextcloud.talk.models.json.mention.MentionOverall;
@@ -61,6 +62,7 @@ public interface NcApi {
 
      */
     @GET
+    @Streaming
     Observable<ResponseBody> getContactsWithSearchParam(@Header("Authorization") String authorization, @Url String url,
                                                         @Nullable @Query("shareTypes[]") List<String> listOfShareTypes, @QueryMap Map<String, Object> options);
 
@@ -71,6 +73,14 @@ public interface NcApi {
     @GET
     Observable<RoomsOverall> getRooms(@Header("Authorization") String authorization, @Url String url);
 
+    /*
+        Same as getRooms, but answered with 304 and no body while the list still matches the ETag
+     */
+    @GET
+    Observable<Response<RoomsOverall>> getRoomsIfNoneMatch(@Header("Authorization") String authorization,
+                                                           @Nullable @Header("If-None-Match") String eTag,
+                                                           @Url String url);
+
     /*
         Server URL is: baseUrl + ocsApiVersion + spreedApiVersion + /room/roomToken
     */
@@ -275,9 +285,9 @@ public interface NcApi {
 
     @FormUrlEncoded
     @POST
-    Observable<GenericOverall> sendChatMessage(@Header("Authorization") String authorization, @Url String url,
-                                               @Field("message") CharSequence message,
-                                               @Field("actorDisplayName") String actorDisplayName);
+    Observable<ChatOverallSingleMessage> sendChatMessage(@Header("Authorization") String authorization, @Url String url,
+                                                          @Field("message") CharSequence message,
+                                                          @Field("actorDisplayName") String actorDisplayName);
 
     @GET
     Observable<MentionOverall> getMentionAutocompleteSuggestions(@Header("Authorization") String authorization,
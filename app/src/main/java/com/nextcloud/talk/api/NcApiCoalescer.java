@@ -0,0 +1,118 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.api;
+
+import com.nextcloud.talk.models.json.capabilities.CapabilitiesOverall;
+import com.nextcloud.talk.models.json.rooms.RoomOverall;
+import com.nextcloud.talk.models.json.rooms.RoomsOverall;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import io.reactivex.Observable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sits in front of {@link NcApi} for the GETs that several screens and workers issue at the same time,
+ * like fetching the conversations when a push opens the app. Identical requests of the same account
+ * that overlap share one network call and its result. Optionally the result is kept for a short while,
+ * so requests that only just missed each other are answered without going to the server.
+ */
+public class NcApiCoalescer {
+    private static final long CAPABILITIES_TTL_MILLIS = 30 * 1000;
+
+    private final Map<String, Observable<?>> inFlightRequests = new HashMap<>();
+    private final Map<String, CachedResult> cachedResults = new HashMap<>();
+
+    public Observable<RoomsOverall> getRooms(NcApi ncApi, String credentials, String url) {
+        return coalesce(credentials, url, 0, ncApi.getRooms(credentials, url));
+    }
+
+    public Observable<RoomOverall> getRoom(NcApi ncApi, String credentials, String url) {
+        return coalesce(credentials, url, 0, ncApi.getRoom(credentials, url));
+    }
+
+    public Observable<CapabilitiesOverall> getCapabilities(NcApi ncApi, String credentials, String url) {
+        return coalesce(credentials, url, CAPABILITIES_TTL_MILLIS, ncApi.getCapabilities(credentials, url));
+    }
+
+    /**
+     * Returns the request, or the already running request with the same credentials and url (including
+     * the query). The request is expected to emit a single result; with a positive TTL that result is
+     * replayed to later subscribers until it expires. A failed request is not kept, so retrying it goes
+     * to the server again.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Observable<T> coalesce(String credentials, String url, long resultTtlMillis, Observable<T> request) {
+        String key = credentials + "\n" + url;
+
+        return Observable.defer(() -> {
+            synchronized (this) {
+                CachedResult cachedResult = cachedResults.get(key);
+                if (cachedResult != null) {
+                    if (System.currentTimeMillis() < cachedResult.expiresAt) {
+                        ApplicationWideMetricsHolder.getInstance().incrementCounter("requests.coalescer_cache_hits", 1);
+                        return Observable.just((T) cachedResult.result);
+                    }
+                    cachedResults.remove(key);
+                }
+
+                Observable<T> inFlightRequest = (Observable<T>) inFlightRequests.get(key);
+                if (inFlightRequest != null) {
+                    ApplicationWideMetricsHolder.getInstance().incrementCounter("requests.coalesced", 1);
+                    return inFlightRequest;
+                }
+
+                // the key only gets a new request after this one has terminated and removed itself
+                Observable<T> sharedRequest = request
+                        .doOnNext(result -> {
+                            if (resultTtlMillis > 0) {
+                                putCachedResult(key, result, resultTtlMillis);
+                            }
+                        })
+                        .doFinally(() -> removeInFlightRequest(key))
+                        // late subscribers still get the result if they join before the request completes
+                        .replay(1)
+                        .refCount();
+                inFlightRequests.put(key, sharedRequest);
+
+                return sharedRequest;
+            }
+        });
+    }
+
+    private synchronized void putCachedResult(String key, Object result, long resultTtlMillis) {
+        cachedResults.put(key, new CachedResult(result, System.currentTimeMillis() + resultTtlMillis));
+    }
+
+    private synchronized void removeInFlightRequest(String key) {
+        inFlightRequests.remove(key);
+    }
+
+    private static class CachedResult {
+        private final Object result;
+        private final long expiresAt;
+
+        CachedResult(Object result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
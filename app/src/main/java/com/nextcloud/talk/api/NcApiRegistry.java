@@ -0,0 +1,67 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.api;
+
+import okhttp3.JavaNetCookieJar;
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+
+import java.net.CookieManager;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands out one {@link NcApi} per account for work that runs outside of the current account, like
+ * handling a push. Every account gets its own cookies, while the connection pool, dispatcher and cache
+ * are those of the shared client, so a request reuses any connection that is still open to the server.
+ */
+public class NcApiRegistry {
+    private final Retrofit retrofit;
+    private final OkHttpClient okHttpClient;
+    private final Map<Long, NcApi> ncApis = new HashMap<>();
+
+    public NcApiRegistry(Retrofit retrofit, OkHttpClient okHttpClient) {
+        this.retrofit = retrofit;
+        this.okHttpClient = okHttpClient;
+    }
+
+    public synchronized NcApi getNcApi(long internalUserId) {
+        NcApi ncApi = ncApis.get(internalUserId);
+
+        if (ncApi == null) {
+            // newBuilder() keeps the pool, dispatcher, cache and interceptors of the shared client
+            OkHttpClient accountHttpClient = okHttpClient.newBuilder()
+                    .cookieJar(new JavaNetCookieJar(new CookieManager()))
+                    .build();
+            ncApi = retrofit.newBuilder().client(accountHttpClient).build().create(NcApi.class);
+            ncApis.put(internalUserId, ncApi);
+        }
+
+        return ncApi;
+    }
+
+    /**
+     * Drops the client and with it the cookies of a removed account.
+     */
+    public synchronized void removeAccount(long internalUserId) {
+        ncApis.remove(internalUserId);
+    }
+}
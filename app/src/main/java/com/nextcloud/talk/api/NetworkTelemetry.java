@@ -0,0 +1,341 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.api;
+
+import com.nextcloud.talk.dagger.modules.RestModule;
+import okhttp3.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latency histograms for the phases of every request of the shared client, split by the kind of
+ * endpoint it talks to, together with transferred bytes and how often a pooled connection was reused.
+ * {@link #getReport()} renders them as plain text for the diagnostics section of the settings.
+ */
+public class NetworkTelemetry {
+    private static final NetworkTelemetry holder = new NetworkTelemetry();
+
+    private final Map<EndpointClass, EndpointStatistics> statistics = new EnumMap<>(EndpointClass.class);
+
+    private NetworkTelemetry() {
+        clear();
+    }
+
+    public static NetworkTelemetry getInstance() {
+        return holder;
+    }
+
+    public EventListener.Factory getEventListenerFactory() {
+        return call -> new TelemetryListener(EndpointClass.fromRequest(call.request()));
+    }
+
+    public synchronized void clear() {
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            statistics.put(endpointClass, new EndpointStatistics());
+        }
+    }
+
+    /**
+     * Returns something like "120 requests, 93% on reused connections" for a one line summary.
+     */
+    public synchronized String getSummary() {
+        long requests = 0;
+        long reusedConnections = 0;
+        for (EndpointStatistics endpointStatistics : statistics.values()) {
+            requests += endpointStatistics.requests;
+            reusedConnections += endpointStatistics.reusedConnections;
+        }
+
+        return String.format(Locale.US, "%d requests, %d%% on reused connections", requests,
+                percentage(reusedConnections, requests));
+    }
+
+    public synchronized String getReport() {
+        StringBuilder report = new StringBuilder();
+
+        for (Map.Entry<EndpointClass, EndpointStatistics> entry : statistics.entrySet()) {
+            EndpointStatistics endpointStatistics = entry.getValue();
+            if (endpointStatistics.requests == 0) {
+                continue;
+            }
+
+            report.append(String.format(Locale.US, "%s: %d requests, %d failed, %d%% reused connections, " +
+                            "%d KiB sent, %d KiB received\n",
+                    entry.getKey().name().toLowerCase(Locale.US), endpointStatistics.requests,
+                    endpointStatistics.failures,
+                    percentage(endpointStatistics.reusedConnections, endpointStatistics.requests),
+                    endpointStatistics.bytesSent / 1024, endpointStatistics.bytesReceived / 1024));
+
+            for (Phase phase : Phase.values()) {
+                Histogram histogram = endpointStatistics.histograms.get(phase);
+                if (histogram.count > 0) {
+                    report.append("  ").append(phase.name().toLowerCase(Locale.US)).append(' ')
+                            .append(histogram).append('\n');
+                }
+            }
+        }
+
+        return report.toString();
+    }
+
+    private synchronized void onCallFinished(EndpointClass endpointClass, long[] phaseMillis, boolean failed,
+                                             boolean reusedConnection, long bytesSent, long bytesReceived) {
+        EndpointStatistics endpointStatistics = statistics.get(endpointClass);
+
+        endpointStatistics.requests++;
+        if (failed) {
+            endpointStatistics.failures++;
+        }
+        if (reusedConnection) {
+            endpointStatistics.reusedConnections++;
+        }
+        endpointStatistics.bytesSent += bytesSent;
+        endpointStatistics.bytesReceived += bytesReceived;
+
+        for (Phase phase : Phase.values()) {
+            if (phaseMillis[phase.ordinal()] >= 0) {
+                endpointStatistics.histograms.get(phase).add(phaseMillis[phase.ordinal()]);
+            }
+        }
+    }
+
+    private static int percentage(long part, long total) {
+        return total == 0 ? 0 : (int) (part * 100 / total);
+    }
+
+    public enum EndpointClass {
+        // LONG_POLL are the chat and signaling requests the server holds open until there is something new; their
+        // time to first byte is the wait for news, so they would drown out the timings of CHAT and SIGNALING
+        ROOM, CHAT, SIGNALING, LONG_POLL, AVATAR, CAPABILITIES, OTHER;
+
+        // matches the urls built by ApiUtils
+        static EndpointClass fromRequest(Request request) {
+            String path = request.url().encodedPath();
+
+            if (RestModule.TimeoutInterceptor.getLongPollSeconds(request) >= 0) {
+                return LONG_POLL;
+            } else if (path.contains("/avatar/")) {
+                return AVATAR;
+            } else if (path.contains("/apps/spreed/api/v1/signaling")) {
+                return SIGNALING;
+            } else if (path.contains("/apps/spreed/api/v1/chat/")) {
+                return CHAT;
+            } else if (path.contains("/apps/spreed/api/v1/room") || path.contains("/apps/spreed/api/v1/call/")) {
+                return ROOM;
+            } else if (path.endsWith("/cloud/capabilities")) {
+                return CAPABILITIES;
+            }
+
+            return OTHER;
+        }
+    }
+
+    private enum Phase {
+        // TLS is part of connect, time to first byte runs from sending the request to the response headers
+        DNS, CONNECT, TLS, TTFB, BODY, TOTAL
+    }
+
+    private static class EndpointStatistics {
+        private final Map<Phase, Histogram> histograms = new EnumMap<>(Phase.class);
+        private long requests;
+        private long failures;
+        private long reusedConnections;
+        private long bytesSent;
+        private long bytesReceived;
+
+        EndpointStatistics() {
+            for (Phase phase : Phase.values()) {
+                histograms.put(phase, new Histogram());
+            }
+        }
+    }
+
+    private static class Histogram {
+        private static final long[] BUCKET_LIMITS_MILLIS = {10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000,
+                30000, 60000};
+
+        private final long[] bucketCounts = new long[BUCKET_LIMITS_MILLIS.length + 1];
+        private long count;
+        private long maxMillis;
+
+        void add(long millis) {
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MILLIS.length && millis > BUCKET_LIMITS_MILLIS[bucket]) {
+                bucket++;
+            }
+
+            bucketCounts[bucket]++;
+            count++;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        /**
+         * Returns the upper limit of the bucket that holds the given percentile, capped by the maximum.
+         */
+        long getPercentile(int percentile) {
+            long rank = (count * percentile + 99) / 100;
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_LIMITS_MILLIS.length; bucket++) {
+                seen += bucketCounts[bucket];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_LIMITS_MILLIS[bucket], maxMillis);
+                }
+            }
+
+            return maxMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + " p50<=" + getPercentile(50) + "ms p90<=" + getPercentile(90) + "ms p99<=" +
+                    getPercentile(99) + "ms max=" + maxMillis + "ms";
+        }
+    }
+
+    private class TelemetryListener extends EventListener {
+        private final EndpointClass endpointClass;
+        private final long[] phaseStartNanos = new long[Phase.values().length];
+        private final long[] phaseMillis = new long[Phase.values().length];
+        private long handshakeStartNanos = -1;
+        private long handshakeMillis = -1;
+        private boolean connected;
+        private boolean connectionAcquired;
+        private long bytesSent;
+        private long bytesReceived;
+
+        TelemetryListener(EndpointClass endpointClass) {
+            this.endpointClass = endpointClass;
+            for (int i = 0; i < phaseMillis.length; i++) {
+                phaseMillis[i] = -1;
+            }
+        }
+
+        private void start(Phase phase) {
+            phaseStartNanos[phase.ordinal()] = System.nanoTime();
+        }
+
+        private void end(Phase phase) {
+            // keeps the first measurement when a call connects or reads more than once
+            if (phaseMillis[phase.ordinal()] < 0 && phaseStartNanos[phase.ordinal()] != 0) {
+                phaseMillis[phase.ordinal()] = (System.nanoTime() - phaseStartNanos[phase.ordinal()]) / 1000000;
+            }
+        }
+
+        @Override
+        public void callStart(Call call) {
+            start(Phase.TOTAL);
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            start(Phase.DNS);
+            if (handshakeStartNanos < 0) {
+                handshakeStartNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            end(Phase.DNS);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            start(Phase.CONNECT);
+            if (handshakeStartNanos < 0) {
+                handshakeStartNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            start(Phase.TLS);
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            end(Phase.TLS);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            end(Phase.CONNECT);
+            connected = true;
+            handshakeMillis = (System.nanoTime() - handshakeStartNanos) / 1000000;
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (!connectionAcquired) {
+                connectionAcquired = true;
+                ConnectionPrewarmer.getInstance().onRequestConnected(call.request().url(),
+                        connected ? handshakeMillis : -1);
+            }
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            start(Phase.TTFB);
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            bytesSent += byteCount;
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            end(Phase.TTFB);
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            start(Phase.BODY);
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            end(Phase.BODY);
+            bytesReceived += byteCount;
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            end(Phase.TOTAL);
+            onCallFinished(endpointClass, phaseMillis, false, connectionAcquired && !connected, bytesSent,
+                    bytesReceived);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            end(Phase.TOTAL);
+            onCallFinished(endpointClass, phaseMillis, true, connectionAcquired && !connected, bytesSent,
+                    bytesReceived);
+        }
+    }
+}
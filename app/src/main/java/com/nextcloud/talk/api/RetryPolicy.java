@@ -0,0 +1,115 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.api;
+
+import android.text.TextUtils;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.BooleanSupplier;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Retries API calls after errors that are likely to go away: connection problems and the server
+ * answering with 408, 429, 500, 502, 503 or 504. Everything else, like a 404 or a parse error, is
+ * passed on right away. Between attempts it waits an exponentially growing delay with random jitter,
+ * so clients don't come back to a restarted server all at the same moment, and never less than the
+ * server asked for with Retry-After or the {@link CircuitBreakerInterceptor} needs until it lets a
+ * request through again.
+ *
+ * A result resets the count of attempts, so long polls and pings only give up after consecutive errors.
+ * Retrofit {@link Response}s with one of the statuses above are treated like errors as well.
+ */
+public class RetryPolicy {
+    private static final long BASE_DELAY_MILLIS = 1000;
+    private static final long MAX_DELAY_MILLIS = 30 * 1000;
+    private static final Random random = new Random();
+
+    public static <T> ObservableTransformer<T, T> retry(int maxRetries) {
+        return retryWhile(maxRetries, () -> true);
+    }
+
+    /**
+     * Like {@link #retry(int)}, but gives up as soon as the condition is no longer met, e.g. after
+     * leaving the call.
+     */
+    public static <T> ObservableTransformer<T, T> retryWhile(int maxRetries, BooleanSupplier condition) {
+        return upstream -> Observable.defer(() -> {
+            AtomicInteger failedAttempts = new AtomicInteger();
+
+            return upstream
+                    .doOnNext(item -> {
+                        if (item instanceof Response && isRetryableStatus(((Response) item).code())) {
+                            throw new HttpException((Response) item);
+                        }
+                        failedAttempts.set(0);
+                    })
+                    .retryWhen(errors -> errors.flatMap(throwable -> {
+                        int attempt = failedAttempts.incrementAndGet();
+
+                        if (!isRetryable(throwable) || !condition.getAsBoolean()) {
+                            return Observable.error(throwable);
+                        } else if (attempt > maxRetries) {
+                            ApplicationWideMetricsHolder.getInstance().incrementCounter("retries.exhausted", 1);
+                            return Observable.error(throwable);
+                        }
+
+                        ApplicationWideMetricsHolder.getInstance().incrementCounter("retries.scheduled", 1);
+                        return Observable.timer(getDelayMillis(attempt, throwable), TimeUnit.MILLISECONDS);
+                    }));
+        });
+    }
+
+    public static boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof HttpException) {
+            return isRetryableStatus(((HttpException) throwable).code());
+        }
+
+        return throwable instanceof IOException;
+    }
+
+    private static boolean isRetryableStatus(int code) {
+        return code == 408 || code == 429 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    private static long getDelayMillis(int attempt, Throwable throwable) {
+        long delayMillis = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt - 1, 16));
+        // somewhere between half and all of the delay
+        delayMillis = delayMillis / 2 + (long) (random.nextDouble() * (delayMillis / 2));
+
+        if (throwable instanceof CircuitBreakerOpenException) {
+            delayMillis = Math.max(delayMillis, ((CircuitBreakerOpenException) throwable).getRetryAfterMillis());
+        } else if (throwable instanceof HttpException && ((HttpException) throwable).response() != null) {
+            String retryAfter = ((HttpException) throwable).response().headers().get("Retry-After");
+            if (!TextUtils.isEmpty(retryAfter) && TextUtils.isDigitsOnly(retryAfter)) {
+                delayMillis = Math.max(delayMillis, Math.min(MAX_DELAY_MILLIS, Long.parseLong(retryAfter) * 1000));
+            }
+        }
+
+        return delayMillis;
+    }
+}
@@ -23,7 +23,10 @@ package com.nextcloud.talk.application;
 import android.content.Context;
 import android.os.Build;
 import android.util.Log;
+import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.OnLifecycleEvent;
+import androidx.lifecycle.ProcessLifecycleOwner;
 import androidx.multidex.MultiDex;
 import androidx.multidex.MultiDexApplication;
 import androidx.work.OneTimeWorkRequest;
@@ -34,6 +37,7 @@ import autodagger.AutoInjector;
 import com.facebook.cache.disk.DiskCacheConfig;
 import com.facebook.drawee.backends.pipeline.Fresco;
 import com.facebook.imagepipeline.core.ImagePipelineConfig;
+import com.nextcloud.talk.api.ConnectionPrewarmer;
 import com.nextcloud.talk.dagger.modules.BusModule;
 import com.nextcloud.talk.dagger.modules.ContextModule;
 import com.nextcloud.talk.dagger.modules.DatabaseModule;
@@ -45,18 +49,26 @@ import com.nextcloud.talk.jobs.SignalingSettingsJob;
 import com.nextcloud.talk.utils.ClosedInterfaceImpl;
 import com.nextcloud.talk.utils.DeviceUtils;
 import com.nextcloud.talk.utils.DisplayUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.OkHttpNetworkFetcherWithCache;
 import com.nextcloud.talk.utils.database.arbitrarystorage.ArbitraryStorageModule;
+import com.nextcloud.talk.utils.database.chat.ChatMessageStorageModule;
+import com.nextcloud.talk.utils.database.contacts.ContactDirectoryStorageModule;
+import com.nextcloud.talk.utils.database.conversations.ConversationListStorageModule;
+import com.nextcloud.talk.utils.database.outbox.OutgoingMessageStorageModule;
 import com.nextcloud.talk.utils.database.user.UserModule;
+import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.webrtc.MagicWebRTCUtils;
 import com.vanniktech.emoji.EmojiManager;
 import com.vanniktech.emoji.twitter.TwitterEmojiProvider;
+import io.reactivex.Completable;
 import okhttp3.OkHttpClient;
 import org.webrtc.PeerConnectionFactory;
 import org.webrtc.voiceengine.WebRtcAudioManager;
 import org.webrtc.voiceengine.WebRtcAudioUtils;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.concurrent.TimeUnit;
 
@@ -68,6 +80,10 @@ import java.util.concurrent.TimeUnit;
                 RestModule.class,
                 UserModule.class,
                 ArbitraryStorageModule.class,
+                ChatMessageStorageModule.class,
+                OutgoingMessageStorageModule.class,
+                ConversationListStorageModule.class,
+                ContactDirectoryStorageModule.class,
         }
 )
 
@@ -81,6 +97,11 @@ public class NextcloudTalkApplication extends MultiDexApplication implements Lif
     protected NextcloudTalkApplicationComponent componentApplication;
     @Inject
     OkHttpClient okHttpClient;
+    @Inject
+    @Named(RestModule.IMAGES)
+    OkHttpClient imageHttpClient;
+    @Inject
+    UserUtils userUtils;
     //endregion
 
     public static NextcloudTalkApplication getSharedApplication() {
@@ -124,7 +145,7 @@ public class NextcloudTalkApplication extends MultiDexApplication implements Lif
         componentApplication.inject(this);
 
         ImagePipelineConfig imagePipelineConfig = ImagePipelineConfig.newBuilder(this)
-                .setNetworkFetcher(new OkHttpNetworkFetcherWithCache(okHttpClient))
+                .setNetworkFetcher(new OkHttpNetworkFetcherWithCache(imageHttpClient))
                 .setMainDiskCacheConfig(DiskCacheConfig.newBuilder(this)
                         .setMaxCacheSize(0)
                         .setMaxCacheSizeOnLowDiskSpace(0)
@@ -157,6 +178,15 @@ public class NextcloudTalkApplication extends MultiDexApplication implements Lif
         WorkManager.getInstance().cancelUniqueWork("DailyCapabilitiesUpdateWork");
         EmojiManager.install(new TwitterEmojiProvider());
 
+        ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
+    }
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_START)
+    public void onMoveToForeground() {
+        Completable.fromAction(() -> ConnectionPrewarmer.getInstance().prewarm(okHttpClient, userUtils.getUsers()))
+                .subscribeOn(MagicSchedulers.disk())
+                .subscribe(() -> {
+                }, throwable -> Log.w(TAG, "Failed to pre-warm connections", throwable));
     }
 
     @Override
@@ -182,6 +212,10 @@ public class NextcloudTalkApplication extends MultiDexApplication implements Lif
                 .restModule(new RestModule())
                 .userModule(new UserModule())
                 .arbitraryStorageModule(new ArbitraryStorageModule())
+                .chatMessageStorageModule(new ChatMessageStorageModule())
+                .outgoingMessageStorageModule(new OutgoingMessageStorageModule())
+                .conversationListStorageModule(new ConversationListStorageModule())
+                .contactDirectoryStorageModule(new ContactDirectoryStorageModule())
                 .build();
     }
 
@@ -0,0 +1,95 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import android.os.SystemClock;
+
+/**
+ * Decides how much chat history to ask for and when, so that the next page is usually there before the
+ * user scrolls to it. The page grows with how fast the user scrolls back and how long a page takes to
+ * arrive, within the limits of the chat API.
+ * <p>
+ * Meant to be used from the main thread only.
+ */
+public class ChatHistoryPager {
+    private static final int MIN_PAGE_SIZE = 25;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MIN_PREFETCH_DISTANCE = 10;
+    // a pause longer than this starts a new scroll gesture as far as velocity is concerned
+    private static final long SCROLL_GESTURE_GAP_MILLIS = 500;
+    private static final long DEFAULT_ROUND_TRIP_MILLIS = 500;
+    private static final float SMOOTHING_FACTOR = 0.3f;
+
+    private float itemsPerSecond;
+    private float roundTripMillis = DEFAULT_ROUND_TRIP_MILLIS;
+    private int lastVisiblePosition = -1;
+    private long lastScrollMillis;
+
+    /**
+     * @param lastVisiblePosition adapter position of the oldest visible message
+     */
+    public void onScrolled(int lastVisiblePosition) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (this.lastVisiblePosition != -1 && lastVisiblePosition > this.lastVisiblePosition) {
+            long elapsedMillis = now - lastScrollMillis;
+
+            if (elapsedMillis > SCROLL_GESTURE_GAP_MILLIS) {
+                itemsPerSecond = 0;
+            } else if (elapsedMillis > 0) {
+                float sample = (lastVisiblePosition - this.lastVisiblePosition) * 1000f / elapsedMillis;
+                itemsPerSecond += SMOOTHING_FACTOR * (sample - itemsPerSecond);
+            }
+        }
+
+        this.lastVisiblePosition = lastVisiblePosition;
+        lastScrollMillis = now;
+    }
+
+    public void onPageLoaded(long roundTripMillis) {
+        this.roundTripMillis += SMOOTHING_FACTOR * (roundTripMillis - this.roundTripMillis);
+    }
+
+    /**
+     * Enough messages to keep the user busy for two round trips at the current scroll speed.
+     */
+    public int getPageSize() {
+        int pageSize = Math.round(getItemsPerRoundTrip() * 2);
+        return Math.max(MIN_PAGE_SIZE, Math.min(MAX_PAGE_SIZE, pageSize));
+    }
+
+    /**
+     * Whether the next page should be requested now, because the user would reach the end of what is
+     * loaded before it arrives.
+     */
+    public boolean shouldPrefetch(int lastVisiblePosition, int itemCount) {
+        if (itemCount == 0) {
+            return false;
+        }
+
+        int prefetchDistance = Math.max(MIN_PREFETCH_DISTANCE, Math.round(getItemsPerRoundTrip() * 1.5f));
+        return lastVisiblePosition >= itemCount - prefetchDistance;
+    }
+
+    private float getItemsPerRoundTrip() {
+        return itemsPerSecond * roundTripMillis / 1000f;
+    }
+}
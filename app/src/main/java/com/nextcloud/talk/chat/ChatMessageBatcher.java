@@ -0,0 +1,98 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Remembers the newest message shown in a chat so that a whole batch of new messages can be
+ * de-duplicated and grouped off the main thread, without asking the adapter once per message.
+ */
+public class ChatMessageBatcher {
+    private static final int MAX_GROUPED_MESSAGES = 5;
+
+    private int newestMessageId = -1;
+    private String newestActorId;
+    private int sameAuthorCount;
+
+    /**
+     * Takes the page of history (newest first) into account if it contains messages newer than the
+     * ones we know about, which is the case for the first page that is shown.
+     */
+    public synchronized void onHistoryMessages(List<ChatMessage> chatMessageList) {
+        if (chatMessageList.isEmpty() || chatMessageList.get(0).getJsonMessageId() <= newestMessageId) {
+            return;
+        }
+
+        newestMessageId = chatMessageList.get(0).getJsonMessageId();
+        newestActorId = chatMessageList.get(0).getActorId();
+        sameAuthorCount = 0;
+
+        for (ChatMessage chatMessage : chatMessageList) {
+            if (newestActorId.equals(chatMessage.getActorId())) {
+                sameAuthorCount++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * To be called before a batch that doesn't directly follow the newest message shown, so that it isn't
+     * grouped with it.
+     */
+    public synchronized void onGap() {
+        newestActorId = null;
+        sameAuthorCount = 0;
+    }
+
+    /**
+     * Drops the messages of the batch (oldest first) that are already shown and groups the rest.
+     *
+     * @return the messages that still have to be added, oldest first
+     */
+    public synchronized List<ChatMessage> prepareNewMessages(List<ChatMessage> chatMessageList) {
+        List<ChatMessage> newMessages = new ArrayList<>(chatMessageList.size());
+
+        for (ChatMessage chatMessage : chatMessageList) {
+            if (chatMessage.getJsonMessageId() <= newestMessageId) {
+                continue;
+            }
+
+            if (chatMessage.getActorId().equals(newestActorId)) {
+                chatMessage.setGrouped(sameAuthorCount % MAX_GROUPED_MESSAGES > 0);
+                sameAuthorCount++;
+            } else {
+                chatMessage.setGrouped(false);
+                newestActorId = chatMessage.getActorId();
+                sameAuthorCount = 1;
+            }
+
+            newestMessageId = chatMessage.getJsonMessageId();
+            newMessages.add(chatMessage);
+        }
+
+        return newMessages;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import android.text.TextUtils;
+import com.nextcloud.talk.models.database.OutgoingChatMessage;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+import com.stfalcon.chatkit.utils.DateFormatter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Background stage that runs right after messages are parsed, so that the main thread only binds
+ * values that have already been computed.
+ */
+public class ChatMessageProcessor {
+
+    public static void prepareMessages(List<ChatMessage> chatMessageList, UserEntity userEntity,
+                                       boolean isLinkPreviewAllowed) {
+        for (ChatMessage chatMessage : chatMessageList) {
+            chatMessage.setBaseUrl(userEntity.getBaseUrl());
+            chatMessage.setActiveUserId(userEntity.getUserId());
+            chatMessage.setLinkPreviewAllowed(isLinkPreviewAllowed);
+            chatMessage.preprocess();
+        }
+    }
+
+    /**
+     * Builds the message shown in place of a queued message until the server hands it back.
+     */
+    public static ChatMessage createPendingMessage(OutgoingChatMessage outgoingChatMessage, UserEntity userEntity) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setPendingMessageId(outgoingChatMessage.getId());
+        chatMessage.setToken(outgoingChatMessage.getRoomToken());
+        chatMessage.setActorType("users");
+        chatMessage.setActorId(userEntity.getUserId());
+        chatMessage.setActorDisplayName(outgoingChatMessage.getActorDisplayName());
+        chatMessage.setTimestamp(outgoingChatMessage.getTimestamp());
+        chatMessage.setMessage(outgoingChatMessage.getMessage());
+        chatMessage.setMessageParameters(new HashMap<>());
+
+        List<ChatMessage> chatMessageList = new ArrayList<>();
+        chatMessageList.add(chatMessage);
+        prepareMessages(chatMessageList, userEntity, false);
+
+        return chatMessage;
+    }
+
+    /**
+     * Groups consecutive messages of the same author within a page of history (newest first),
+     * at most five in a row.
+     */
+    public static void groupHistoryMessages(List<ChatMessage> chatMessageList) {
+        int countGroupedMessages = 0;
+        for (int i = 0; i < chatMessageList.size() - 1; i++) {
+            if (TextUtils.isEmpty(chatMessageList.get(i).getSystemMessage()) &&
+                    TextUtils.isEmpty(chatMessageList.get(i + 1).getSystemMessage()) &&
+                    chatMessageList.get(i + 1).getActorId().equals(chatMessageList.get(i).getActorId()) &&
+                    countGroupedMessages < 4 && DateFormatter.isSameDay(chatMessageList.get(i).getCreatedAt(),
+                    chatMessageList.get(i + 1).getCreatedAt())) {
+                chatMessageList.get(i).setGrouped(true);
+                countGroupedMessages++;
+            } else {
+                countGroupedMessages = 0;
+            }
+        }
+    }
+}
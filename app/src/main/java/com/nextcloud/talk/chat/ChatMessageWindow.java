@@ -0,0 +1,160 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mirrors the messages held by the chat adapter (newest first) and picks the ones to drop once too many
+ * are held, always from the end of the list that is farther away from what is on screen.
+ * <p>
+ * Meant to be used from the main thread only.
+ */
+public class ChatMessageWindow {
+    private static final int MAX_RESIDENT_MESSAGES = 400;
+    private static final int RESIDENT_MESSAGES_AFTER_EVICTION = 300;
+    // messages this close to the visible ones are never dropped
+    private static final int EVICTION_MARGIN = 50;
+
+    private final List<ChatMessage> chatMessages = new ArrayList<>();
+    private boolean hasEvictedNewer;
+
+    public void onAddedToStart(ChatMessage chatMessage) {
+        chatMessages.add(0, chatMessage);
+        updateMetrics();
+    }
+
+    /**
+     * @param chatMessageList older messages, newest first
+     */
+    public void onAddedToEnd(List<ChatMessage> chatMessageList) {
+        chatMessages.addAll(chatMessageList);
+        updateMetrics();
+    }
+
+    /**
+     * To be called when the adapter was cleared to show an older part of the chat.
+     */
+    public void onClearedForOlderMessages() {
+        chatMessages.clear();
+        hasEvictedNewer = true;
+        updateMetrics();
+    }
+
+    /**
+     * To be called when the adapter was cleared to show the newest messages, which don't follow the ones
+     * shown before.
+     */
+    public void onClearedForNewestMessages() {
+        chatMessages.clear();
+        hasEvictedNewer = false;
+        updateMetrics();
+    }
+
+    public boolean isEmpty() {
+        return chatMessages.isEmpty();
+    }
+
+    public int size() {
+        return chatMessages.size();
+    }
+
+    public int getNewestMessageId() {
+        return chatMessages.get(0).getJsonMessageId();
+    }
+
+    public int getOldestMessageId() {
+        return chatMessages.get(chatMessages.size() - 1).getJsonMessageId();
+    }
+
+    /**
+     * Whether newer messages than the ones held were dropped and have to be reloaded before new messages
+     * can be shown again.
+     */
+    public boolean hasEvictedNewer() {
+        return hasEvictedNewer;
+    }
+
+    public void onNewerReloaded() {
+        hasEvictedNewer = false;
+    }
+
+    /**
+     * @return the index of the message among the ones held (not its adapter position, which also counts date
+     * headers and pending messages), or -1 if it isn't held
+     */
+    public int indexOf(ChatMessage chatMessage) {
+        for (int i = 0; i < chatMessages.size(); i++) {
+            if (chatMessages.get(i).getJsonMessageId() == chatMessage.getJsonMessageId()) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    public List<ChatMessage> evictOldest(int lastVisibleIndex) {
+        int count = Math.min(chatMessages.size() - RESIDENT_MESSAGES_AFTER_EVICTION,
+                chatMessages.size() - lastVisibleIndex - EVICTION_MARGIN);
+
+        if (chatMessages.size() <= MAX_RESIDENT_MESSAGES || count <= 0) {
+            return Collections.emptyList();
+        }
+
+        return evict(chatMessages.size() - count, chatMessages.size());
+    }
+
+    public List<ChatMessage> evictNewest(int firstVisibleIndex) {
+        int count = Math.min(chatMessages.size() - RESIDENT_MESSAGES_AFTER_EVICTION,
+                firstVisibleIndex - EVICTION_MARGIN);
+
+        if (chatMessages.size() <= MAX_RESIDENT_MESSAGES || count <= 0) {
+            return Collections.emptyList();
+        }
+
+        hasEvictedNewer = true;
+        return evict(0, count);
+    }
+
+    private List<ChatMessage> evict(int fromIndex, int toIndex) {
+        List<ChatMessage> subList = chatMessages.subList(fromIndex, toIndex);
+        List<ChatMessage> evictedMessages = new ArrayList<>(subList);
+        subList.clear();
+
+        ApplicationWideMetricsHolder.getInstance().incrementCounter("chat.evicted_messages", evictedMessages.size());
+        updateMetrics();
+
+        return evictedMessages;
+    }
+
+    private void updateMetrics() {
+        Runtime runtime = Runtime.getRuntime();
+        ApplicationWideMetricsHolder metricsHolder = ApplicationWideMetricsHolder.getInstance();
+        metricsHolder.setGauge("chat.resident_messages", chatMessages.size());
+        metricsHolder.setGauge("chat.heap_used_kb", (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+        metricsHolder.setGauge("chat.heap_max_kb", runtime.maxMemory() / 1024);
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import android.text.TextUtils;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import autodagger.AutoInjector;
+import com.bluelinelabs.logansquare.LoganSquare;
+import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.RetryPolicy;
+import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.dagger.modules.RestModule;
+import com.nextcloud.talk.events.WebSocketCommunicationEvent;
+import com.nextcloud.talk.models.ChatMessagesDelta;
+import com.nextcloud.talk.models.ExternalSignalingServer;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+import com.nextcloud.talk.models.json.chat.ChatOverall;
+import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import com.nextcloud.talk.utils.preferences.AppPreferences;
+import com.nextcloud.talk.webrtc.MagicWebSocketInstance;
+import com.nextcloud.talk.webrtc.WebSocketConnectionHelper;
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.subjects.PublishSubject;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+import retrofit2.Response;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the chat sync of every room of a single account that somebody is interested in.
+ * <p>
+ * Consumers subscribe to {@link #getChatMessagesDeltas(String, int, String)} instead of driving HTTP
+ * themselves; all subscribers of a room share one sync, which is kept alive for a short while after the
+ * last subscriber is gone so that quickly returning to a room does not start a new request.
+ * <p>
+ * If the account has an external signaling server and a room session is known, the room is joined on
+ * the signaling WebSocket and messages are only fetched when it announces a chat refresh. Long-polling
+ * is used until the room is joined and whenever the WebSocket can't be relied on. A call that joins the
+ * WebSocket with its own session takes over: the chat follows along while the call is in its room and is
+ * never joined in its place.
+ */
+@AutoInjector(NextcloudTalkApplication.class)
+public class ChatSyncEngine {
+    private static final String TAG = "ChatSyncEngine";
+    private static final long ROOM_LINGER_SECONDS = 30;
+    private static final long WEB_SOCKET_CHECK_SECONDS = 30;
+    private static final int MESSAGES_LIMIT = 25;
+    // shown at once when a room is too far behind to catch up with page by page
+    private static final int NEWEST_MESSAGES_LIMIT = 100;
+
+    @Inject
+    NcApi ncApi;
+
+    @Inject
+    @Named(RestModule.LONG_POLL)
+    NcApi longPollNcApi;
+
+    @Inject
+    AppPreferences appPreferences;
+
+    @Inject
+    EventBus eventBus;
+
+    private final UserEntity userEntity;
+    private final String credentials;
+    private final Map<String, RoomSync> roomSyncMap = new HashMap<>();
+
+    @Nullable
+    private ExternalSignalingServer externalSignalingServer;
+    @Nullable
+    private RoomSync webSocketRoomSync;
+    // the session the WebSocket was last asked to join a room with, any other one belongs to a call
+    @Nullable
+    private String webSocketRoomSessionId;
+
+    ChatSyncEngine(UserEntity userEntity) {
+        NextcloudTalkApplication.getSharedApplication().getComponentApplication().inject(this);
+
+        this.userEntity = userEntity;
+
+        if ("?".equals(userEntity.getUserId())) {
+            credentials = null;
+        } else {
+            credentials = ApiUtils.getCredentials(userEntity.getUsername(), userEntity.getToken());
+        }
+
+        if (!TextUtils.isEmpty(userEntity.getExternalSignalingServer())) {
+            try {
+                externalSignalingServer = LoganSquare.parse(userEntity.getExternalSignalingServer(),
+                        ExternalSignalingServer.class);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to parse external signaling server");
+            }
+        }
+
+        if (externalSignalingServer != null && !TextUtils.isEmpty(externalSignalingServer.getExternalSignalingServer())
+                && !TextUtils.isEmpty(externalSignalingServer.getExternalSignalingTicket())) {
+            eventBus.register(this);
+        } else {
+            externalSignalingServer = null;
+        }
+    }
+
+    /**
+     * Emits every batch of new messages in the room that comes after {@code lastKnownMessageId}.
+     * Pass -1 if nothing is known yet, in which case only messages arriving from now on are emitted.
+     * <p>
+     * The {@code roomSessionId} is the session we got when joining the room; with it the room can be
+     * followed over the external signaling server instead of long-polling.
+     */
+    public Observable<ChatMessagesDelta> getChatMessagesDeltas(String roomToken, int lastKnownMessageId,
+                                                               @Nullable String roomSessionId) {
+        return Observable.defer(() -> acquireRoomSync(roomToken, lastKnownMessageId, roomSessionId).subject
+                .doFinally(() -> releaseRoomSync(roomToken)));
+    }
+
+    public synchronized void stopAll() {
+        for (RoomSync roomSync : roomSyncMap.values()) {
+            roomSync.stop();
+        }
+
+        if (webSocketRoomSync != null) {
+            leaveRoomOnWebSocket(webSocketRoomSync);
+        }
+
+        roomSyncMap.clear();
+        webSocketRoomSync = null;
+
+        if (externalSignalingServer != null) {
+            eventBus.unregister(this);
+        }
+    }
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onMessageEvent(WebSocketCommunicationEvent webSocketCommunicationEvent) {
+        HashMap<String, String> hashMap = webSocketCommunicationEvent.getHashMap();
+        // every account has its own WebSocket
+        if (hashMap == null || !Long.toString(userEntity.getId()).equals(hashMap.get("internalUserId"))) {
+            return;
+        }
+
+        switch (webSocketCommunicationEvent.getType()) {
+            case "hello":
+                onWebSocketConnected();
+                break;
+            case "roomJoined":
+                onWebSocketRoomJoined(hashMap.get("roomToken"));
+                break;
+            case "refreshChat":
+                onChatRefreshRequested(hashMap.get("roomToken"));
+                break;
+            case "participantsUpdate":
+                RoomRosterCache.getInstance().invalidate(hashMap.get("roomToken"));
+                break;
+        }
+    }
+
+    private synchronized RoomSync acquireRoomSync(String roomToken, int lastKnownMessageId,
+                                                  @Nullable String roomSessionId) {
+        RoomSync roomSync = roomSyncMap.get(roomToken);
+        if (roomSync == null) {
+            roomSync = new RoomSync(roomToken);
+            roomSyncMap.put(roomToken, roomSync);
+        }
+
+        roomSync.subscriberCount++;
+
+        if (roomSync.lingerDisposable != null) {
+            roomSync.lingerDisposable.dispose();
+            roomSync.lingerDisposable = null;
+        }
+
+        boolean isBehind = lastKnownMessageId != -1 && lastKnownMessageId != roomSync.lastKnownMessageId;
+        if (isBehind) {
+            roomSync.lastKnownMessageId = lastKnownMessageId;
+        }
+
+        if (roomSync.eventDriven) {
+            if (isBehind) {
+                fetchOnce(roomSync);
+            }
+        } else if (isBehind || roomSync.pollDisposable == null || roomSync.pollDisposable.isDisposed()) {
+            startPolling(roomSync);
+        }
+
+        if (!TextUtils.isEmpty(roomSessionId)) {
+            roomSync.roomSessionId = roomSessionId;
+            joinRoomOnWebSocket(roomSync);
+        }
+
+        return roomSync;
+    }
+
+    private synchronized void releaseRoomSync(String roomToken) {
+        RoomSync roomSync = roomSyncMap.get(roomToken);
+        if (roomSync == null) {
+            return;
+        }
+
+        roomSync.subscriberCount--;
+
+        if (roomSync.subscriberCount == 0) {
+            roomSync.lingerDisposable = Observable.timer(ROOM_LINGER_SECONDS, TimeUnit.SECONDS,
+                    MagicSchedulers.chatSync())
+                    .subscribe(aLong -> removeRoomSyncIfUnused(roomToken));
+        }
+    }
+
+    private synchronized void removeRoomSyncIfUnused(String roomToken) {
+        RoomSync roomSync = roomSyncMap.get(roomToken);
+        if (roomSync != null && roomSync.subscriberCount == 0) {
+            roomSync.stop();
+            roomSyncMap.remove(roomToken);
+
+            if (roomSync == webSocketRoomSync) {
+                leaveRoomOnWebSocket(roomSync);
+                webSocketRoomSync = null;
+            }
+        }
+    }
+
+    @Nullable
+    private MagicWebSocketInstance getWebSocketInstance() {
+        if (externalSignalingServer == null) {
+            return null;
+        }
+
+        return WebSocketConnectionHelper.getExternalSignalingInstanceForServer(
+                externalSignalingServer.getExternalSignalingServer(), userEntity,
+                externalSignalingServer.getExternalSignalingTicket());
+    }
+
+    private void joinRoomOnWebSocket(RoomSync roomSync) {
+        MagicWebSocketInstance magicWebSocketInstance = getWebSocketInstance();
+        if (magicWebSocketInstance == null) {
+            return;
+        }
+
+        // a WebSocket session can only be in one room at a time, the room asked for last wins
+        if (webSocketRoomSync != null && webSocketRoomSync != roomSync && webSocketRoomSync.eventDriven) {
+            switchToLongPolling(webSocketRoomSync);
+        }
+
+        webSocketRoomSync = roomSync;
+
+        if (isJoinedByCall(magicWebSocketInstance)) {
+            // the call gets the chat refreshes of its room as well, joining in its place would throw it out
+            if (roomSync.roomToken.equals(magicWebSocketInstance.getCurrentRoomToken()) && !roomSync.eventDriven) {
+                switchToEventDriven(roomSync);
+            }
+        } else if (magicWebSocketInstance.isConnected()) {
+            webSocketRoomSessionId = roomSync.roomSessionId;
+            magicWebSocketInstance.joinRoomWithRoomTokenAndSession(roomSync.roomToken, roomSync.roomSessionId);
+        }
+    }
+
+    private void leaveRoomOnWebSocket(RoomSync roomSync) {
+        MagicWebSocketInstance magicWebSocketInstance = getWebSocketInstance();
+        if (magicWebSocketInstance != null && magicWebSocketInstance.isConnected() &&
+                roomSync.roomToken.equals(magicWebSocketInstance.getCurrentRoomToken()) &&
+                !isJoinedByCall(magicWebSocketInstance)) {
+            magicWebSocketInstance.joinRoomWithRoomTokenAndSession("", webSocketRoomSessionId);
+        }
+    }
+
+    private boolean isJoinedByCall(MagicWebSocketInstance magicWebSocketInstance) {
+        return !TextUtils.isEmpty(magicWebSocketInstance.getCurrentRoomToken()) &&
+                !TextUtils.equals(magicWebSocketInstance.getCurrentRoomSession(), webSocketRoomSessionId);
+    }
+
+    private synchronized void onWebSocketConnected() {
+        if (webSocketRoomSync != null && !webSocketRoomSync.eventDriven) {
+            joinRoomOnWebSocket(webSocketRoomSync);
+        }
+    }
+
+    private synchronized void onWebSocketRoomJoined(String roomToken) {
+        for (RoomSync roomSync : roomSyncMap.values()) {
+            if (roomSync.roomToken.equals(roomToken) && roomSync == webSocketRoomSync) {
+                if (!roomSync.eventDriven) {
+                    switchToEventDriven(roomSync);
+                }
+            } else if (roomSync.eventDriven) {
+                switchToLongPolling(roomSync);
+            }
+        }
+    }
+
+    private synchronized void onChatRefreshRequested(String roomToken) {
+        RoomSync roomSync = roomSyncMap.get(roomToken);
+        if (roomSync != null && roomSync.eventDriven) {
+            fetchOnce(roomSync);
+        }
+    }
+
+    private void switchToEventDriven(RoomSync roomSync) {
+        if (roomSync.pollDisposable != null) {
+            roomSync.pollDisposable.dispose();
+        }
+
+        roomSync.eventDriven = true;
+
+        // catch up with whatever arrived between the last poll and joining the room
+        fetchOnce(roomSync);
+
+        roomSync.webSocketCheckDisposable = Observable.interval(WEB_SOCKET_CHECK_SECONDS, TimeUnit.SECONDS,
+                MagicSchedulers.chatSync())
+                .subscribe(aLong -> checkWebSocket(roomSync));
+    }
+
+    private synchronized void checkWebSocket(RoomSync roomSync) {
+        MagicWebSocketInstance magicWebSocketInstance = getWebSocketInstance();
+        if (roomSync.eventDriven && (magicWebSocketInstance == null || !magicWebSocketInstance.isConnected() ||
+                !roomSync.roomToken.equals(magicWebSocketInstance.getCurrentRoomToken()))) {
+            switchToLongPolling(roomSync);
+        }
+    }
+
+    private void switchToLongPolling(RoomSync roomSync) {
+        roomSync.eventDriven = false;
+
+        if (roomSync.webSocketCheckDisposable != null) {
+            roomSync.webSocketCheckDisposable.dispose();
+        }
+
+        startPolling(roomSync);
+    }
+
+    private void startPolling(RoomSync roomSync) {
+        if (roomSync.pollDisposable != null) {
+            roomSync.pollDisposable.dispose();
+        }
+
+        roomSync.pollDisposable = Observable.defer(() -> longPollNcApi.pullChatMessages(credentials,
+                ApiUtils.getUrlForChat(userEntity.getBaseUrl(), roomSync.roomToken),
+                getFieldMap(roomSync.lastKnownMessageId, null)))
+                .observeOn(MagicSchedulers.chatSync())
+                .concatMap(response -> getChatMessagesDelta(roomSync, response))
+                .repeat()
+                .compose(RetryPolicy.retry(3))
+                .compose(MagicSchedulers.trackLongPoll())
+                .subscribe(roomSync.subject::onNext,
+                        throwable -> Log.w(TAG, "Chat long-poll for a room stopped: " + throwable.getLocalizedMessage()));
+    }
+
+    /**
+     * Fetches whatever is new without waiting on the server. If a fetch is already running, another one
+     * is made once it is done so that no refresh gets lost.
+     */
+    private void fetchOnce(RoomSync roomSync) {
+        if (roomSync.fetchDisposable != null && !roomSync.fetchDisposable.isDisposed()) {
+            roomSync.fetchPending = true;
+            return;
+        }
+
+        roomSync.fetchPending = false;
+        roomSync.fetchDisposable = Observable.defer(() -> ncApi.pullChatMessages(credentials,
+                ApiUtils.getUrlForChat(userEntity.getBaseUrl(), roomSync.roomToken),
+                getFieldMap(roomSync.lastKnownMessageId, 0)))
+                .observeOn(MagicSchedulers.chatSync())
+                .compose(RetryPolicy.retry(3))
+                .concatMap(response -> getChatMessagesDelta(roomSync, response))
+                .subscribe(roomSync.subject::onNext,
+                        throwable -> onFetchDone(roomSync),
+                        () -> onFetchDone(roomSync));
+    }
+
+    private synchronized void onFetchDone(RoomSync roomSync) {
+        roomSync.fetchDisposable = null;
+
+        if (roomSync.eventDriven && roomSync.fetchPending) {
+            fetchOnce(roomSync);
+        }
+    }
+
+    /*
+        A full page means the room is far behind. Instead of catching up page by page the newest messages are
+        shown right away, with a gap before them that history paging fills in when scrolling back.
+     */
+    private Observable<ChatMessagesDelta> getChatMessagesDelta(RoomSync roomSync, Response<ChatOverall> response) {
+        if (response.code() != 200 || response.body() == null) {
+            return Observable.empty();
+        }
+
+        if (response.body().getOcs().getData().size() < MESSAGES_LIMIT) {
+            return Observable.just(processResponse(roomSync, response));
+        }
+
+        ApplicationWideMetricsHolder.getInstance().incrementCounter("chat.skipped_catch_ups", 1);
+        return ncApi.pullChatMessages(credentials, ApiUtils.getUrlForChat(userEntity.getBaseUrl(), roomSync.roomToken),
+                getNewestMessagesFieldMap())
+                .observeOn(MagicSchedulers.chatSync())
+                .compose(RetryPolicy.retry(3))
+                .filter(newestResponse -> newestResponse.code() == 200 && newestResponse.body() != null)
+                .map(newestResponse -> processNewestMessages(roomSync, newestResponse.body().getOcs().getData()));
+    }
+
+    private Map<String, Integer> getNewestMessagesFieldMap() {
+        Map<String, Integer> fieldMap = new HashMap<>();
+        fieldMap.put("lookIntoFuture", 0);
+        fieldMap.put("limit", NEWEST_MESSAGES_LIMIT);
+        return fieldMap;
+    }
+
+    /**
+     * @param newestMessages the newest messages of the room, newest first
+     */
+    private ChatMessagesDelta processNewestMessages(RoomSync roomSync, List<ChatMessage> newestMessages) {
+        // the gap is closed if the page reaches back to what is known already
+        boolean hasGap = roomSync.lastKnownMessageId != -1;
+        List<ChatMessage> chatMessageList = new ArrayList<>();
+        for (int i = newestMessages.size() - 1; i >= 0; i--) {
+            if (newestMessages.get(i).getJsonMessageId() > roomSync.lastKnownMessageId) {
+                chatMessageList.add(newestMessages.get(i));
+            } else {
+                hasGap = false;
+            }
+        }
+
+        ChatMessageProcessor.prepareMessages(chatMessageList, userEntity, appPreferences.getAreLinkPreviewsAllowed());
+
+        if (chatMessageList.size() > 0) {
+            roomSync.lastKnownMessageId = chatMessageList.get(chatMessageList.size() - 1).getJsonMessageId();
+        }
+
+        return new ChatMessagesDelta(roomSync.roomToken, chatMessageList, roomSync.lastKnownMessageId, hasGap);
+    }
+
+    private Map<String, Integer> getFieldMap(int lastKnownMessageId, @Nullable Integer timeout) {
+        Map<String, Integer> fieldMap = new HashMap<>();
+        fieldMap.put("lookIntoFuture", 1);
+        fieldMap.put("limit", MESSAGES_LIMIT);
+
+        if (lastKnownMessageId != -1) {
+            fieldMap.put("lastKnownMessageId", lastKnownMessageId);
+        }
+
+        if (timeout != null) {
+            fieldMap.put("timeout", timeout);
+        }
+
+        return fieldMap;
+    }
+
+    private ChatMessagesDelta processResponse(RoomSync roomSync, Response<ChatOverall> response) {
+        List<ChatMessage> chatMessageList = response.body().getOcs().getData();
+        ChatMessageProcessor.prepareMessages(chatMessageList, userEntity, appPreferences.getAreLinkPreviewsAllowed());
+
+        String xChatLastGivenHeader;
+        if (response.headers().size() > 0 && !TextUtils.isEmpty((xChatLastGivenHeader = response.headers().get
+                ("X-Chat-Last-Given")))) {
+            roomSync.lastKnownMessageId = Integer.parseInt(xChatLastGivenHeader);
+        }
+
+        return new ChatMessagesDelta(roomSync.roomToken, chatMessageList, roomSync.lastKnownMessageId, false);
+    }
+
+    private static class RoomSync {
+        private final String roomToken;
+        private final PublishSubject<ChatMessagesDelta> subject = PublishSubject.create();
+        private volatile int lastKnownMessageId = -1;
+        private int subscriberCount;
+        private String roomSessionId;
+        private boolean eventDriven;
+        private boolean fetchPending;
+        private Disposable pollDisposable;
+        private Disposable fetchDisposable;
+        private Disposable lingerDisposable;
+        private Disposable webSocketCheckDisposable;
+
+        RoomSync(String roomToken) {
+            this.roomToken = roomToken;
+        }
+
+        void stop() {
+            eventDriven = false;
+
+            if (pollDisposable != null) {
+                pollDisposable.dispose();
+            }
+
+            if (fetchDisposable != null) {
+                fetchDisposable.dispose();
+            }
+
+            if (lingerDisposable != null) {
+                lingerDisposable.dispose();
+            }
+
+            if (webSocketCheckDisposable != null) {
+                webSocketCheckDisposable.dispose();
+            }
+        }
+    }
+}
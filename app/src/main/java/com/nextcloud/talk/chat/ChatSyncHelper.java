@@ -0,0 +1,52 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import com.nextcloud.talk.models.database.UserEntity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ChatSyncHelper {
+    private static Map<Long, ChatSyncEngine> chatSyncEngineMap = new HashMap<>();
+
+    public static synchronized ChatSyncEngine getChatSyncEngineForUserEntity(UserEntity userEntity) {
+        // guests are not stored in the database, so they don't get to share an engine
+        if ("?".equals(userEntity.getUserId())) {
+            return new ChatSyncEngine(userEntity);
+        }
+
+        ChatSyncEngine chatSyncEngine;
+        if ((chatSyncEngine = chatSyncEngineMap.get(userEntity.getId())) == null) {
+            chatSyncEngine = new ChatSyncEngine(userEntity);
+            chatSyncEngineMap.put(userEntity.getId(), chatSyncEngine);
+        }
+
+        return chatSyncEngine;
+    }
+
+    public static synchronized void deleteChatSyncEngineForUserEntity(long id) {
+        ChatSyncEngine chatSyncEngine;
+        if ((chatSyncEngine = chatSyncEngineMap.remove(id)) != null) {
+            chatSyncEngine.stopAll();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import androidx.annotation.Nullable;
+import com.nextcloud.talk.models.RenderedRichMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the {placeholders} of a rich object string in a single pass over the message.
+ * <p>
+ * Users and guests are rendered as "@name" and their ranges in the result are recorded so that
+ * they can be highlighted without searching the text again, files are rendered as their name and
+ * anything else is left untouched.
+ */
+public class RichObjectTemplateRenderer {
+
+    public static RenderedRichMessage render(@Nullable String template,
+                                             @Nullable Map<String, ? extends Map<String, String>> parameters) {
+        if (template == null || parameters == null || parameters.size() == 0 || template.indexOf('{') == -1) {
+            return new RenderedRichMessage(template, new ArrayList<>());
+        }
+
+        StringBuilder stringBuilder = new StringBuilder(template.length() + 16 * parameters.size());
+        List<RenderedRichMessage.MentionRange> mentionRanges = new ArrayList<>();
+
+        int position = 0;
+        int length = template.length();
+        while (position < length) {
+            int openingBrace = template.indexOf('{', position);
+            if (openingBrace == -1) {
+                break;
+            }
+
+            int closingBrace = template.indexOf('}', openingBrace + 1);
+            if (closingBrace == -1) {
+                break;
+            }
+
+            Map<String, String> parameter = parameters.get(template.substring(openingBrace + 1, closingBrace));
+            String type = parameter != null ? parameter.get("type") : null;
+
+            if ("user".equals(type) || "guest".equals(type)) {
+                stringBuilder.append(template, position, openingBrace);
+                int start = stringBuilder.length();
+                stringBuilder.append('@').append(parameter.get("name"));
+                mentionRanges.add(new RenderedRichMessage.MentionRange(start, stringBuilder.length(),
+                        parameter.get("id"), type));
+                position = closingBrace + 1;
+            } else if ("file".equals(type)) {
+                stringBuilder.append(template, position, openingBrace);
+                stringBuilder.append(parameter.get("name"));
+                position = closingBrace + 1;
+            } else {
+                // not something we render, keep the brace as is and look for the next placeholder
+                stringBuilder.append(template, position, openingBrace + 1);
+                position = openingBrace + 1;
+            }
+        }
+
+        if (position < length) {
+            stringBuilder.append(template, position, length);
+        }
+
+        return new RenderedRichMessage(stringBuilder.toString(), mentionRanges);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import android.text.TextUtils;
+import com.nextcloud.talk.models.json.mention.Mention;
+
+import java.util.*;
+
+/**
+ * The users known to be in a room, for suggesting mentions without asking the server.
+ */
+public class RoomRoster {
+    private final Map<String, Mention> mentionsByUserId = new LinkedHashMap<>();
+
+    synchronized void addMention(String userId, String displayName) {
+        if (TextUtils.isEmpty(userId)) {
+            return;
+        }
+
+        Mention mention = new Mention();
+        mention.setId(userId);
+        mention.setLabel(TextUtils.isEmpty(displayName) ? userId : displayName);
+        mention.setSource("users");
+        mentionsByUserId.put(userId, mention);
+    }
+
+    private static int getRank(Mention mention, String query) {
+        String label = mention.getLabel().toLowerCase(Locale.ROOT);
+        if (label.startsWith(query)) {
+            return 0;
+        }
+
+        for (String word : label.split("\\s+")) {
+            if (word.startsWith(query)) {
+                return 1;
+            }
+        }
+
+        if (mention.getId().toLowerCase(Locale.ROOT).startsWith(query)) {
+            return 2;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return up to {@code limit} users whose display name, a word of it or whose user id starts with the
+     * query, best matches first
+     */
+    public synchronized List<Mention> search(String query, int limit, String excludedUserId) {
+        String normalizedQuery = query.trim().toLowerCase(Locale.ROOT);
+        List<Mention> results = new ArrayList<>();
+        Map<Mention, Integer> ranks = new HashMap<>();
+
+        for (Mention mention : mentionsByUserId.values()) {
+            if (mention.getId().equals(excludedUserId)) {
+                continue;
+            }
+
+            int rank = getRank(mention, normalizedQuery);
+            if (rank >= 0) {
+                results.add(mention);
+                ranks.put(mention, rank);
+            }
+        }
+
+        Collections.sort(results, (o1, o2) -> {
+            int rankComparison = Integer.compare(ranks.get(o1), ranks.get(o2));
+            return rankComparison != 0 ? rankComparison : o1.getLabel().compareToIgnoreCase(o2.getLabel());
+        });
+
+        return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import com.nextcloud.talk.models.json.mention.Mention;
+import com.nextcloud.talk.models.json.participants.Participant;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rosters of recently opened rooms, per account. A roster is filled from the participant list and
+ * topped up with the users the server suggested; it is dropped once it is too old or the signaling
+ * server reports a change of the participants.
+ */
+public class RoomRosterCache {
+    private static final RoomRosterCache holder = new RoomRosterCache();
+
+    private static final int MAX_ROOMS = 20;
+    private static final long MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ROOMS;
+        }
+    };
+
+    public static RoomRosterCache getInstance() {
+        return holder;
+    }
+
+    private static String getKey(long accountIdentifier, String roomToken) {
+        return accountIdentifier + "\n" + roomToken;
+    }
+
+    /**
+     * @return the roster of the room, or null if it has to be fetched (again)
+     */
+    @Nullable
+    public synchronized RoomRoster getRoster(long accountIdentifier, String roomToken) {
+        Entry entry = entries.get(getKey(accountIdentifier, roomToken));
+        if (entry == null || SystemClock.elapsedRealtime() - entry.createdAtMillis > MAX_AGE_MILLIS) {
+            return null;
+        }
+        return entry.roomRoster;
+    }
+
+    public synchronized void putParticipants(long accountIdentifier, String roomToken,
+                                             List<Participant> participants) {
+        RoomRoster roomRoster = new RoomRoster();
+        for (Participant participant : participants) {
+            roomRoster.addMention(participant.getUserId(), participant.getDisplayName());
+        }
+        entries.put(getKey(accountIdentifier, roomToken), new Entry(roomRoster, SystemClock.elapsedRealtime()));
+    }
+
+    public synchronized void addMentions(long accountIdentifier, String roomToken, List<Mention> mentions) {
+        Entry entry = entries.get(getKey(accountIdentifier, roomToken));
+        if (entry == null) {
+            return;
+        }
+
+        for (Mention mention : mentions) {
+            // "all" mentions the room and guests have no user id
+            if ("users".equals(mention.getSource())) {
+                entry.roomRoster.addMention(mention.getId(), mention.getLabel());
+            }
+        }
+    }
+
+    public synchronized void invalidate(String roomToken) {
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().endsWith("\n" + roomToken)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        final RoomRoster roomRoster;
+        final long createdAtMillis;
+
+        Entry(RoomRoster roomRoster, long createdAtMillis) {
+            this.roomRoster = roomRoster;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
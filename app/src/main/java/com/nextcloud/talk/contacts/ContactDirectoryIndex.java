@@ -0,0 +1,103 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.contacts;
+
+import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
+
+import java.util.*;
+
+/**
+ * Prefix index over the contacts of the directory: the whole display name, every word of it and the user id.
+ * Built once off the main thread; a search is two binary searches over the sorted keys, so it can run while
+ * typing.
+ */
+public class ContactDirectoryIndex {
+    private final List<AutocompleteUser> contacts;
+    private final String[] keys;
+    private final int[] contactPositions;
+
+    public ContactDirectoryIndex(List<AutocompleteUser> contacts) {
+        this.contacts = contacts;
+
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>();
+        for (int i = 0; i < contacts.size(); i++) {
+            AutocompleteUser contact = contacts.get(i);
+            Set<String> contactKeys = new HashSet<>();
+
+            String displayName = normalize(contact.getLabel());
+            if (!displayName.isEmpty()) {
+                contactKeys.add(displayName);
+                contactKeys.addAll(Arrays.asList(displayName.split("[\\s\\-_.@]+")));
+            }
+            contactKeys.add(normalize(contact.getId()));
+            contactKeys.remove("");
+
+            for (String key : contactKeys) {
+                entries.add(new AbstractMap.SimpleEntry<>(key, i));
+            }
+        }
+
+        Collections.sort(entries, (o1, o2) -> o1.getKey().compareTo(o2.getKey()));
+
+        keys = new String[entries.size()];
+        contactPositions = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            keys[i] = entries.get(i).getKey();
+            contactPositions[i] = entries.get(i).getValue();
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public List<AutocompleteUser> getContacts() {
+        return contacts;
+    }
+
+    /**
+     * @return the contacts with a display name, a word of it or a user id starting with the query, in
+     * directory order
+     */
+    public List<AutocompleteUser> search(String query) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty()) {
+            return contacts;
+        }
+
+        int position = Arrays.binarySearch(keys, prefix);
+        if (position < 0) {
+            position = -position - 1;
+        }
+
+        // sorted, so all keys with the prefix follow each other
+        Set<Integer> matches = new TreeSet<>();
+        for (; position < keys.length && keys[position].startsWith(prefix); position++) {
+            matches.add(contactPositions[position]);
+        }
+
+        List<AutocompleteUser> results = new ArrayList<>(matches.size());
+        for (int match : matches) {
+            results.add(contacts.get(match));
+        }
+        return results;
+    }
+}
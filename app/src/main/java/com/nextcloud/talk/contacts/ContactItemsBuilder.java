@@ -0,0 +1,110 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.talk.contacts;
+
+import com.nextcloud.talk.adapters.items.GenericTextHeaderItem;
+import com.nextcloud.talk.adapters.items.UserItem;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
+import com.nextcloud.talk.models.json.participants.Participant;
+import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
+
+import java.util.*;
+
+/**
+ * Turns contacts into the sorted items of the contacts list, groups first. Meant to run off the main thread:
+ * with a synced directory it handles every contact of the account at once.
+ */
+public class ContactItemsBuilder {
+
+    /**
+     * @return the items already shown plus those of the contacts that aren't shown yet, sorted
+     */
+    public static List<AbstractFlexibleItem> build(List<AbstractFlexibleItem> shownItems,
+                                                   List<AutocompleteUser> autocompleteUsers,
+                                                   UserEntity userEntity, String groupsHeaderTitle) {
+        Set<AbstractFlexibleItem> knownItems = new HashSet<>(shownItems);
+        Map<String, GenericTextHeaderItem> headerItems = new HashMap<>();
+
+        List<AbstractFlexibleItem> contactItems = new ArrayList<>(shownItems.size() + autocompleteUsers.size());
+        contactItems.addAll(shownItems);
+
+        for (AutocompleteUser autocompleteUser : autocompleteUsers) {
+            if (autocompleteUser.getId().equals(userEntity.getUserId())) {
+                continue;
+            }
+
+            Participant participant = new Participant();
+            participant.setUserId(autocompleteUser.getId());
+            participant.setDisplayName(autocompleteUser.getLabel());
+            participant.setSource(autocompleteUser.getSource());
+
+            String headerTitle;
+            if (!"groups".equals(autocompleteUser.getSource())) {
+                headerTitle = participant.getDisplayName().substring(0, 1).toUpperCase();
+            } else {
+                headerTitle = groupsHeaderTitle;
+            }
+
+            GenericTextHeaderItem genericTextHeaderItem = headerItems.get(headerTitle);
+            if (genericTextHeaderItem == null) {
+                genericTextHeaderItem = new GenericTextHeaderItem(headerTitle);
+                headerItems.put(headerTitle, genericTextHeaderItem);
+            }
+
+            UserItem newContactItem = new UserItem(participant, userEntity, genericTextHeaderItem);
+            if (knownItems.add(newContactItem)) {
+                contactItems.add(newContactItem);
+            }
+        }
+
+        Collections.sort(contactItems, ContactItemsBuilder::compare);
+        return contactItems;
+    }
+
+    private static int compare(AbstractFlexibleItem o1, AbstractFlexibleItem o2) {
+        String firstName;
+        String secondName;
+
+        if (o1 instanceof UserItem) {
+            firstName = ((UserItem) o1).getModel().getDisplayName();
+        } else {
+            firstName = ((GenericTextHeaderItem) o1).getModel();
+        }
+
+        if (o2 instanceof UserItem) {
+            secondName = ((UserItem) o2).getModel().getDisplayName();
+        } else {
+            secondName = ((GenericTextHeaderItem) o2).getModel();
+        }
+
+        if (o1 instanceof UserItem && o2 instanceof UserItem) {
+            if ("groups".equals(((UserItem) o1).getModel().getSource()) && "groups".equals(((UserItem) o2).getModel().getSource())) {
+                return firstName.compareToIgnoreCase(secondName);
+            } else if ("groups".equals(((UserItem) o1).getModel().getSource())) {
+                return -1;
+            } else if ("groups".equals(((UserItem) o2).getModel().getSource())) {
+                return 1;
+            }
+        }
+
+        return firstName.compareToIgnoreCase(secondName);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.contacts;
+
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+
+import java.util.*;
+
+/**
+ * The first page of recent contact searches, per server and account, least recently used evicted first.
+ * <p>
+ * A result the server did not cut off at the page size holds every match of its query, so a longer
+ * query starting with it is answered by narrowing it down instead of asking the server again.
+ */
+public class ContactSearchCache {
+    private static final ContactSearchCache holder = new ContactSearchCache();
+
+    private static final int MAX_ENTRIES = 50;
+    private static final long MAX_AGE_MILLIS = 5 * 60 * 1000;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    public static ContactSearchCache getInstance() {
+        return holder;
+    }
+
+    private static String getKey(String server, String query) {
+        return server + "\n" + query.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean matches(AutocompleteUser autocompleteUser, String query) {
+        String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+        return (autocompleteUser.getLabel() != null &&
+                autocompleteUser.getLabel().toLowerCase(Locale.ROOT).contains(lowerCaseQuery)) ||
+                (autocompleteUser.getId() != null &&
+                        autocompleteUser.getId().toLowerCase(Locale.ROOT).contains(lowerCaseQuery));
+    }
+
+    /**
+     * @param server  identifies the server and account the search ran against
+     * @param results the first page of results
+     * @param pageSize the page size asked for; a full page may have been cut off
+     */
+    public synchronized void put(String server, String query, List<AutocompleteUser> results, int pageSize) {
+        entries.put(getKey(server, query), new Entry(new ArrayList<>(results), results.size() < pageSize,
+                SystemClock.elapsedRealtime()));
+    }
+
+    /**
+     * @return the cached results for the query, narrowed down from a complete result of a shorter query
+     * if needed, or null if the server has to be asked
+     */
+    @Nullable
+    public synchronized List<AutocompleteUser> get(String server, String query) {
+        long now = SystemClock.elapsedRealtime();
+
+        Entry entry = entries.get(getKey(server, query));
+        if (entry != null && now - entry.createdAtMillis < MAX_AGE_MILLIS) {
+            ApplicationWideMetricsHolder.getInstance().incrementCounter("contacts.search_cache_hits", 1);
+            return entry.results;
+        }
+
+        for (int length = query.length() - 1; length > 0; length--) {
+            entry = entries.get(getKey(server, query.substring(0, length)));
+            if (entry != null && entry.complete && now - entry.createdAtMillis < MAX_AGE_MILLIS) {
+                List<AutocompleteUser> results = new ArrayList<>();
+                for (AutocompleteUser autocompleteUser : entry.results) {
+                    if (matches(autocompleteUser, query)) {
+                        results.add(autocompleteUser);
+                    }
+                }
+                ApplicationWideMetricsHolder.getInstance().incrementCounter("contacts.search_cache_narrowed", 1);
+                return results;
+            }
+        }
+
+        ApplicationWideMetricsHolder.getInstance().incrementCounter("contacts.search_cache_misses", 1);
+        return null;
+    }
+
+    public synchronized void clear(String server) {
+        Iterator<String> iterator = entries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().startsWith(server + "\n")) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static class Entry {
+        final List<AutocompleteUser> results;
+        final boolean complete;
+        final long createdAtMillis;
+
+        Entry(List<AutocompleteUser> results, boolean complete, long createdAtMillis) {
+            this.results = results;
+            this.complete = complete;
+            this.createdAtMillis = createdAtMillis;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.contacts;
+
+import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.RetryPolicy;
+import com.nextcloud.talk.models.RetrofitBucket;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
+import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import io.reactivex.Observable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asks the server for a page of users and groups matching a query, the autocomplete API on 14 and up and
+ * the sharees API before.
+ */
+public class ContactsFetcher {
+
+    /**
+     * The autocomplete API of 14 and up ignores the page and returns all matches at once, so there is
+     * nothing to page through.
+     */
+    public static boolean isPaged(UserEntity userEntity) {
+        return !isServer14OrUp(userEntity);
+    }
+
+    public static Observable<AutocompleteUser> getContacts(NcApi ncApi, UserEntity userEntity, String query,
+                                                           int page, int pageSize) {
+        RetrofitBucket retrofitBucket;
+        boolean serverIs14OrUp = false;
+        if (isServer14OrUp(userEntity)) {
+            retrofitBucket = ApiUtils.getRetrofitBucketForContactsSearchFor14(userEntity.getBaseUrl(), query);
+            serverIs14OrUp = true;
+        } else {
+            retrofitBucket = ApiUtils.getRetrofitBucketForContactsSearch(userEntity.getBaseUrl(), query);
+        }
+
+        Map<String, Object> modifiedQueryMap = new HashMap<>(retrofitBucket.getQueryMap());
+        modifiedQueryMap.put("page", page);
+        modifiedQueryMap.put("perPage", pageSize);
+
+        List<String> shareTypesList = null;
+
+        if (serverIs14OrUp) {
+            shareTypesList = new ArrayList<>();
+            // users
+            shareTypesList.add("0");
+            // groups
+            shareTypesList.add("1");
+            // mails
+            //shareTypesList.add("4");
+
+
+            modifiedQueryMap.put("shareTypes[]", shareTypesList);
+        }
+
+        boolean finalServerIs14OrUp = serverIs14OrUp;
+        return ncApi.getContactsWithSearchParam(
+                ApiUtils.getCredentials(userEntity.getUsername(), userEntity.getToken()),
+                retrofitBucket.getUrl(), shareTypesList, modifiedQueryMap)
+                .subscribeOn(MagicSchedulers.network())
+                .compose(RetryPolicy.retry(3))
+                .flatMap(responseBody -> ContactsResponseParser.parse(responseBody, finalServerIs14OrUp));
+    }
+
+    private static boolean isServer14OrUp(UserEntity userEntity) {
+        // a hack to see if we're on 14 or not
+        return userEntity.hasSpreedCapabilityWithName("last-room-activity");
+    }
+}
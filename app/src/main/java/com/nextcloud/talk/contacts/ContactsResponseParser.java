@@ -0,0 +1,145 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.contacts;
+
+import android.util.Log;
+import com.bluelinelabs.logansquare.LoganSquare;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
+import com.nextcloud.talk.models.json.sharees.Sharee;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
+import okhttp3.ResponseBody;
+
+import java.io.IOException;
+
+/**
+ * Reads the contacts of a sharee or autocomplete response while it is still being received, one user at a
+ * time, instead of first holding the whole body in a string and then the whole parsed response in memory.
+ * <p>
+ * Sharees of servers before 14 are turned into autocomplete users, so both are handled alike afterwards.
+ */
+public class ContactsResponseParser {
+    private static final String TAG = "ContactsResponseParser";
+
+    public static Observable<AutocompleteUser> parse(ResponseBody responseBody, boolean serverIs14OrUp) {
+        return Observable.create(emitter -> {
+            try (JsonParser jsonParser = LoganSquare.JSON_FACTORY.createParser(responseBody.byteStream())) {
+                jsonParser.nextToken();
+                if (moveToField(jsonParser, "ocs") && moveToField(jsonParser, "data")) {
+                    if (serverIs14OrUp) {
+                        readAutocompleteUsers(jsonParser, emitter);
+                    } else {
+                        readShareesData(jsonParser, emitter);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Parsing response body failed while getting contacts", e);
+                emitter.tryOnError(e);
+                return;
+            } finally {
+                responseBody.close();
+            }
+
+            emitter.onComplete();
+        });
+    }
+
+    // stops on the value of the field if the current value is an object holding it, otherwise skips the value
+    private static boolean moveToField(JsonParser jsonParser, String fieldName) throws IOException {
+        if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+            jsonParser.skipChildren();
+            return false;
+        }
+
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String currentFieldName = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+            if (fieldName.equals(currentFieldName)) {
+                return true;
+            }
+            jsonParser.skipChildren();
+        }
+
+        return false;
+    }
+
+    private static void readAutocompleteUsers(JsonParser jsonParser, ObservableEmitter<AutocompleteUser> emitter)
+            throws IOException {
+        if (jsonParser.getCurrentToken() != JsonToken.START_ARRAY) {
+            jsonParser.skipChildren();
+            return;
+        }
+
+        while (jsonParser.nextToken() != JsonToken.END_ARRAY && !emitter.isDisposed()) {
+            AutocompleteUser autocompleteUser = LoganSquare.mapperFor(AutocompleteUser.class).parse(jsonParser);
+            if (autocompleteUser != null && autocompleteUser.getId() != null) {
+                emitter.onNext(autocompleteUser);
+            }
+        }
+    }
+
+    // the exact matches come in "exact", which is an empty array rather than an object when there are none
+    private static void readShareesData(JsonParser jsonParser, ObservableEmitter<AutocompleteUser> emitter)
+            throws IOException {
+        if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+            jsonParser.skipChildren();
+            return;
+        }
+
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME && !emitter.isDisposed()) {
+            String fieldName = jsonParser.getCurrentName();
+            jsonParser.nextToken();
+            if ("users".equals(fieldName)) {
+                readSharees(jsonParser, emitter);
+            } else if ("exact".equals(fieldName) && moveToField(jsonParser, "users")) {
+                readSharees(jsonParser, emitter);
+                // the rest of the exact matches is of no interest
+                while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+                    jsonParser.nextToken();
+                    jsonParser.skipChildren();
+                }
+            } else {
+                jsonParser.skipChildren();
+            }
+        }
+    }
+
+    private static void readSharees(JsonParser jsonParser, ObservableEmitter<AutocompleteUser> emitter)
+            throws IOException {
+        if (jsonParser.getCurrentToken() != JsonToken.START_ARRAY) {
+            jsonParser.skipChildren();
+            return;
+        }
+
+        while (jsonParser.nextToken() != JsonToken.END_ARRAY && !emitter.isDisposed()) {
+            Sharee sharee = LoganSquare.mapperFor(Sharee.class).parse(jsonParser);
+            if (sharee != null && sharee.getValue() != null && sharee.getValue().getShareWith() != null) {
+                AutocompleteUser autocompleteUser = new AutocompleteUser();
+                autocompleteUser.setId(sharee.getValue().getShareWith());
+                autocompleteUser.setLabel(sharee.getLabel());
+                autocompleteUser.setSource("users");
+                emitter.onNext(autocompleteUser);
+            }
+        }
+    }
+}
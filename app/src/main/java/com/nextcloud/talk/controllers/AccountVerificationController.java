@@ -50,6 +50,7 @@ import com.nextcloud.talk.models.json.rooms.RoomsOverall;
 import com.nextcloud.talk.models.json.userprofile.UserProfileOverall;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.ClosedInterfaceImpl;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
@@ -58,7 +59,6 @@ import io.reactivex.CompletableObserver;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
@@ -176,7 +176,7 @@ public class AccountVerificationController extends BaseController {
         }
 
         ncApi.getServerStatus(queryUrl)
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<Status>() {
                     @Override
@@ -218,7 +218,7 @@ public class AccountVerificationController extends BaseController {
 
     private void findServerTalkApp(String credentials) {
         ncApi.getRooms(credentials, ApiUtils.getUrlForGetRooms(baseUrl))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .subscribe(new Observer<RoomsOverall>() {
                     @Override
                     public void onSubscribe(Disposable d) {
@@ -255,7 +255,7 @@ public class AccountVerificationController extends BaseController {
                 baseUrl, displayName, null, true,
                 userId, null, null,
                 appPreferences.getTemporaryClientCertAlias(), null)
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.disk())
                 .subscribe(new Observer<UserEntity>() {
                     @Override
                     public void onSubscribe(Disposable d) {
@@ -295,7 +295,7 @@ public class AccountVerificationController extends BaseController {
     private void fetchProfile(String credentials) {
         ncApi.getUserProfile(credentials,
                 ApiUtils.getUrlForUserProfile(baseUrl))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .subscribe(new Observer<UserProfileOverall>() {
                     @Override
                     public void onSubscribe(Disposable d) {
@@ -52,9 +52,12 @@ import com.bumptech.glide.load.resource.bitmap.CircleCrop;
 import com.bumptech.glide.request.RequestOptions;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
+import com.nextcloud.talk.api.RetryPolicy;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.controllers.base.BaseController;
 import com.nextcloud.talk.events.*;
+import com.nextcloud.talk.dagger.modules.RestModule;
 import com.nextcloud.talk.models.ExternalSignalingServer;
 import com.nextcloud.talk.models.database.UserEntity;
 import com.nextcloud.talk.models.json.call.CallOverall;
@@ -69,6 +72,7 @@ import com.nextcloud.talk.models.json.signaling.settings.IceServer;
 import com.nextcloud.talk.models.json.signaling.settings.SignalingSettingsOverall;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.MagicFlipView;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.NotificationUtils;
 import com.nextcloud.talk.utils.animations.PulseAnimation;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
@@ -83,7 +87,6 @@ import io.reactivex.Observable;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import me.zhanghai.android.effortlesspermissions.AfterPermissionDenied;
 import me.zhanghai.android.effortlesspermissions.EffortlessPermissions;
 import me.zhanghai.android.effortlesspermissions.OpenAppDetailsDialogFragment;
@@ -97,6 +100,7 @@ import org.webrtc.*;
 import pub.devrel.easypermissions.AfterPermissionGranted;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -148,6 +152,14 @@ public class CallController extends BaseController {
 
     @Inject
     NcApi ncApi;
+
+    @Inject
+    NcApiCoalescer ncApiCoalescer;
+
+    @Inject
+    @Named(RestModule.LONG_POLL)
+    NcApi longPollNcApi;
+
     @Inject
     EventBus eventBus;
     @Inject
@@ -344,9 +356,9 @@ public class CallController extends BaseController {
     }
 
     private void handleFromNotification() {
-        ncApi.getRooms(credentials, ApiUtils.getUrlForGetRooms(baseUrl))
-                .retry(3)
-                .subscribeOn(Schedulers.newThread())
+        ncApiCoalescer.getRooms(ncApi, credentials, ApiUtils.getUrlForGetRooms(baseUrl))
+                .compose(RetryPolicy.retry(3))
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<RoomsOverall>() {
                     @Override
@@ -860,8 +872,8 @@ public class CallController extends BaseController {
         leavingCall = false;
 
         ncApi.getSignalingSettings(credentials, ApiUtils.getUrlForSignalingSettings(baseUrl))
-                .subscribeOn(Schedulers.newThread())
-                .retry(3)
+                .subscribeOn(MagicSchedulers.network())
+                .compose(RetryPolicy.retry(3))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<SignalingSettingsOverall>() {
                     @Override
@@ -891,7 +903,7 @@ public class CallController extends BaseController {
                                 try {
                                     userUtils.createOrUpdateUser(null, null, null, null, null, null, null,
                                             conversationUser.getId(), null, null, LoganSquare.serialize(externalSignalingServer))
-                                            .subscribeOn(Schedulers.newThread())
+                                            .subscribeOn(MagicSchedulers.disk())
                                             .subscribe();
                                 } catch (IOException exception) {
                                     Log.e(TAG, "Failed to serialize external signaling server");
@@ -944,9 +956,9 @@ public class CallController extends BaseController {
     }
 
     private void checkCapabilities() {
-        ncApi.getCapabilities(credentials, ApiUtils.getUrlForCapabilities(baseUrl))
-                .retry(3)
-                .subscribeOn(Schedulers.newThread())
+        ncApiCoalescer.getCapabilities(ncApi, credentials, ApiUtils.getUrlForCapabilities(baseUrl))
+                .compose(RetryPolicy.retry(3))
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<CapabilitiesOverall>() {
                     @Override
@@ -995,9 +1007,9 @@ public class CallController extends BaseController {
 
     private void joinRoomAndCall() {
         ncApi.joinRoom(credentials, ApiUtils.getUrlForSettingMyselfAsActiveParticipant(baseUrl, roomToken), null)
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
-                .retry(3)
+                .compose(RetryPolicy.retry(3))
                 .subscribe(new Observer<CallOverall>() {
                     @Override
                     public void onSubscribe(Disposable d) {
@@ -1037,8 +1049,8 @@ public class CallController extends BaseController {
     private void performCall() {
         ncApi.joinCall(credentials,
                 ApiUtils.getUrlForCall(baseUrl, roomToken))
-                .subscribeOn(Schedulers.newThread())
-                .retry(3)
+                .subscribeOn(MagicSchedulers.network())
+                .compose(RetryPolicy.retry(3))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<GenericOverall>() {
                     @Override
@@ -1066,11 +1078,11 @@ public class CallController extends BaseController {
 
                         if (needsPing) {
                             ncApi.pingCall(credentials, ApiUtils.getUrlForCallPing(baseUrl, roomToken))
-                                    .subscribeOn(Schedulers.newThread())
+                                    .subscribeOn(MagicSchedulers.network())
                                     .observeOn(AndroidSchedulers.mainThread())
                                     .repeatWhen(observable -> observable.delay(5000, TimeUnit.MILLISECONDS))
                                     .takeWhile(observable -> inCall)
-                                    .retry(3, observable -> inCall)
+                                    .compose(RetryPolicy.retryWhile(3, () -> inCall))
                                     .subscribe(new Observer<GenericOverall>() {
                                         @Override
                                         public void onSubscribe(Disposable d) {
@@ -1103,12 +1115,14 @@ public class CallController extends BaseController {
                         NotificationUtils.cancelExistingNotifications(getApplicationContext(), conversationUser);
 
                         if (!hasExternalSignalingServer) {
-                            ncApi.pullSignalingMessages(credentials, ApiUtils.getUrlForSignaling(baseUrl, urlToken))
-                                    .subscribeOn(Schedulers.newThread())
+                            longPollNcApi.pullSignalingMessages(credentials,
+                                    ApiUtils.getUrlForSignaling(baseUrl, urlToken))
+                                    .subscribeOn(MagicSchedulers.longPoll())
                                     .observeOn(AndroidSchedulers.mainThread())
                                     .repeatWhen(observable -> observable)
                                     .takeWhile(observable -> inCall)
-                                    .retry(3, observable -> inCall)
+                                    .compose(RetryPolicy.retryWhile(3, () -> inCall))
+                                    .compose(MagicSchedulers.trackLongPoll())
                                     .subscribe(new Observer<SignalingOverall>() {
                                         @Override
                                         public void onSubscribe(Disposable d) {
@@ -1170,6 +1184,13 @@ public class CallController extends BaseController {
 
     @Subscribe(threadMode = ThreadMode.BACKGROUND)
     public void onMessageEvent(WebSocketCommunicationEvent webSocketCommunicationEvent) {
+        // the WebSocket of another account
+        String internalUserId = webSocketCommunicationEvent.getHashMap() != null ?
+                webSocketCommunicationEvent.getHashMap().get("internalUserId") : null;
+        if (internalUserId != null && !internalUserId.equals(Long.toString(conversationUser.getId()))) {
+            return;
+        }
+
         switch (webSocketCommunicationEvent.getType()) {
             case "hello":
                 joinRoomAndCall();
@@ -1185,7 +1206,11 @@ public class CallController extends BaseController {
                 break;
             case "participantsUpdate":
                 if (webSocketCommunicationEvent.getHashMap().get("roomToken").equals(roomToken)) {
-                    processUsersInRoom((List<HashMap<String, Object>>) webSocketClient.getJobWithId(Integer.valueOf(webSocketCommunicationEvent.getHashMap().get("jobId"))));
+                    // null if a newer update of the room replaced it already
+                    List<HashMap<String, Object>> users = (List<HashMap<String, Object>>) webSocketClient.getJobWithId(Integer.valueOf(webSocketCommunicationEvent.getHashMap().get("jobId")));
+                    if (users != null) {
+                        processUsersInRoom(users);
+                    }
                 }
                 break;
             case "signalingMessage":
@@ -1348,7 +1373,7 @@ public class CallController extends BaseController {
 
     private void hangupNetworkCalls() {
         ncApi.leaveCall(credentials, ApiUtils.getUrlForCall(baseUrl, roomToken))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<GenericOverall>() {
                     @Override
@@ -1385,7 +1410,7 @@ public class CallController extends BaseController {
 
     private void leaveRoom() {
         ncApi.leaveRoom(credentials, ApiUtils.getUrlForSettingMyselfAsActiveParticipant(baseUrl, roomToken))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<GenericOverall>() {
                     @Override
@@ -1473,7 +1498,7 @@ public class CallController extends BaseController {
 
     private void getPeersForCall() {
         ncApi.getPeersForCall(credentials, ApiUtils.getUrlForCall(baseUrl, roomToken))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .subscribe(new Observer<ParticipantsOverall>() {
                     @Override
                     public void onSubscribe(Disposable d) {
@@ -1645,7 +1670,7 @@ public class CallController extends BaseController {
                 Observable
                         .interval(1, TimeUnit.SECONDS)
                         .takeWhile(observer -> inCall)
-                        .observeOn(Schedulers.newThread())
+                        .observeOn(MagicSchedulers.compute())
                         .doOnNext(n -> magicPeerConnectionWrapperList.get(finalI).sendChannelData(dataChannelMessage));
                 break;
             }
@@ -1712,8 +1737,8 @@ public class CallController extends BaseController {
 
             ncApi.sendSignalingMessages(credentials, ApiUtils.getUrlForSignaling(baseUrl, urlToken),
                     strings.toString())
-                    .retry(3)
-                    .subscribeOn(Schedulers.newThread())
+                    .compose(RetryPolicy.retry(3))
+                    .subscribeOn(MagicSchedulers.network())
                     .subscribe(new Observer<SignalingOverall>() {
                         @Override
                         public void onSubscribe(Disposable d) {
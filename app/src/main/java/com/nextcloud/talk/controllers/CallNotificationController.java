@@ -60,6 +60,8 @@ import com.bumptech.glide.request.target.SimpleTarget;
 import com.bumptech.glide.request.transition.Transition;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
+import com.nextcloud.talk.api.RetryPolicy;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.controllers.base.BaseController;
 import com.nextcloud.talk.events.ConfigurationChangeEvent;
@@ -72,6 +74,7 @@ import com.nextcloud.talk.models.json.rooms.RoomsOverall;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.DoNotDisturbUtils;
 import com.nextcloud.talk.utils.MagicFlipView;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
 import com.nextcloud.talk.utils.glide.GlideApp;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
@@ -79,7 +82,6 @@ import com.nextcloud.talk.utils.singletons.AvatarStatusCodeHolder;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import okhttp3.Cache;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
@@ -100,6 +102,9 @@ public class CallNotificationController extends BaseController {
     @Inject
     NcApi ncApi;
 
+    @Inject
+    NcApiCoalescer ncApiCoalescer;
+
     @Inject
     AppPreferences appPreferences;
 
@@ -194,9 +199,9 @@ public class CallNotificationController extends BaseController {
     private void checkIfAnyParticipantsRemainInRoom() {
         ncApi.getPeersForCall(credentials, ApiUtils.getUrlForParticipants(userBeingCalled.getBaseUrl(),
                 currentConversation.getToken()))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .takeWhile(observable -> !leavingScreen)
-                .retry(3)
+                .compose(RetryPolicy.retry(3))
                 .subscribe(new Observer<ParticipantsOverall>() {
                     @Override
                     public void onSubscribe(Disposable d) {
@@ -242,9 +247,9 @@ public class CallNotificationController extends BaseController {
     }
 
     private void handleFromNotification() {
-        ncApi.getRooms(credentials, ApiUtils.getUrlForGetRooms(userBeingCalled.getBaseUrl()))
-                .subscribeOn(Schedulers.newThread())
-                .retry(3)
+        ncApiCoalescer.getRooms(ncApi, credentials, ApiUtils.getUrlForGetRooms(userBeingCalled.getBaseUrl()))
+                .subscribeOn(MagicSchedulers.network())
+                .compose(RetryPolicy.retry(3))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<RoomsOverall>() {
                     @Override
@@ -31,6 +31,7 @@ import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.InputFilter;
 import android.text.TextUtils;
@@ -56,14 +57,27 @@ import com.nextcloud.talk.adapters.messages.MagicOutcomingTextMessageViewHolder;
 import com.nextcloud.talk.adapters.messages.MagicPreviewMessageViewHolder;
 import com.nextcloud.talk.adapters.messages.MagicSystemMessageViewHolder;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
+import com.nextcloud.talk.api.RetryPolicy;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.callbacks.MentionAutocompleteCallback;
+import com.nextcloud.talk.chat.ChatHistoryPager;
+import com.nextcloud.talk.chat.ChatMessageBatcher;
+import com.nextcloud.talk.chat.ChatMessageProcessor;
+import com.nextcloud.talk.chat.ChatMessageWindow;
+import com.nextcloud.talk.chat.ChatSyncEngine;
+import com.nextcloud.talk.chat.ChatSyncHelper;
+import com.nextcloud.talk.events.OutgoingMessageEvent;
+import com.nextcloud.talk.jobs.OutgoingMessagesWorker;
 import com.nextcloud.talk.controllers.base.BaseController;
+import com.nextcloud.talk.models.ChatMessagesDelta;
+import com.nextcloud.talk.models.database.OutgoingChatMessage;
 import com.nextcloud.talk.models.database.UserEntity;
 import com.nextcloud.talk.models.json.call.Call;
 import com.nextcloud.talk.models.json.call.CallOverall;
 import com.nextcloud.talk.models.json.chat.ChatMessage;
 import com.nextcloud.talk.models.json.chat.ChatOverall;
+import com.nextcloud.talk.models.json.chat.ChatOverallSingleMessage;
 import com.nextcloud.talk.models.json.generic.GenericOverall;
 import com.nextcloud.talk.models.json.mention.Mention;
 import com.nextcloud.talk.models.json.rooms.Conversation;
@@ -71,7 +85,11 @@ import com.nextcloud.talk.models.json.rooms.RoomOverall;
 import com.nextcloud.talk.models.json.rooms.RoomsOverall;
 import com.nextcloud.talk.presenters.MentionAutocompletePresenter;
 import com.nextcloud.talk.utils.*;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
+import com.nextcloud.talk.utils.database.chat.ChatMessageSearchUtils;
+import com.nextcloud.talk.utils.database.chat.ChatMessageStorageUtils;
+import com.nextcloud.talk.utils.database.outbox.OutgoingMessageStorageUtils;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
 import com.nextcloud.talk.utils.singletons.ApplicationWideCurrentRoomHolder;
@@ -93,10 +111,15 @@ import com.vanniktech.emoji.listeners.OnEmojiClickListener;
 import com.vanniktech.emoji.listeners.OnEmojiPopupDismissListener;
 import com.vanniktech.emoji.listeners.OnEmojiPopupShownListener;
 import com.webianks.library.PopupBubble;
+import com.yarolegovich.lovelydialog.LovelyChoiceDialog;
+import com.yarolegovich.lovelydialog.LovelyTextInputDialog;
+import io.reactivex.Observable;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
 import org.parceler.Parcels;
 import retrofit2.HttpException;
 import retrofit2.Response;
@@ -111,11 +134,29 @@ public class ChatController extends BaseController implements MessagesListAdapte
         MessagesListAdapter.Formatter<Date>, MessagesListAdapter.OnMessageLongClickListener, MessageHolders.ContentChecker {
     private static final String TAG = "ChatController";
     private static final byte CONTENT_TYPE_SYSTEM_MESSAGE = 1;
+    private static final int CACHED_MESSAGES_LIMIT = 100;
+    private static final int NEWER_MESSAGES_PAGE_SIZE = 100;
+    private static final int SEARCH_RESULTS_LIMIT = 50;
+    // messages shown on each side of a search result
+    private static final int SEARCH_RESULT_CONTEXT = 50;
+    // how close to the newest held message the user has to scroll before dropped newer ones are reloaded
+    private static final int NEWER_MESSAGES_RELOAD_DISTANCE = 20;
     @Inject
     NcApi ncApi;
+
+    @Inject
+    NcApiCoalescer ncApiCoalescer;
     @Inject
     UserUtils userUtils;
     @Inject
+    ChatMessageStorageUtils chatMessageStorageUtils;
+    @Inject
+    ChatMessageSearchUtils chatMessageSearchUtils;
+    @Inject
+    OutgoingMessageStorageUtils outgoingMessageStorageUtils;
+    @Inject
+    EventBus eventBus;
+    @Inject
     AppPreferences appPreferences;
     @BindView(R.id.messagesListView)
     MessagesList messagesListView;
@@ -134,6 +175,17 @@ public class ChatController extends BaseController implements MessagesListAdapte
     @BindView(R.id.smileyButton)
     ImageButton smileyButton;
     private List<Disposable> disposableList = new ArrayList<>();
+    private ChatSyncEngine chatSyncEngine;
+    private final ChatMessageBatcher chatMessageBatcher = new ChatMessageBatcher();
+    private final List<ChatMessage> pendingMessages = new ArrayList<>();
+    // own messages the chat sync brought before we learned which pending message they belong to
+    private final List<ChatMessage> unmatchedOwnMessages = new ArrayList<>();
+    private final ChatHistoryPager chatHistoryPager = new ChatHistoryPager();
+    private boolean isLoadingPastMessages = false;
+    private final ChatMessageWindow chatMessageWindow = new ChatMessageWindow();
+    private boolean isLoadingNewerMessages = false;
+    private Disposable chatSyncDisposable;
+    private Disposable pastMessagesDisposable;
     private String conversationName;
     private String roomToken;
     private UserEntity conversationUser;
@@ -155,7 +207,6 @@ public class ChatController extends BaseController implements MessagesListAdapte
     private boolean isFirstMessagesProcessing = true;
     private boolean isHelloClicked;
     private boolean isLeavingForConversation;
-    private boolean isLinkPreviewAllowed;
     private boolean wasDetached;
     private EmojiPopup emojiPopup;
 
@@ -188,11 +239,13 @@ public class ChatController extends BaseController implements MessagesListAdapte
         }
 
         this.voiceOnly = args.getBoolean(BundleKeys.KEY_CALL_VOICE_ONLY, false);
+
+        this.chatSyncEngine = ChatSyncHelper.getChatSyncEngineForUserEntity(conversationUser);
     }
 
     private void getRoomInfo() {
-        ncApi.getRoom(credentials, ApiUtils.getRoom(conversationUser.getBaseUrl(), roomToken))
-                .subscribeOn(Schedulers.newThread())
+        ncApiCoalescer.getRoom(ncApi, credentials, ApiUtils.getRoom(conversationUser.getBaseUrl(), roomToken))
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<RoomOverall>() {
                     @Override
@@ -207,7 +260,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
                         setTitle();
 
                         setupMentionAutocomplete();
-                        joinRoomWithPassword();
+                        loadCachedMessagesAndJoinRoom();
 
                     }
 
@@ -224,8 +277,8 @@ public class ChatController extends BaseController implements MessagesListAdapte
     }
 
     private void handleFromNotification() {
-        ncApi.getRooms(credentials, ApiUtils.getUrlForGetRooms(conversationUser.getBaseUrl()))
-                .subscribeOn(Schedulers.newThread())
+        ncApiCoalescer.getRooms(ncApi, credentials, ApiUtils.getUrlForGetRooms(conversationUser.getBaseUrl()))
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<RoomsOverall>() {
                     @Override
@@ -246,7 +299,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
 
                         if (!TextUtils.isEmpty(roomToken)) {
                             setupMentionAutocomplete();
-                            joinRoomWithPassword();
+                            loadCachedMessagesAndJoinRoom();
                         }
                     }
 
@@ -337,6 +390,21 @@ public class ChatController extends BaseController implements MessagesListAdapte
         });
 
         messagesListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                super.onScrolled(recyclerView, dx, dy);
+
+                int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+                chatHistoryPager.onScrolled(lastVisiblePosition);
+
+                if (!historyRead && !isFirstMessagesProcessing && adapter != null &&
+                        chatHistoryPager.shouldPrefetch(lastVisiblePosition, adapter.getItemCount())) {
+                    pullPastChatMessages();
+                }
+
+                trimChatMessageWindow(layoutManager.findFirstVisibleItemPosition(), lastVisiblePosition);
+            }
+
             @Override
             public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
                 super.onScrollStateChanged(recyclerView, newState);
@@ -401,7 +469,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
                 getRoomInfo();
             } else {
                 setupMentionAutocomplete();
-                joinRoomWithPassword();
+                loadCachedMessagesAndJoinRoom();
             }
         }
     }
@@ -438,6 +506,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
     @Override
     protected void onAttach(@NonNull View view) {
         super.onAttach(view);
+        eventBus.register(this);
 
         isLeavingForConversation = false;
         ApplicationWideCurrentRoomHolder.getInstance().setCurrentRoomId(roomId);
@@ -445,8 +514,6 @@ public class ChatController extends BaseController implements MessagesListAdapte
         ApplicationWideCurrentRoomHolder.getInstance().setInCall(false);
         ApplicationWideCurrentRoomHolder.getInstance().setUserInRoom(conversationUser);
 
-        isLinkPreviewAllowed = appPreferences.getAreLinkPreviewsAllowed();
-
         emojiPopup = EmojiPopup.Builder.fromRootView(view).setOnEmojiPopupShownListener(new OnEmojiPopupShownListener() {
             @Override
             public void onEmojiPopupShown() {
@@ -490,6 +557,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
     @Override
     protected void onDetach(@NonNull View view) {
         super.onDetach(view);
+        eventBus.unregister(this);
         ApplicationWideCurrentRoomHolder.getInstance().clear();
 
         if (conversationUser.hasSpreedCapabilityWithName("no-ping")
@@ -512,6 +580,10 @@ public class ChatController extends BaseController implements MessagesListAdapte
             getActivity().findViewById(R.id.toolbar).setOnClickListener(null);
         }
 
+        if (chatSyncDisposable != null) {
+            chatSyncDisposable.dispose();
+        }
+
         adapter = null;
         inChat = false;
     }
@@ -528,11 +600,11 @@ public class ChatController extends BaseController implements MessagesListAdapte
     private void startPing() {
         if (!conversationUser.hasSpreedCapabilityWithName("no-ping")) {
             ncApi.pingCall(credentials, ApiUtils.getUrlForCallPing(conversationUser.getBaseUrl(), roomToken))
-                    .subscribeOn(Schedulers.newThread())
+                    .subscribeOn(MagicSchedulers.network())
                     .observeOn(AndroidSchedulers.mainThread())
                     .repeatWhen(observable -> observable.delay(5000, TimeUnit.MILLISECONDS))
                     .takeWhile(observable -> inChat)
-                    .retry(3, observable -> inChat)
+                    .compose(RetryPolicy.retryWhile(3, () -> inChat))
                     .subscribe(new Observer<GenericOverall>() {
                         @Override
                         public void onSubscribe(Disposable d) {
@@ -568,14 +640,369 @@ public class ChatController extends BaseController implements MessagesListAdapte
         }
     }
 
+    private boolean canUseMessageCache() {
+        // guests get a fresh identity for every visit, so there is nothing worth caching for them
+        return !TextUtils.isEmpty(credentials);
+    }
+
+    private void loadCachedMessagesAndJoinRoom() {
+        if (!canUseMessageCache()) {
+            joinRoomWithPassword();
+            return;
+        }
+
+        boolean linkPreviewAllowed = appPreferences.getAreLinkPreviewsAllowed();
+        chatMessageStorageUtils.getMessages(conversationUser.getId(), roomToken, CACHED_MESSAGES_LIMIT)
+                .doOnNext(chatMessageList -> prepareHistoryMessages(chatMessageList, linkPreviewAllowed))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Observer<List<ChatMessage>>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+                        disposableList.add(d);
+                    }
+
+                    @Override
+                    public void onNext(List<ChatMessage> chatMessageList) {
+                        processCachedMessages(chatMessageList);
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Log.e(TAG, "Failed to load cached messages");
+                        loadPendingMessages();
+                        joinRoomWithPassword();
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        loadPendingMessages();
+                        joinRoomWithPassword();
+                    }
+                });
+    }
+
+    private void loadPendingMessages() {
+        outgoingMessageStorageUtils.getMessagesForRoom(conversationUser.getId(), roomToken)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Observer<List<OutgoingChatMessage>>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+                        disposableList.add(d);
+                    }
+
+                    @Override
+                    public void onNext(List<OutgoingChatMessage> outgoingChatMessages) {
+                        for (OutgoingChatMessage outgoingChatMessage : outgoingChatMessages) {
+                            addPendingMessage(outgoingChatMessage);
+                        }
+
+                        if (outgoingChatMessages.size() > 0) {
+                            OutgoingMessagesWorker.enqueue(conversationUser.getId());
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Log.e(TAG, "Failed to load queued messages");
+                    }
+
+                    @Override
+                    public void onComplete() {
+
+                    }
+                });
+    }
+
+    private void addPendingMessage(OutgoingChatMessage outgoingChatMessage) {
+        if (adapter == null) {
+            return;
+        }
+
+        ChatMessage chatMessage = ChatMessageProcessor.createPendingMessage(outgoingChatMessage, conversationUser);
+        pendingMessages.add(chatMessage);
+
+        if (loadingProgressBar != null) {
+            loadingProgressBar.setVisibility(View.GONE);
+        }
+
+        if (emptyLayout != null) {
+            emptyLayout.setVisibility(View.GONE);
+        }
+
+        if (messagesListView != null) {
+            messagesListView.setVisibility(View.VISIBLE);
+        }
+
+        adapter.addToStart(chatMessage, true);
+    }
+
+    private void removePendingMessage(long outgoingMessageId) {
+        for (int i = 0; i < pendingMessages.size(); i++) {
+            if (pendingMessages.get(i).getPendingMessageId() == outgoingMessageId) {
+                removePendingMessageAt(i);
+                return;
+            }
+        }
+    }
+
+    private void removePendingMessageAt(int index) {
+        ChatMessage chatMessage = pendingMessages.remove(index);
+
+        if (adapter != null) {
+            adapter.deleteById(chatMessage.getId());
+        }
+
+        if (pendingMessages.isEmpty()) {
+            unmatchedOwnMessages.clear();
+        }
+    }
+
+    // a pending message stays until the chat sync hands it back, which is when its synced copy takes over
+    private void onPendingMessageSent(long outgoingMessageId, int sentMessageId) {
+        for (int i = 0; i < pendingMessages.size(); i++) {
+            ChatMessage pendingMessage = pendingMessages.get(i);
+            if (pendingMessage.getPendingMessageId() != outgoingMessageId) {
+                continue;
+            }
+
+            for (int j = 0; j < unmatchedOwnMessages.size(); j++) {
+                if (isSyncedCopy(pendingMessage, sentMessageId, unmatchedOwnMessages.get(j))) {
+                    unmatchedOwnMessages.remove(j);
+                    removePendingMessageAt(i);
+                    return;
+                }
+            }
+
+            pendingMessage.setPendingMessageSent(true);
+            pendingMessage.setSentMessageId(sentMessageId);
+            return;
+        }
+    }
+
+    // the server hands our own messages back through the chat sync, which replaces their pending copies
+    private void removeDeliveredPendingMessages(List<ChatMessage> chatMessageList) {
+        for (ChatMessage chatMessage : chatMessageList) {
+            if (pendingMessages.isEmpty()) {
+                return;
+            }
+
+            if (!"users".equals(chatMessage.getActorType()) ||
+                    !conversationUser.getUserId().equals(chatMessage.getActorId())) {
+                continue;
+            }
+
+            boolean isMatched = false;
+            for (int i = 0; i < pendingMessages.size(); i++) {
+                ChatMessage pendingMessage = pendingMessages.get(i);
+                if (pendingMessage.isPendingMessageSent() &&
+                        isSyncedCopy(pendingMessage, pendingMessage.getSentMessageId(), chatMessage)) {
+                    removePendingMessageAt(i);
+                    isMatched = true;
+                    break;
+                }
+            }
+
+            if (!isMatched) {
+                unmatchedOwnMessages.add(chatMessage);
+            }
+        }
+    }
+
+    // servers before 14 don't answer with the sent message, so only the text is left to go by there
+    private boolean isSyncedCopy(ChatMessage pendingMessage, int sentMessageId, ChatMessage chatMessage) {
+        if (sentMessageId != 0) {
+            return sentMessageId == chatMessage.getJsonMessageId();
+        }
+
+        return pendingMessage.getMessage().trim().equals(chatMessage.getMessage().trim());
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onMessageEvent(OutgoingMessageEvent outgoingMessageEvent) {
+        if (outgoingMessageEvent.getAccountIdentifier() != conversationUser.getId() ||
+                !roomToken.equals(outgoingMessageEvent.getRoomToken())) {
+            return;
+        }
+
+        long outgoingMessageId = outgoingMessageEvent.getOutgoingMessageId();
+
+        if (outgoingMessageEvent.isSent()) {
+            onPendingMessageSent(outgoingMessageId, outgoingMessageEvent.getSentMessageId());
+        } else {
+            removePendingMessage(outgoingMessageId);
+
+            if (getActivity() != null) {
+                Toast.makeText(getActivity(), R.string.nc_message_not_sent, Toast.LENGTH_LONG).show();
+            }
+        }
+    }
+
+    private void processCachedMessages(List<ChatMessage> chatMessageList) {
+        if (chatMessageList.size() == 0 || adapter == null) {
+            return;
+        }
+
+        isFirstMessagesProcessing = false;
+
+        if (loadingProgressBar != null) {
+            loadingProgressBar.setVisibility(View.GONE);
+        }
+
+        if (emptyLayout != null) {
+            emptyLayout.setVisibility(View.GONE);
+        }
+
+        if (messagesListView != null) {
+            messagesListView.setVisibility(View.VISIBLE);
+        }
+
+        trackLastKnownMessageIds(chatMessageList);
+        adapter.addToEnd(chatMessageList, false);
+        chatMessageWindow.onAddedToEnd(chatMessageList);
+    }
+
+    /**
+     * Keeps the number of messages held by the adapter bounded by dropping the ones far away from the
+     * screen. Dropped history is pulled again from the server when scrolling back to it, dropped newer
+     * messages are reloaded from the message cache, or from the server once pruned from it.
+     */
+    private void trimChatMessageWindow(int firstVisiblePosition, int lastVisiblePosition) {
+        if (adapter == null || chatMessageWindow.isEmpty()) {
+            return;
+        }
+
+        int firstVisibleIndex = findVisibleMessageIndex(firstVisiblePosition, lastVisiblePosition);
+        int lastVisibleIndex = findVisibleMessageIndex(lastVisiblePosition, firstVisiblePosition);
+
+        // with nothing but date headers and pending messages on screen there is nothing to measure from
+        boolean hasVisibleMessages = firstVisibleIndex != -1 && lastVisibleIndex != -1;
+
+        if (hasVisibleMessages && firstVisibleIndex < chatMessageWindow.size() - lastVisibleIndex) {
+            if (!isLoadingPastMessages) {
+                List<ChatMessage> evictedMessages = chatMessageWindow.evictOldest(lastVisibleIndex);
+                if (evictedMessages.size() > 0) {
+                    adapter.delete(evictedMessages);
+                    globalLastKnownPastMessageId = chatMessageWindow.getOldestMessageId();
+                    historyRead = false;
+                }
+            }
+        } else if (hasVisibleMessages && canUseMessageCache() && !isLoadingNewerMessages) {
+            List<ChatMessage> evictedMessages = chatMessageWindow.evictNewest(firstVisibleIndex);
+            if (evictedMessages.size() > 0) {
+                adapter.delete(evictedMessages);
+            }
+        }
+
+        if (chatMessageWindow.hasEvictedNewer() && firstVisiblePosition <= NEWER_MESSAGES_RELOAD_DISTANCE) {
+            loadNewerMessages();
+        }
+    }
+
+    // walks the visible adapter positions from one end to the other and returns the window index of the first
+    // message found, skipping the date headers and pending messages that only the adapter holds
+    private int findVisibleMessageIndex(int fromPosition, int toPosition) {
+        if (fromPosition == RecyclerView.NO_POSITION || toPosition == RecyclerView.NO_POSITION) {
+            return -1;
+        }
+
+        int step = fromPosition <= toPosition ? 1 : -1;
+        for (int position = fromPosition; position != toPosition + step; position += step) {
+            View view = layoutManager.findViewByPosition(position);
+            Object tag = view != null ? view.getTag(R.id.chat_message) : null;
+            if (tag instanceof ChatMessage) {
+                int index = chatMessageWindow.indexOf((ChatMessage) tag);
+                if (index != -1) {
+                    return index;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    private void loadNewerMessages() {
+        if (isLoadingNewerMessages) {
+            return;
+        }
+
+        isLoadingNewerMessages = true;
+        boolean linkPreviewAllowed = appPreferences.getAreLinkPreviewsAllowed();
+        int newestMessageId = chatMessageWindow.getNewestMessageId();
+        chatMessageStorageUtils.getMessagesFollowing(conversationUser.getId(), roomToken, newestMessageId,
+                NEWER_MESSAGES_PAGE_SIZE)
+                // the cache only keeps the newest messages of a room, what was pruned since comes from the server
+                .switchIfEmpty(pullNewerMessages(newestMessageId))
+                .doOnNext(chatMessageList -> prepareHistoryMessages(chatMessageList, linkPreviewAllowed))
+                .observeOn(AndroidSchedulers.mainThread())
+                .doFinally(() -> isLoadingNewerMessages = false)
+                .subscribe(new Observer<List<ChatMessage>>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+                        disposableList.add(d);
+                    }
+
+                    @Override
+                    public void onNext(List<ChatMessage> chatMessageList) {
+                        if (adapter == null) {
+                            return;
+                        }
+
+                        for (int i = chatMessageList.size() - 1; i >= 0; i--) {
+                            adapter.addToStart(chatMessageList.get(i), false);
+                            chatMessageWindow.onAddedToStart(chatMessageList.get(i));
+                        }
+
+                        if (chatMessageList.size() < NEWER_MESSAGES_PAGE_SIZE) {
+                            chatMessageWindow.onNewerReloaded();
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Log.e(TAG, "Failed to reload newer messages");
+                    }
+
+                    @Override
+                    public void onComplete() {
+
+                    }
+                });
+    }
+
+    /**
+     * Returns up to a page of the messages following {@code lastKnownMessageId} from the server, newest first.
+     */
+    private Observable<List<ChatMessage>> pullNewerMessages(int lastKnownMessageId) {
+        Map<String, Integer> fieldMap = new HashMap<>();
+        fieldMap.put("lookIntoFuture", 1);
+        fieldMap.put("limit", NEWER_MESSAGES_PAGE_SIZE);
+        fieldMap.put("lastKnownMessageId", lastKnownMessageId);
+        // the messages are there already, nothing to wait for
+        fieldMap.put("timeout", 0);
+
+        return ncApi.pullChatMessages(credentials, ApiUtils.getUrlForChat(conversationUser.getBaseUrl(), roomToken),
+                fieldMap)
+                .subscribeOn(MagicSchedulers.network())
+                .compose(RetryPolicy.retry(3))
+                .map(response -> {
+                    List<ChatMessage> chatMessageList = new ArrayList<>();
+                    if (response.code() == 200 && response.body() != null) {
+                        // newer messages are handed out oldest first
+                        chatMessageList.addAll(response.body().getOcs().getData());
+                        Collections.reverse(chatMessageList);
+                    }
+                    return chatMessageList;
+                });
+    }
+
     private void joinRoomWithPassword() {
 
         if (currentCall == null) {
             ncApi.joinRoom(credentials,
                     ApiUtils.getUrlForSettingMyselfAsActiveParticipant(conversationUser.getBaseUrl(), roomToken), roomPassword)
-                    .subscribeOn(Schedulers.newThread())
+                    .subscribeOn(MagicSchedulers.network())
                     .observeOn(AndroidSchedulers.mainThread())
-                    .retry(3)
+                    .compose(RetryPolicy.retry(3))
                     .subscribe(new Observer<CallOverall>() {
                         @Override
                         public void onSubscribe(Disposable d) {
@@ -589,9 +1016,9 @@ public class ChatController extends BaseController implements MessagesListAdapte
                             ApplicationWideCurrentRoomHolder.getInstance().setSession(currentCall.getSessionId());
                             startPing();
                             if (isFirstMessagesProcessing) {
-                                pullChatMessages(0);
+                                pullPastChatMessages();
                             } else {
-                                pullChatMessages(1);
+                                startChatSync();
                             }
                             if (startCallFromNotification != null && startCallFromNotification) {
                                 startCallFromNotification = false;
@@ -614,9 +1041,9 @@ public class ChatController extends BaseController implements MessagesListAdapte
             ApplicationWideCurrentRoomHolder.getInstance().setSession(currentCall.getSessionId());
             startPing();
             if (isFirstMessagesProcessing) {
-                pullChatMessages(0);
+                pullPastChatMessages();
             } else {
-                pullChatMessages(1);
+                startChatSync();
             }
         }
     }
@@ -625,7 +1052,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
         ncApi.leaveRoom(credentials,
                 ApiUtils.getUrlForSettingMyselfAsActiveParticipant(conversationUser.getBaseUrl(),
                         roomToken))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<GenericOverall>() {
                     @Override
@@ -666,20 +1093,59 @@ public class ChatController extends BaseController implements MessagesListAdapte
     }
 
     private void sendMessage(CharSequence message) {
+        // guests have no account to queue messages for
+        if (!canUseMessageCache()) {
+            sendMessageDirectly(message);
+            return;
+        }
+
+        outgoingMessageStorageUtils.storeMessage(conversationUser.getId(), roomToken, message.toString(),
+                conversationUser.getDisplayName())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Observer<OutgoingChatMessage>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+
+                    }
+
+                    @Override
+                    public void onNext(OutgoingChatMessage outgoingChatMessage) {
+                        OutgoingMessagesWorker.enqueue(conversationUser.getId());
+
+                        if (popupBubble != null && popupBubble.isShown()) {
+                            popupBubble.hide();
+                        }
+
+                        addPendingMessage(outgoingChatMessage);
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Log.e(TAG, "Failed to queue message, sending it right away");
+                        sendMessageDirectly(message);
+                    }
+
+                    @Override
+                    public void onComplete() {
 
+                    }
+                });
+    }
+
+    private void sendMessageDirectly(CharSequence message) {
         ncApi.sendChatMessage(credentials, ApiUtils.getUrlForChat(conversationUser.getBaseUrl(), roomToken),
                 message, conversationUser
                         .getDisplayName())
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(new Observer<GenericOverall>() {
+                .subscribe(new Observer<ChatOverallSingleMessage>() {
                     @Override
                     public void onSubscribe(Disposable d) {
 
                     }
 
                     @Override
-                    public void onNext(GenericOverall genericOverall) {
+                    public void onNext(ChatOverallSingleMessage chatOverallSingleMessage) {
                         myFirstMessage = message;
 
                         if (popupBubble != null && popupBubble.isShown()) {
@@ -714,98 +1180,120 @@ public class ChatController extends BaseController implements MessagesListAdapte
                 });
     }
 
-    private void pullChatMessages(int lookIntoFuture) {
-        if (!inChat) {
+    private void startChatSync() {
+        if (!inChat || wasDetached) {
             return;
         }
 
-        if (!lookingIntoFuture && lookIntoFuture == 1) {
-            lookingIntoFuture = true;
+        lookingIntoFuture = true;
+
+        if (chatSyncDisposable != null) {
+            chatSyncDisposable.dispose();
         }
 
-        Map<String, Integer> fieldMap = new HashMap<>();
-        fieldMap.put("lookIntoFuture", lookIntoFuture);
-        fieldMap.put("limit", 25);
+        chatSyncEngine.getChatMessagesDeltas(roomToken, globalLastKnownFutureMessageId,
+                currentCall != null ? currentCall.getSessionId() : null)
+                .map(chatMessagesDelta -> {
+                    if (chatMessagesDelta.isAfterGap()) {
+                        chatMessageBatcher.onGap();
+                    }
 
-        int lastKnown;
-        if (lookIntoFuture == 1) {
-            lastKnown = globalLastKnownFutureMessageId;
-        } else {
-            lastKnown = globalLastKnownPastMessageId;
-        }
+                    return new ChatMessagesDelta(chatMessagesDelta.getRoomToken(),
+                            chatMessageBatcher.prepareNewMessages(chatMessagesDelta.getChatMessages()),
+                            chatMessagesDelta.getLastKnownMessageId(), chatMessagesDelta.isAfterGap());
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .takeWhile(observable -> inChat && !wasDetached)
+                .subscribe(new Observer<ChatMessagesDelta>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+                        chatSyncDisposable = d;
+                        disposableList.add(d);
+                    }
 
-        if (lastKnown != -1) {
-            fieldMap.put("lastKnownMessageId", lastKnown);
-        }
+                    @Override
+                    public void onNext(ChatMessagesDelta chatMessagesDelta) {
+                        globalLastKnownFutureMessageId = chatMessagesDelta.getLastKnownMessageId();
+                        if (chatMessagesDelta.isAfterGap()) {
+                            showNewestMessages(chatMessagesDelta.getChatMessages());
+                        } else {
+                            processMessages(chatMessagesDelta.getChatMessages(), true);
+                        }
+                    }
 
-        if (!wasDetached) {
-            if (lookIntoFuture == 1) {
-                ncApi.pullChatMessages(credentials, ApiUtils.getUrlForChat(conversationUser.getBaseUrl(),
-                        roomToken),
-                        fieldMap)
-                        .subscribeOn(Schedulers.newThread())
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .takeWhile(observable -> inChat && !wasDetached)
-                        .retry(3, observable -> inChat && !wasDetached)
-                        .subscribe(new Observer<Response>() {
-                            @Override
-                            public void onSubscribe(Disposable d) {
-                                disposableList.add(d);
-                            }
+                    @Override
+                    public void onError(Throwable e) {
 
-                            @Override
-                            public void onNext(Response response) {
-                                processMessages(response, true);
-                            }
+                    }
 
-                            @Override
-                            public void onError(Throwable e) {
+                    @Override
+                    public void onComplete() {
 
-                            }
+                    }
+                });
+    }
 
-                            @Override
-                            public void onComplete() {
-                                pullChatMessages(1);
-                            }
-                        });
+    private void pullPastChatMessages() {
+        // at most one page of history is requested at a time
+        if (!inChat || isLoadingPastMessages) {
+            return;
+        }
 
-            } else {
-                ncApi.pullChatMessages(credentials,
-                        ApiUtils.getUrlForChat(conversationUser.getBaseUrl(), roomToken), fieldMap)
-                        .subscribeOn(Schedulers.newThread())
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .retry(3, observable -> inChat && !wasDetached)
-                        .takeWhile(observable -> inChat && !wasDetached)
-                        .subscribe(new Observer<Response>() {
-                            @Override
-                            public void onSubscribe(Disposable d) {
-                                disposableList.add(d);
-                            }
+        Map<String, Integer> fieldMap = new HashMap<>();
+        fieldMap.put("lookIntoFuture", 0);
+        fieldMap.put("limit", chatHistoryPager.getPageSize());
 
-                            @Override
-                            public void onNext(Response response) {
-                                processMessages(response, false);
-                            }
+        if (globalLastKnownPastMessageId != -1) {
+            fieldMap.put("lastKnownMessageId", globalLastKnownPastMessageId);
+        }
 
-                            @Override
-                            public void onError(Throwable e) {
+        if (!wasDetached) {
+            isLoadingPastMessages = true;
+            long requestStartMillis = SystemClock.elapsedRealtime();
+            boolean linkPreviewAllowed = appPreferences.getAreLinkPreviewsAllowed();
+            ncApi.pullChatMessages(credentials,
+                    ApiUtils.getUrlForChat(conversationUser.getBaseUrl(), roomToken), fieldMap)
+                    .subscribeOn(MagicSchedulers.network())
+                    .doOnNext(response -> {
+                        if (response.code() == 200) {
+                            prepareHistoryMessages(response.body().getOcs().getData(), linkPreviewAllowed);
+                        }
+                    })
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .compose(RetryPolicy.retryWhile(3, () -> inChat && !wasDetached))
+                    .takeWhile(observable -> inChat && !wasDetached)
+                    .doFinally(() -> isLoadingPastMessages = false)
+                    .subscribe(new Observer<Response>() {
+                        @Override
+                        public void onSubscribe(Disposable d) {
+                            pastMessagesDisposable = d;
+                            disposableList.add(d);
+                        }
 
-                            }
+                        @Override
+                        public void onNext(Response response) {
+                            chatHistoryPager.onPageLoaded(SystemClock.elapsedRealtime() - requestStartMillis);
+                            processPastMessages(response);
+                        }
 
-                            @Override
-                            public void onComplete() {
+                        @Override
+                        public void onError(Throwable e) {
 
-                            }
-                        });
-            }
+                        }
+
+                        @Override
+                        public void onComplete() {
+
+                        }
+                    });
         }
     }
 
-    private void processMessages(Response response, boolean isFromTheFuture) {
+    private void processPastMessages(Response response) {
         if (response.code() == 200) {
             ChatOverall chatOverall = (ChatOverall) response.body();
-            List<ChatMessage> chatMessageList = chatOverall.getOcs().getData();
-
+            processMessages(chatOverall.getOcs().getData(), false);
+        } else if (response.code() == 304) {
             if (isFirstMessagesProcessing) {
                 NotificationUtils.cancelExistingNotifications(getApplicationContext(), conversationUser);
 
@@ -814,25 +1302,37 @@ public class ChatController extends BaseController implements MessagesListAdapte
                     loadingProgressBar.setVisibility(View.GONE);
                 }
 
-                if (chatMessageList.size() == 0) {
-                    if (emptyLayout != null) {
-                        emptyLayout.setVisibility(View.VISIBLE);
-                    }
+                if (emptyLayout != null && emptyLayout.getVisibility() != View.VISIBLE) {
+                    emptyLayout.setVisibility(View.VISIBLE);
+                }
+            }
 
-                    if (messagesListView != null) {
-                        messagesListView.setVisibility(View.GONE);
-                    }
+            historyRead = true;
 
-                } else {
-                    if (emptyLayout != null) {
-                        emptyLayout.setVisibility(View.GONE);
-                    }
+            if (!lookingIntoFuture && inChat) {
+                startChatSync();
+            }
+        }
+    }
 
-                    if (messagesListView != null) {
-                        messagesListView.setVisibility(View.VISIBLE);
-                    }
+    private void processMessages(List<ChatMessage> chatMessageList, boolean isFromTheFuture) {
+        if (isFirstMessagesProcessing) {
+            NotificationUtils.cancelExistingNotifications(getApplicationContext(), conversationUser);
+
+            isFirstMessagesProcessing = false;
+            if (loadingProgressBar != null) {
+                loadingProgressBar.setVisibility(View.GONE);
+            }
 
+            if (chatMessageList.size() == 0 && pendingMessages.isEmpty()) {
+                if (emptyLayout != null) {
+                    emptyLayout.setVisibility(View.VISIBLE);
                 }
+
+                if (messagesListView != null) {
+                    messagesListView.setVisibility(View.GONE);
+                }
+
             } else {
                 if (emptyLayout != null) {
                     emptyLayout.setVisibility(View.GONE);
@@ -841,111 +1341,95 @@ public class ChatController extends BaseController implements MessagesListAdapte
                 if (messagesListView != null) {
                     messagesListView.setVisibility(View.VISIBLE);
                 }
-            }
 
-            int countGroupedMessages = 0;
-            if (!isFromTheFuture) {
-
-                for (int i = 0; i < chatMessageList.size(); i++) {
-                    if (chatMessageList.size() > i + 1) {
-                        if (TextUtils.isEmpty(chatMessageList.get(i).getSystemMessage()) &&
-                                TextUtils.isEmpty(chatMessageList.get(i + 1).getSystemMessage()) &&
-                                chatMessageList.get(i + 1).getActorId().equals(chatMessageList.get(i).getActorId()) &&
-                                countGroupedMessages < 4 && DateFormatter.isSameDay(chatMessageList.get(i).getCreatedAt(),
-                                chatMessageList.get(i + 1).getCreatedAt())) {
-                            chatMessageList.get(i).setGrouped(true);
-                            countGroupedMessages++;
-                        } else {
-                            countGroupedMessages = 0;
-                        }
-                    }
-
-                    ChatMessage chatMessage = chatMessageList.get(i);
-                    chatMessage.setLinkPreviewAllowed(isLinkPreviewAllowed);
-                    chatMessage.setBaseUrl(conversationUser.getBaseUrl());
-                    chatMessage.setActiveUserId(conversationUser.getUserId());
-                    if (globalLastKnownPastMessageId == -1 || chatMessageList.get(i).getJsonMessageId() <
-                            globalLastKnownPastMessageId) {
-                        globalLastKnownPastMessageId = chatMessageList.get(i).getJsonMessageId();
-                    }
-
-                    if (globalLastKnownFutureMessageId == -1) {
-                        if (chatMessageList.get(i).getJsonMessageId() > globalLastKnownFutureMessageId) {
-                            globalLastKnownFutureMessageId = chatMessageList.get(i).getJsonMessageId();
-                        }
-                    }
-                }
+            }
+        } else {
+            if (emptyLayout != null) {
+                emptyLayout.setVisibility(View.GONE);
+            }
 
-                if (adapter != null) {
-                    adapter.addToEnd(chatMessageList, false);
-                }
+            if (messagesListView != null) {
+                messagesListView.setVisibility(View.VISIBLE);
+            }
+        }
 
-            } else {
+        if (!isFromTheFuture) {
+            trackLastKnownMessageIds(chatMessageList);
 
-                ChatMessage chatMessage;
+            if (adapter != null) {
+                adapter.addToEnd(chatMessageList, false);
+                chatMessageWindow.onAddedToEnd(chatMessageList);
+            }
 
-                for (int i = 0; i < chatMessageList.size(); i++) {
-                    chatMessage = chatMessageList.get(i);
+        } else if (chatMessageList.size() > 0 && adapter != null) {
+            removeDeliveredPendingMessages(chatMessageList);
 
-                    chatMessage.setBaseUrl(conversationUser.getBaseUrl());
-                    chatMessage.setActiveUserId(conversationUser.getUserId());
-                    chatMessage.setLinkPreviewAllowed(isLinkPreviewAllowed);
+            // grouping and de-duplication already happened in the background, see startChatSync
+            // while newer messages are dropped from the adapter, new ones only reach it when those are reloaded
+            boolean isShowingNewest = !chatMessageWindow.hasEvictedNewer();
+            boolean shouldScroll = isShowingNewest &&
+                    (layoutManager.findFirstVisibleItemPosition() == 0 || adapter.getItemCount() == 0);
 
-                    // if credentials are empty, we're acting as a guest
-                    if (TextUtils.isEmpty(credentials) && !TextUtils.isEmpty(myFirstMessage.toString())) {
-                        if (chatMessage.getActorType().equals("guests")) {
-                            conversationUser.setUserId(chatMessage.getActorId());
-                            setSenderId();
-                        }
-                    }
+            ChatMessage chatMessage;
 
-                    boolean shouldScroll = layoutManager.findFirstVisibleItemPosition() == 0 ||
-                            (adapter != null && adapter.getItemCount() == 0);
+            for (int i = 0; i < chatMessageList.size(); i++) {
+                chatMessage = chatMessageList.get(i);
 
-                    if (!shouldScroll && popupBubble != null) {
-                        if (!popupBubble.isShown()) {
-                            newMessagesCount = 1;
-                            popupBubble.show();
-                        } else if (popupBubble.isShown()) {
-                            newMessagesCount++;
-                        }
-                    } else {
-                        newMessagesCount = 0;
+                // if credentials are empty, we're acting as a guest
+                if (TextUtils.isEmpty(credentials) && !TextUtils.isEmpty(myFirstMessage.toString())) {
+                    if (chatMessage.getActorType().equals("guests")) {
+                        conversationUser.setUserId(chatMessage.getActorId());
+                        setSenderId();
                     }
-
-                    chatMessage.setGrouped(adapter.isPreviousSameAuthor(chatMessage.getActorId(), -1) && (adapter.getSameAuthorLastMessagesCount(chatMessage.getActorId()) % 5) > 0);
-
-                    adapter.addToStart(chatMessage, shouldScroll);
                 }
 
-                String xChatLastGivenHeader;
-                if (response.headers().size() > 0 && !TextUtils.isEmpty((xChatLastGivenHeader = response.headers().get
-                        ("X-Chat-Last-Given")))) {
-                    globalLastKnownFutureMessageId = Integer.parseInt(xChatLastGivenHeader);
+                // the inserts are only laid out on the next frame, so the whole batch ends up in a single pass
+                if (isShowingNewest) {
+                    adapter.addToStart(chatMessage, false);
+                    chatMessageWindow.onAddedToStart(chatMessage);
                 }
             }
 
-            if (!lookingIntoFuture && inChat) {
-                pullChatMessages(1);
+            if (shouldScroll) {
+                newMessagesCount = 0;
+                layoutManager.scrollToPosition(0);
+            } else if (popupBubble != null) {
+                if (!popupBubble.isShown()) {
+                    newMessagesCount = chatMessageList.size();
+                    popupBubble.show();
+                } else {
+                    newMessagesCount += chatMessageList.size();
+                }
             }
-        } else if (response.code() == 304 && !isFromTheFuture) {
-            if (isFirstMessagesProcessing) {
-                NotificationUtils.cancelExistingNotifications(getApplicationContext(), conversationUser);
+        }
 
-                isFirstMessagesProcessing = false;
-                if (loadingProgressBar != null) {
-                    loadingProgressBar.setVisibility(View.GONE);
-                }
+        if (canUseMessageCache()) {
+            chatMessageStorageUtils.storeMessages(conversationUser.getId(), roomToken, chatMessageList);
+        }
 
-                if (emptyLayout != null && emptyLayout.getVisibility() != View.VISIBLE) {
-                    emptyLayout.setVisibility(View.VISIBLE);
-                }
-            }
+        if (!lookingIntoFuture && inChat) {
+            startChatSync();
+        }
+    }
 
-            historyRead = true;
+    // runs off the main thread, right after a page of history has been parsed or read from the cache
+    private void prepareHistoryMessages(List<ChatMessage> chatMessageList, boolean linkPreviewAllowed) {
+        ChatMessageProcessor.prepareMessages(chatMessageList, conversationUser, linkPreviewAllowed);
+        ChatMessageProcessor.groupHistoryMessages(chatMessageList);
+        chatMessageBatcher.onHistoryMessages(chatMessageList);
+    }
 
-            if (!lookingIntoFuture && inChat) {
-                pullChatMessages(1);
+    private void trackLastKnownMessageIds(List<ChatMessage> chatMessageList) {
+        for (int i = 0; i < chatMessageList.size(); i++) {
+            if (globalLastKnownPastMessageId == -1 || chatMessageList.get(i).getJsonMessageId() <
+                    globalLastKnownPastMessageId) {
+                globalLastKnownPastMessageId = chatMessageList.get(i).getJsonMessageId();
+            }
+
+            if (globalLastKnownFutureMessageId == -1) {
+                if (chatMessageList.get(i).getJsonMessageId() > globalLastKnownFutureMessageId) {
+                    globalLastKnownFutureMessageId = chatMessageList.get(i).getJsonMessageId();
+                }
             }
         }
     }
@@ -953,7 +1437,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
     @Override
     public void onLoadMore(int page, int totalItemsCount) {
         if (!historyRead && inChat) {
-            pullChatMessages(0);
+            pullPastChatMessages();
         }
     }
 
@@ -975,6 +1459,7 @@ public class ChatController extends BaseController implements MessagesListAdapte
         inflater.inflate(R.menu.menu_conversation, menu);
         if (conversationUser.getUserId().equals("?")) {
             menu.removeItem(R.id.conversation_info);
+            menu.removeItem(R.id.conversation_search);
         }
     }
 
@@ -994,11 +1479,199 @@ public class ChatController extends BaseController implements MessagesListAdapte
             case R.id.conversation_info:
                 showConversationInfoScreen();
                 return true;
+            case R.id.conversation_search:
+                showSearchDialog();
+                return true;
             default:
                 return super.onOptionsItemSelected(item);
         }
     }
 
+    private void showSearchDialog() {
+        if (getActivity() == null) {
+            return;
+        }
+
+        new LovelyTextInputDialog(getActivity())
+                .setTopColorRes(R.color.colorPrimary)
+                .setIcon(R.drawable.ic_search_white_24dp)
+                .setTitle(R.string.nc_search_in_conversation)
+                .setConfirmButton(R.string.nc_search, this::searchMessages)
+                .show();
+    }
+
+    // searches the messages cached on this device only, so results show up without a round trip
+    private void searchMessages(String query) {
+        boolean linkPreviewAllowed = appPreferences.getAreLinkPreviewsAllowed();
+        chatMessageSearchUtils.searchMessageIds(conversationUser.getId(), roomToken, query, SEARCH_RESULTS_LIMIT)
+                .flatMap(messageIds -> {
+                    if (messageIds.isEmpty()) {
+                        return Observable.just(Collections.<ChatMessage>emptyList());
+                    }
+
+                    return chatMessageStorageUtils.getMessagesWithIds(conversationUser.getId(), roomToken,
+                            messageIds);
+                })
+                .doOnNext(chatMessageList -> ChatMessageProcessor.prepareMessages(chatMessageList, conversationUser,
+                        linkPreviewAllowed))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Observer<List<ChatMessage>>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+                        disposableList.add(d);
+                    }
+
+                    @Override
+                    public void onNext(List<ChatMessage> chatMessageList) {
+                        showSearchResults(chatMessageList);
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Log.e(TAG, "Failed to search messages");
+                    }
+
+                    @Override
+                    public void onComplete() {
+
+                    }
+                });
+    }
+
+    private void showSearchResults(List<ChatMessage> chatMessageList) {
+        if (getActivity() == null) {
+            return;
+        }
+
+        if (chatMessageList.isEmpty()) {
+            Toast.makeText(getActivity(), R.string.nc_search_no_results, Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        List<String> searchResults = new ArrayList<>();
+        for (ChatMessage chatMessage : chatMessageList) {
+            searchResults.add(String.format("%s: %s", chatMessage.getActorDisplayName(), chatMessage.getText()));
+        }
+
+        new LovelyChoiceDialog(getActivity())
+                .setTopColorRes(R.color.colorPrimary)
+                .setIcon(R.drawable.ic_search_white_24dp)
+                .setTitle(R.string.nc_search_in_conversation)
+                .setItems(searchResults, (position, item) ->
+                        jumpToMessage(chatMessageList.get(position).getJsonMessageId()))
+                .show();
+    }
+
+    /**
+     * Replaces what is shown with the cached messages around the given one. Newer messages are then reloaded
+     * from the cache when scrolling back up and history is pulled as usual.
+     */
+    private void jumpToMessage(int messageId) {
+        boolean linkPreviewAllowed = appPreferences.getAreLinkPreviewsAllowed();
+        Observable.zip(chatMessageStorageUtils.getMessagesNewerThan(conversationUser.getId(), roomToken, messageId,
+                SEARCH_RESULT_CONTEXT),
+                chatMessageStorageUtils.getMessagesUpTo(conversationUser.getId(), roomToken, messageId,
+                        SEARCH_RESULT_CONTEXT),
+                (newerMessages, olderMessages) -> {
+                    List<ChatMessage> chatMessageList = new ArrayList<>(newerMessages);
+                    chatMessageList.addAll(olderMessages);
+                    return chatMessageList;
+                })
+                .doOnNext(chatMessageList -> prepareHistoryMessages(chatMessageList, linkPreviewAllowed))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(new Observer<List<ChatMessage>>() {
+                    @Override
+                    public void onSubscribe(Disposable d) {
+                        disposableList.add(d);
+                    }
+
+                    @Override
+                    public void onNext(List<ChatMessage> chatMessageList) {
+                        showMessagesAround(chatMessageList, messageId);
+                    }
+
+                    @Override
+                    public void onError(Throwable e) {
+                        Log.e(TAG, "Failed to load messages around search result");
+                    }
+
+                    @Override
+                    public void onComplete() {
+
+                    }
+                });
+    }
+
+    /**
+     * Replaces what is shown with the newest messages (oldest first) after the chat sync skipped the ones
+     * between them and what was shown; scrolling back pulls the skipped ones from the server.
+     */
+    private void showNewestMessages(List<ChatMessage> chatMessageList) {
+        if (adapter == null || chatMessageList.isEmpty()) {
+            return;
+        }
+
+        // a page of history that is still on its way would end up after the new messages
+        if (pastMessagesDisposable != null) {
+            pastMessagesDisposable.dispose();
+        }
+
+        removeDeliveredPendingMessages(chatMessageList);
+
+        List<ChatMessage> newestFirstMessageList = new ArrayList<>(chatMessageList);
+        Collections.reverse(newestFirstMessageList);
+
+        adapter.clear();
+        chatMessageWindow.onClearedForNewestMessages();
+
+        adapter.addToEnd(newestFirstMessageList, false);
+        chatMessageWindow.onAddedToEnd(newestFirstMessageList);
+        globalLastKnownPastMessageId = chatMessageWindow.getOldestMessageId();
+        historyRead = false;
+
+        for (ChatMessage pendingMessage : pendingMessages) {
+            adapter.addToStart(pendingMessage, false);
+        }
+
+        newMessagesCount = 0;
+        if (popupBubble != null && popupBubble.isShown()) {
+            popupBubble.hide();
+        }
+        layoutManager.scrollToPosition(0);
+
+        if (canUseMessageCache()) {
+            chatMessageStorageUtils.replaceMessages(conversationUser.getId(), roomToken, chatMessageList);
+        }
+    }
+
+    private void showMessagesAround(List<ChatMessage> chatMessageList, int messageId) {
+        if (adapter == null || chatMessageList.isEmpty() || isLoadingPastMessages || isLoadingNewerMessages) {
+            return;
+        }
+
+        adapter.clear();
+        pendingMessages.clear();
+        unmatchedOwnMessages.clear();
+        chatMessageWindow.onClearedForOlderMessages();
+
+        adapter.addToEnd(chatMessageList, false);
+        chatMessageWindow.onAddedToEnd(chatMessageList);
+        globalLastKnownPastMessageId = chatMessageWindow.getOldestMessageId();
+        historyRead = false;
+
+        // the adapter puts a date header after the last message of every day
+        int position = 0;
+        for (int i = 0; i < chatMessageList.size() && chatMessageList.get(i).getJsonMessageId() != messageId; i++) {
+            position++;
+            if (i + 1 < chatMessageList.size() && !DateFormatter.isSameDay(chatMessageList.get(i).getCreatedAt(),
+                    chatMessageList.get(i + 1).getCreatedAt())) {
+                position++;
+            }
+        }
+
+        layoutManager.scrollToPositionWithOffset(position, messagesListView.getHeight() / 2);
+    }
+
     private void startACall(boolean isVoiceOnlyCall) {
         isLeavingForConversation = true;
         if (!isVoiceOnlyCall) {
@@ -29,6 +29,7 @@ import android.os.Handler;
 import android.text.InputType;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.Pair;
 import android.view.*;
 import android.view.inputmethod.EditorInfo;
 import android.widget.ProgressBar;
@@ -47,7 +48,6 @@ import butterknife.Optional;
 import com.bluelinelabs.conductor.RouterTransaction;
 import com.bluelinelabs.conductor.changehandler.HorizontalChangeHandler;
 import com.bluelinelabs.conductor.changehandler.VerticalChangeHandler;
-import com.bluelinelabs.logansquare.LoganSquare;
 import com.kennyc.bottomsheet.BottomSheet;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.activities.MagicCallActivity;
@@ -56,22 +56,25 @@ import com.nextcloud.talk.adapters.items.ProgressItem;
 import com.nextcloud.talk.adapters.items.UserItem;
 import com.nextcloud.talk.api.NcApi;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.contacts.ContactDirectoryIndex;
+import com.nextcloud.talk.contacts.ContactSearchCache;
+import com.nextcloud.talk.contacts.ContactItemsBuilder;
+import com.nextcloud.talk.contacts.ContactsFetcher;
 import com.nextcloud.talk.controllers.base.BaseController;
 import com.nextcloud.talk.controllers.bottomsheet.EntryMenuController;
 import com.nextcloud.talk.controllers.bottomsheet.OperationsMenuController;
 import com.nextcloud.talk.events.BottomSheetLockEvent;
+import com.nextcloud.talk.jobs.ContactDirectoryWorker;
 import com.nextcloud.talk.models.RetrofitBucket;
 import com.nextcloud.talk.models.database.UserEntity;
-import com.nextcloud.talk.models.json.autocomplete.AutocompleteOverall;
 import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
-import com.nextcloud.talk.models.json.participants.Participant;
 import com.nextcloud.talk.models.json.rooms.Conversation;
 import com.nextcloud.talk.models.json.rooms.RoomOverall;
-import com.nextcloud.talk.models.json.sharees.Sharee;
-import com.nextcloud.talk.models.json.sharees.ShareesOverall;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.KeyboardUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
+import com.nextcloud.talk.utils.database.contacts.ContactDirectoryStorageUtils;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
 import eu.davidea.fastscroller.FastScroller;
@@ -81,11 +84,12 @@ import eu.davidea.flexibleadapter.common.SmoothScrollLinearLayoutManager;
 import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
 import eu.davidea.flexibleadapter.items.IFlexible;
 import eu.davidea.flipview.FlipView;
+import io.reactivex.Observable;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
-import okhttp3.ResponseBody;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
@@ -94,6 +98,7 @@ import retrofit2.HttpException;
 
 import javax.inject.Inject;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @AutoInjector(NextcloudTalkApplication.class)
 public class ContactsController extends BaseController implements SearchView.OnQueryTextListener,
@@ -102,6 +107,11 @@ public class ContactsController extends BaseController implements SearchView.OnQ
     public static final String TAG = "ContactsController";
 
     private static final String KEY_SEARCH_QUERY = "ContactsController.searchQuery";
+    private static final int CONTACTS_PAGE_SIZE = 100;
+    private static final long SEARCH_DEBOUNCE_MILLIS = 250;
+    // first contacts are shown after at most this long, or as soon as this many came in
+    private static final long CONTACTS_CHUNK_MILLIS = 100;
+    private static final int CONTACTS_CHUNK_SIZE = 25;
     @Nullable
     @BindView(R.id.initial_relative_layout)
     RelativeLayout initialRelativeLayout;
@@ -136,10 +146,20 @@ public class ContactsController extends BaseController implements SearchView.OnQ
 
     @Inject
     NcApi ncApi;
+    @Inject
+    ContactDirectoryStorageUtils contactDirectoryStorageUtils;
     private String credentials;
     private UserEntity currentUser;
     private Disposable contactsQueryDisposable;
     private Disposable cacheQueryDisposable;
+    private Disposable searchDisposable;
+    private Disposable contactDirectoryDisposable;
+    @Nullable
+    private ContactDirectoryIndex contactDirectoryIndex;
+    private final Subject<String> searchQueries = PublishSubject.create();
+    // only ever posted to from the main thread
+    private final Subject<List<AutocompleteUser>> contactsToShow = PublishSubject.create();
+    private Disposable contactsToShowDisposable;
     private FlexibleAdapter adapter;
     private List<AbstractFlexibleItem> contactItems = new ArrayList<>();
     private BottomSheet bottomSheet;
@@ -156,8 +176,6 @@ public class ContactsController extends BaseController implements SearchView.OnQ
     private boolean isNewConversationView;
     private boolean isPublicCall;
 
-    private HashMap<String, GenericTextHeaderItem> userHeaderItems = new HashMap<>();
-
     private boolean alreadyFetching = false;
     private boolean canFetchFurther = true;
     private boolean canFetchSearchFurther = true;
@@ -191,6 +209,10 @@ public class ContactsController extends BaseController implements SearchView.OnQ
             toggleNewCallHeaderVisibility(!isPublicCall);
         }
 
+        if (currentUser != null) {
+            followSearchQueries();
+        }
+
     }
 
     @Override
@@ -211,7 +233,9 @@ public class ContactsController extends BaseController implements SearchView.OnQ
             adapter = new FlexibleAdapter<>(contactItems, getActivity(), false);
 
             if (currentUser != null) {
-                fetchData(true);
+                followContactsToShow();
+                loadContactDirectory();
+                ContactDirectoryWorker.enqueue(currentUser.getId(), false);
             }
         }
 
@@ -258,7 +282,7 @@ public class ContactsController extends BaseController implements SearchView.OnQ
                         ((UserItem) selectedObject).getModel().getUserId(), null);
                 ncApi.createRoom(credentials,
                         retrofitBucket.getUrl(), retrofitBucket.getQueryMap())
-                        .subscribeOn(Schedulers.newThread())
+                        .subscribeOn(MagicSchedulers.network())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(new Observer<RoomOverall>() {
                             @Override
@@ -397,11 +421,6 @@ public class ContactsController extends BaseController implements SearchView.OnQ
         dispose(null);
 
         alreadyFetching = true;
-        Set<Sharee> shareeHashSet = new HashSet<>();
-        Set<AutocompleteUser> autocompleteUsersHashSet = new HashSet<>();
-
-        userHeaderItems = new HashMap<>();
-
 
         String query = "";
         if (searchView != null && !TextUtils.isEmpty(searchView.getQuery())) {
@@ -410,16 +429,6 @@ public class ContactsController extends BaseController implements SearchView.OnQ
             contactItems = new ArrayList<>();
         }
 
-        RetrofitBucket retrofitBucket;
-        boolean serverIs14OrUp = false;
-        if (currentUser.hasSpreedCapabilityWithName("last-room-activity")) {
-            // a hack to see if we're on 14 or not
-            retrofitBucket = ApiUtils.getRetrofitBucketForContactsSearchFor14(currentUser.getBaseUrl(), query);
-            serverIs14OrUp = true;
-        } else {
-            retrofitBucket = ApiUtils.getRetrofitBucketForContactsSearch(currentUser.getBaseUrl(), query);
-        }
-
         int page = 1;
         if (!startFromScratch) {
             if (TextUtils.isEmpty(query)) {
@@ -429,191 +438,22 @@ public class ContactsController extends BaseController implements SearchView.OnQ
             }
         }
 
-        Map<String, Object> modifiedQueryMap = new HashMap<>(retrofitBucket.getQueryMap());
-        modifiedQueryMap.put("page", page);
-        modifiedQueryMap.put("perPage", 100);
-
-        List<String> shareTypesList = null;
-
-        if (serverIs14OrUp) {
-            shareTypesList = new ArrayList<>();
-            // users
-            shareTypesList.add("0");
-            // groups
-            shareTypesList.add("1");
-            // mails
-            //shareTypesList.add("4");
-
-
-            modifiedQueryMap.put("shareTypes[]", shareTypesList);
-        }
-
-        boolean finalServerIs14OrUp = serverIs14OrUp;
-        ncApi.getContactsWithSearchParam(
-                credentials,
-                retrofitBucket.getUrl(), shareTypesList, modifiedQueryMap)
-                .subscribeOn(Schedulers.newThread())
+        String finalQuery = query;
+        int finalPage = page;
+        getContacts(query, page)
                 .observeOn(AndroidSchedulers.mainThread())
-                .retry(3)
-                .subscribe(new Observer<ResponseBody>() {
+                .subscribe(new Observer<List<AutocompleteUser>>() {
+                    private int contactsCount = 0;
+
                     @Override
                     public void onSubscribe(Disposable d) {
                         contactsQueryDisposable = d;
                     }
 
                     @Override
-                    public void onNext(ResponseBody responseBody) {
-                        if (responseBody != null) {
-                            Participant participant;
-
-                            List<AbstractFlexibleItem> newUserItemList = new ArrayList<>();
-                            newUserItemList.addAll(contactItems);
-
-                            try {
-                                if (!finalServerIs14OrUp) {
-                                    ShareesOverall shareesOverall = LoganSquare.parse(responseBody.string(), ShareesOverall.class);
-
-                                    if (shareesOverall.getOcs().getData().getUsers() != null) {
-                                        shareeHashSet.addAll(shareesOverall.getOcs().getData().getUsers());
-                                    }
-
-                                    if (shareesOverall.getOcs().getData().getExactUsers() != null &&
-                                            shareesOverall.getOcs().getData().getExactUsers().getExactSharees() != null) {
-                                        shareeHashSet.addAll(shareesOverall.getOcs().getData().
-                                                getExactUsers().getExactSharees());
-                                    }
-
-                                    for (Sharee sharee : shareeHashSet) {
-                                        if (!sharee.getValue().getShareWith().equals(currentUser.getUserId())) {
-                                            participant = new Participant();
-                                            participant.setDisplayName(sharee.getLabel());
-                                            String headerTitle;
-
-                                            headerTitle = sharee.getLabel().substring(0, 1).toUpperCase();
-
-                                            GenericTextHeaderItem genericTextHeaderItem;
-                                            if (!userHeaderItems.containsKey(headerTitle)) {
-                                                genericTextHeaderItem = new GenericTextHeaderItem(headerTitle);
-                                                userHeaderItems.put(headerTitle, genericTextHeaderItem);
-                                            }
-
-                                            participant.setUserId(sharee.getValue().getShareWith());
-
-                                            UserItem newContactItem = new UserItem(participant, currentUser,
-                                                    userHeaderItems.get(headerTitle));
-
-                                            if (!contactItems.contains(newContactItem)) {
-                                                newUserItemList.add(newContactItem);
-                                            }
-
-                                        }
-
-                                    }
-
-                                } else {
-                                    AutocompleteOverall autocompleteOverall = LoganSquare.parse(responseBody.string(), AutocompleteOverall.class);
-                                    autocompleteUsersHashSet.addAll(autocompleteOverall.getOcs().getData());
-
-                                    for (AutocompleteUser autocompleteUser : autocompleteUsersHashSet) {
-                                        if (!autocompleteUser.getId().equals(currentUser.getUserId())) {
-                                            participant = new Participant();
-                                            participant.setUserId(autocompleteUser.getId());
-                                            participant.setDisplayName(autocompleteUser.getLabel());
-                                            participant.setSource(autocompleteUser.getSource());
-
-                                            String headerTitle;
-
-                                            if (!autocompleteUser.getSource().equals("groups")) {
-                                                headerTitle = participant.getDisplayName().substring(0, 1).toUpperCase();
-                                            } else {
-                                                headerTitle = getResources().getString(R.string.nc_groups);
-                                            }
-
-                                            GenericTextHeaderItem genericTextHeaderItem;
-                                            if (!userHeaderItems.containsKey(headerTitle)) {
-                                                genericTextHeaderItem = new GenericTextHeaderItem(headerTitle);
-                                                userHeaderItems.put(headerTitle, genericTextHeaderItem);
-                                            }
-
-
-                                            UserItem newContactItem = new UserItem(participant, currentUser,
-                                                    userHeaderItems.get(headerTitle));
-
-                                            if (!contactItems.contains(newContactItem)) {
-                                                newUserItemList.add(newContactItem);
-                                            }
-
-                                        }
-                                    }
-                                }
-                            } catch (Exception exception) {
-                                Log.e(TAG, "Parsing response body failed while getting contacts");
-                            }
-
-                            if (TextUtils.isEmpty((CharSequence) modifiedQueryMap.get("search"))) {
-                                canFetchFurther = !shareeHashSet.isEmpty() || (finalServerIs14OrUp && autocompleteUsersHashSet.size() == 100);
-                                currentPage = (int) modifiedQueryMap.get("page");
-                            } else {
-                                canFetchSearchFurther = !shareeHashSet.isEmpty() || (finalServerIs14OrUp && autocompleteUsersHashSet.size() == 100);
-                                currentSearchPage = (int) modifiedQueryMap.get("page");
-                            }
-
-
-                            boolean shouldFilterManually = false;
-                            if (newUserItemList.size() == contactItems.size()) {
-                                shouldFilterManually = true;
-                            }
-
-                            contactItems = newUserItemList;
-                            userHeaderItems = new HashMap<>();
-
-                            Collections.sort(newUserItemList, (o1, o2) -> {
-                                String firstName;
-                                String secondName;
-
-
-                                if (o1 instanceof UserItem) {
-                                    firstName = ((UserItem) o1).getModel().getDisplayName();
-                                } else {
-                                    firstName = ((GenericTextHeaderItem) o1).getModel();
-                                }
-
-                                if (o2 instanceof UserItem) {
-                                    secondName = ((UserItem) o2).getModel().getDisplayName();
-                                } else {
-                                    secondName = ((GenericTextHeaderItem) o2).getModel();
-                                }
-
-                                if (o1 instanceof UserItem && o2 instanceof UserItem) {
-                                    if ("groups".equals(((UserItem) o1).getModel().getSource()) && "groups".equals(((UserItem) o2).getModel().getSource())) {
-                                        return firstName.compareToIgnoreCase(secondName);
-                                    } else if ("groups".equals(((UserItem) o1).getModel().getSource())) {
-                                        return -1;
-                                    } else if ("groups".equals(((UserItem) o2).getModel().getSource())) {
-                                        return 1;
-                                    }
-                                }
-
-                                return firstName.compareToIgnoreCase(secondName);
-                            });
-
-
-                            if (!shouldFilterManually) {
-                                adapter.updateDataSet(newUserItemList, false);
-                            } else {
-                                adapter.filterItems();
-                                adapter.onLoadMoreComplete(null);
-                            }
-
-                            if (searchItem != null) {
-                                searchItem.setVisible(newUserItemList.size() > 0);
-                            }
-
-                            if (swipeRefreshLayout != null) {
-                                swipeRefreshLayout.setRefreshing(false);
-                            }
-                        }
-
+                    public void onNext(List<AutocompleteUser> autocompleteUsers) {
+                        contactsCount += autocompleteUsers.size();
+                        showContacts(autocompleteUsers);
                     }
 
                     @Override
@@ -646,6 +486,8 @@ public class ContactsController extends BaseController implements SearchView.OnQ
 
                     @Override
                     public void onComplete() {
+                        onContactsPageLoaded(finalQuery, finalPage, contactsCount);
+
                         if (swipeRefreshLayout != null) {
                             swipeRefreshLayout.setRefreshing(false);
                         }
@@ -658,13 +500,157 @@ public class ContactsController extends BaseController implements SearchView.OnQ
 
     }
 
+    // emits the contacts in chunks while the response is still coming in
+    private Observable<List<AutocompleteUser>> getContacts(String query, int page) {
+        return ContactsFetcher.getContacts(ncApi, currentUser, query, page, CONTACTS_PAGE_SIZE)
+                .distinct()
+                .buffer(CONTACTS_CHUNK_MILLIS, TimeUnit.MILLISECONDS, CONTACTS_CHUNK_SIZE)
+                .filter(autocompleteUsers -> !autocompleteUsers.isEmpty());
+    }
+
+    // shows the whole directory at once if the account was synced before, otherwise pages in from the server
+    private void loadContactDirectory() {
+        alreadyFetching = true;
+
+        contactDirectoryDisposable = contactDirectoryStorageUtils.getContacts(currentUser.getId())
+                .map(ContactDirectoryIndex::new)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(directoryIndex -> {
+                    if (directoryIndex.getContacts().isEmpty()) {
+                        fetchData(true);
+                        return;
+                    }
+
+                    contactDirectoryIndex = directoryIndex;
+                    canFetchFurther = false;
+                    alreadyFetching = false;
+                    showContacts(directoryIndex.getContacts());
+                    disengageProgressBar();
+                }, throwable -> {
+                    Log.e(TAG, "Failed to load the contact directory");
+                    fetchData(true);
+                });
+    }
+
+    // 14 and up ignores the page and sends everything at once, so there is never a next page to fetch there
+    private void onContactsPageLoaded(String query, int page, int contactsCount) {
+        boolean hasNextPage = ContactsFetcher.isPaged(currentUser) && contactsCount == CONTACTS_PAGE_SIZE;
+        if (TextUtils.isEmpty(query)) {
+            canFetchFurther = hasNextPage;
+            currentPage = page;
+        } else {
+            canFetchSearchFurther = hasNextPage;
+            currentSearchPage = page;
+        }
+    }
+
+    private void showContacts(List<AutocompleteUser> autocompleteUsers) {
+        contactsToShow.onNext(autocompleteUsers);
+    }
+
+    /*
+        Contacts are turned into items one batch after the other in the background, each batch on top of the
+        items the previous one left, so the main thread only ever swaps in a finished list.
+     */
+    private void followContactsToShow() {
+        String groupsHeaderTitle = getResources().getString(R.string.nc_groups);
+        contactsToShowDisposable = contactsToShow
+                .concatMap(autocompleteUsers -> {
+                    List<AbstractFlexibleItem> shownItems = contactItems;
+                    return Observable.fromCallable(() -> ContactItemsBuilder.build(shownItems, autocompleteUsers,
+                            currentUser, groupsHeaderTitle))
+                            .subscribeOn(MagicSchedulers.compute())
+                            .map(newUserItemList -> Pair.create(shownItems, newUserItemList))
+                            .observeOn(AndroidSchedulers.mainThread());
+                })
+                .subscribe(contactItemLists -> showContactItems(contactItemLists.first, contactItemLists.second),
+                        throwable -> Log.e(TAG, "Failed to show contacts", throwable));
+    }
+
+    private void showContactItems(List<AbstractFlexibleItem> shownItems, List<AbstractFlexibleItem> newUserItemList) {
+        // a newer fetch started from scratch in the meantime
+        if (contactItems != shownItems) {
+            return;
+        }
+
+        boolean shouldFilterManually = newUserItemList.size() == contactItems.size();
+        contactItems = newUserItemList;
+
+        if (!shouldFilterManually) {
+            adapter.updateDataSet(newUserItemList, false);
+        } else {
+            adapter.filterItems();
+            adapter.onLoadMoreComplete(null);
+        }
+
+        if (searchItem != null) {
+            searchItem.setVisible(newUserItemList.size() > 0);
+        }
+
+        if (swipeRefreshLayout != null) {
+            swipeRefreshLayout.setRefreshing(false);
+        }
+    }
+
+    /*
+        Only the latest query is searched for: a newer one cancels the wait or the request of an older one.
+        Queries answered by the cache are shown right away, the others go to the server once typing pauses.
+     */
+    private void followSearchQueries() {
+        String server = getSearchCacheServer();
+        searchDisposable = searchQueries
+                .<Pair<String, List<AutocompleteUser>>>switchMap(query -> {
+                    if (TextUtils.isEmpty(query)) {
+                        return Observable.empty();
+                    }
+
+                    // everything the directory knows is shown already, the server only fills in what it lacks
+                    if (contactDirectoryIndex != null && !contactDirectoryIndex.search(query).isEmpty()) {
+                        return Observable.empty();
+                    }
+
+                    List<AutocompleteUser> cachedContacts = ContactSearchCache.getInstance().get(server, query);
+                    if (cachedContacts != null) {
+                        return Observable.just(Pair.create(query, cachedContacts))
+                                .doOnComplete(() -> onContactsPageLoaded(query, 1, cachedContacts.size()));
+                    }
+
+                    List<AutocompleteUser> searchResults = new ArrayList<>();
+                    return Observable.timer(SEARCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)
+                            .flatMap(tick -> getContacts(query, 1))
+                            .doOnNext(searchResults::addAll)
+                            .doOnComplete(() -> ContactSearchCache.getInstance().put(server, query,
+                                    searchResults, CONTACTS_PAGE_SIZE))
+                            .map(autocompleteUsers -> Pair.create(query, autocompleteUsers))
+                            .observeOn(AndroidSchedulers.mainThread())
+                            .doOnComplete(() -> onContactsPageLoaded(query, 1, searchResults.size()))
+                            .onErrorResumeNext(throwable -> {
+                                Log.e(TAG, "Failed to search contacts");
+                                return Observable.empty();
+                            });
+                })
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(searchResult -> showContacts(searchResult.second),
+                        throwable -> Log.e(TAG, "Failed to follow contact search queries"));
+    }
+
+    private String getSearchCacheServer() {
+        return currentUser.getUserId() + "@" + currentUser.getBaseUrl();
+    }
+
     private void prepareViews() {
         layoutManager = new SmoothScrollLinearLayoutManager(getActivity());
         recyclerView.setLayoutManager(new SmoothScrollLinearLayoutManager(getActivity()));
         recyclerView.setHasFixedSize(true);
         recyclerView.setAdapter(adapter);
 
-        swipeRefreshLayout.setOnRefreshListener(() -> fetchData(true));
+        swipeRefreshLayout.setOnRefreshListener(() -> {
+            // the server is asked again until the directory is synced and loaded the next time
+            contactDirectoryIndex = null;
+            ContactDirectoryWorker.enqueue(currentUser.getId(), true);
+            ContactSearchCache.getInstance().clear(getSearchCacheServer());
+            fetchData(true);
+        });
         swipeRefreshLayout.setColorSchemeResources(R.color.colorPrimary);
 
         fastScroller.addOnScrollStateChangeListener(this);
@@ -735,6 +721,14 @@ public class ContactsController extends BaseController implements SearchView.OnQ
     public void onDestroy() {
         super.onDestroy();
         dispose(null);
+
+        if (contactDirectoryDisposable != null && !contactDirectoryDisposable.isDisposed()) {
+            contactDirectoryDisposable.dispose();
+        }
+
+        if (contactsToShowDisposable != null && !contactsToShowDisposable.isDisposed()) {
+            contactsToShowDisposable.dispose();
+        }
     }
 
     @Override
@@ -746,12 +740,10 @@ public class ContactsController extends BaseController implements SearchView.OnQ
                 adapter.filterItems();
                 searchQuery = "";
             } else {
+                // what is loaded already is narrowed down right away, the server fills in the rest
                 adapter.setFilter(newText);
-                if (TextUtils.isEmpty(newText)) {
-                    adapter.filterItems();
-                } else {
-                    fetchData(true);
-                }
+                adapter.filterItems();
+                searchQueries.onNext(newText);
             }
         }
 
@@ -852,6 +844,10 @@ public class ContactsController extends BaseController implements SearchView.OnQ
     protected void onDetach(@NonNull View view) {
         super.onDetach(view);
         eventBus.unregister(this);
+
+        if (searchDisposable != null && !searchDisposable.isDisposed()) {
+            searchDisposable.dispose();
+        }
     }
 
     @Override
@@ -869,7 +865,7 @@ public class ContactsController extends BaseController implements SearchView.OnQ
 
                 ncApi.createRoom(credentials,
                         retrofitBucket.getUrl(), retrofitBucket.getQueryMap())
-                        .subscribeOn(Schedulers.newThread())
+                        .subscribeOn(MagicSchedulers.network())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(new Observer<RoomOverall>() {
                             @Override
@@ -38,6 +38,7 @@ import com.facebook.drawee.view.SimpleDraweeView;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.adapters.items.UserItem;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.controllers.base.BaseController;
 import com.nextcloud.talk.models.database.UserEntity;
@@ -48,6 +49,7 @@ import com.nextcloud.talk.models.json.rooms.Conversation;
 import com.nextcloud.talk.models.json.rooms.RoomOverall;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.DisplayUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
 import com.nextcloud.talk.utils.preferencestorage.DatabaseStorageModule;
 import com.vanniktech.emoji.EmojiTextView;
@@ -60,7 +62,6 @@ import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import org.parceler.Parcels;
 
 import javax.inject.Inject;
@@ -89,6 +90,9 @@ public class ConversationInfoController extends BaseController {
     RecyclerView recyclerView;
     @Inject
     NcApi ncApi;
+
+    @Inject
+    NcApiCoalescer ncApiCoalescer;
     private String baseUrl;
     private String conversationToken;
     private UserEntity conversationUser;
@@ -202,7 +206,7 @@ public class ConversationInfoController extends BaseController {
 
     private void getListOfParticipants() {
         ncApi.getPeersForCall(credentials, ApiUtils.getUrlForParticipants(conversationUser.getBaseUrl(), conversationToken))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<ParticipantsOverall>() {
                     @Override
@@ -229,8 +233,9 @@ public class ConversationInfoController extends BaseController {
     }
 
     private void fetchRoomInfo() {
-        ncApi.getRoom(credentials, ApiUtils.getRoom(conversationUser.getBaseUrl(), conversationToken))
-                .subscribeOn(Schedulers.newThread())
+        ncApiCoalescer.getRoom(ncApi, credentials,
+                ApiUtils.getRoom(conversationUser.getBaseUrl(), conversationToken))
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<RoomOverall>() {
                     @Override
@@ -28,8 +28,11 @@ import android.graphics.drawable.BitmapDrawable;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.InputType;
 import android.text.TextUtils;
+import android.util.Log;
+import android.util.Pair;
 import android.view.*;
 import android.view.inputmethod.EditorInfo;
 import android.widget.ProgressBar;
@@ -61,10 +64,14 @@ import com.nextcloud.talk.activities.MagicCallActivity;
 import com.nextcloud.talk.adapters.items.CallItem;
 import com.nextcloud.talk.adapters.items.ConversationItem;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.controllers.base.BaseController;
 import com.nextcloud.talk.controllers.bottomsheet.CallMenuController;
 import com.nextcloud.talk.controllers.bottomsheet.EntryMenuController;
+import com.nextcloud.talk.conversations.ConversationListDiff;
+import com.nextcloud.talk.conversations.ConversationListSync;
+import com.nextcloud.talk.conversations.ConversationSearchIndex;
 import com.nextcloud.talk.events.BottomSheetLockEvent;
 import com.nextcloud.talk.events.MoreMenuClickEvent;
 import com.nextcloud.talk.models.database.UserEntity;
@@ -73,18 +80,25 @@ import com.nextcloud.talk.models.json.rooms.Conversation;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.DisplayUtils;
 import com.nextcloud.talk.utils.KeyboardUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.animations.SharedElementTransition;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
+import com.nextcloud.talk.utils.database.conversations.ConversationListStorageUtils;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.glide.GlideApp;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
 import eu.davidea.fastscroller.FastScroller;
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.common.SmoothScrollLinearLayoutManager;
 import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
 import org.apache.commons.lang3.builder.CompareToBuilder;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
@@ -96,6 +110,7 @@ import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 @AutoInjector(NextcloudTalkApplication.class)
 public class ConversationsListController extends BaseController implements SearchView.OnQueryTextListener,
@@ -115,9 +130,15 @@ public class ConversationsListController extends BaseController implements Searc
     @Inject
     NcApi ncApi;
 
+    @Inject
+    NcApiCoalescer ncApiCoalescer;
+
     @Inject
     AppPreferences appPreferences;
 
+    @Inject
+    ConversationListStorageUtils conversationListStorageUtils;
+
     @BindView(R.id.recycler_view)
     RecyclerView recyclerView;
 
@@ -138,8 +159,18 @@ public class ConversationsListController extends BaseController implements Searc
 
     private UserEntity currentUser;
     private Disposable roomsQueryDisposable;
+    private Disposable storedConversationsDisposable;
+    private Disposable conversationListChangesDisposable;
+    private ConversationListSync conversationListSync;
+    private Disposable searchDisposable;
+    private final ConversationSearchIndex conversationSearchIndex = new ConversationSearchIndex();
+    private final Subject<String> searchQueries = PublishSubject.<String>create().toSerialized();
+    private String currentSearchQuery = "";
     private FlexibleAdapter<AbstractFlexibleItem> adapter;
     private List<AbstractFlexibleItem> callItems = new ArrayList<>();
+    // bumped whenever callItems is replaced, so a diff calculated in the background can tell whether the
+    // items it was calculated against are still the ones shown
+    private int callItemsGeneration;
 
     private BottomSheet bottomSheet;
     private MenuItem searchItem;
@@ -152,6 +183,8 @@ public class ConversationsListController extends BaseController implements Searc
     private String credentials;
 
     private boolean adapterWasNull = true;
+    private boolean hasFetchedData = false;
+    private long attachedAtMillis;
 
     public ConversationsListController() {
         super();
@@ -219,7 +252,16 @@ public class ConversationsListController extends BaseController implements Searc
         if (currentUser != null) {
             credentials = ApiUtils.getCredentials(currentUser.getUsername(), currentUser.getToken());
             shouldUseLastMessageLayout = currentUser.hasSpreedCapabilityWithName("last-room-activity");
-            fetchData(false);
+            attachedAtMillis = SystemClock.elapsedRealtime();
+
+            followSearchQueries();
+
+            if (callItems.isEmpty()) {
+                loadStoredConversations();
+            }
+
+            fetchData(false, false);
+            followConversationListChanges();
         }
     }
 
@@ -227,6 +269,14 @@ public class ConversationsListController extends BaseController implements Searc
     protected void onDetach(@NonNull View view) {
         super.onDetach(view);
         eventBus.unregister(this);
+
+        if (conversationListChangesDisposable != null && !conversationListChangesDisposable.isDisposed()) {
+            conversationListChangesDisposable.dispose();
+        }
+
+        if (searchDisposable != null && !searchDisposable.isDisposed()) {
+            searchDisposable.dispose();
+        }
     }
 
     private void initSearchView() {
@@ -286,69 +336,36 @@ public class ConversationsListController extends BaseController implements Searc
         loadUserAvatar(menuItem);
     }
 
-    private void fetchData(boolean fromBottomSheet) {
+    // only a refresh the user asked for jumps back to the top, the list must not move under their finger otherwise
+    private void fetchData(boolean fromBottomSheet, boolean isUserInitiated) {
         dispose(null);
 
-        callItems = new ArrayList<>();
+        List<AbstractFlexibleItem> shownItems = new ArrayList<>(callItems);
+        int shownItemsGeneration = callItemsGeneration;
 
-        roomsQueryDisposable = ncApi.getRooms(credentials, ApiUtils.getUrlForGetRooms(currentUser.getBaseUrl()))
-                .subscribeOn(Schedulers.newThread())
+        roomsQueryDisposable = ncApiCoalescer.getRooms(ncApi, credentials,
+                ApiUtils.getUrlForGetRooms(currentUser.getBaseUrl()))
+                .subscribeOn(MagicSchedulers.network())
+                .doOnNext(roomsOverall -> conversationListStorageUtils.storeConversations(currentUser.getId(),
+                        roomsOverall.getOcs().getData()))
+                .map(roomsOverall -> ConversationListDiff.calculate(shownItems,
+                        createSortedItems(roomsOverall.getOcs().getData())))
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(roomsOverall -> {
+                .subscribe(conversationListDiff -> {
 
                     if (adapterWasNull) {
                         adapterWasNull = false;
                         progressBarView.setVisibility(View.GONE);
+                        ApplicationWideMetricsHolder.getInstance().recordTiming("conversations.time_to_fetched_list",
+                                SystemClock.elapsedRealtime() - attachedAtMillis);
                     }
 
-                    if (roomsOverall.getOcs().getData().size() > 0) {
-                        if (emptyLayoutView.getVisibility() != View.GONE) {
-                            emptyLayoutView.setVisibility(View.GONE);
-                        }
+                    hasFetchedData = true;
 
-                        if (swipeRefreshLayout.getVisibility() != View.VISIBLE) {
-                            swipeRefreshLayout.setVisibility(View.VISIBLE);
-                        }
-                    } else {
-                        if (emptyLayoutView.getVisibility() != View.VISIBLE) {
-                            emptyLayoutView.setVisibility(View.VISIBLE);
-                        }
+                    showConversationListDiff(shownItems, shownItemsGeneration, conversationListDiff);
 
-                        if (swipeRefreshLayout.getVisibility() != View.GONE) {
-                            swipeRefreshLayout.setVisibility(View.GONE);
-                        }
-                    }
-
-                    for (int i = 0; i < roomsOverall.getOcs().getData().size(); i++) {
-                        if (shouldUseLastMessageLayout) {
-                            callItems.add(new ConversationItem(roomsOverall.getOcs().getData().get(i),
-                                    currentUser));
-                        } else {
-                            callItems.add(new CallItem(roomsOverall.getOcs().getData().get(i), currentUser));
-                        }
-                    }
-
-
-                    if (currentUser.hasSpreedCapabilityWithName("last-room-activity")) {
-                        Collections.sort(callItems, (o1, o2) -> {
-                            Conversation conversation1 = ((ConversationItem) o1).getModel();
-                            Conversation conversation2 = ((ConversationItem) o2).getModel();
-                            return new CompareToBuilder()
-                                    .append(conversation2.isFavorite(), conversation1.isFavorite())
-                                    .append(conversation2.getLastActivity(), conversation1.getLastActivity())
-                                    .toComparison();
-                        });
-                    } else {
-                        Collections.sort(callItems, (callItem, t1) ->
-                                Long.compare(((CallItem) t1).getModel().getLastPing(),
-                                        ((CallItem) callItem).getModel().getLastPing()));
-                    }
-
-                    adapter.updateDataSet(callItems, true);
-                    recyclerView.smoothScrollToPosition(0);
-
-                    if (searchItem != null) {
-                        searchItem.setVisible(callItems.size() > 0);
+                    if (isUserInitiated && !conversationListDiff.isEmpty()) {
+                        recyclerView.smoothScrollToPosition(0);
                     }
 
                     if (swipeRefreshLayout != null) {
@@ -400,6 +417,233 @@ public class ConversationsListController extends BaseController implements Searc
 
     }
 
+    // applies what the signaling server tells about single rooms, or the polled list, while the list is shown
+    private void followConversationListChanges() {
+        conversationListSync = new ConversationListSync(ncApi, eventBus, currentUser);
+        conversationListSync.setKnownConversations(getConversations(callItems));
+
+        UserEntity user = currentUser;
+        conversationListChangesDisposable = conversationListSync.getChanges()
+                .observeOn(AndroidSchedulers.mainThread())
+                .filter(conversationListChange -> hasFetchedData && currentUser != null &&
+                        currentUser.getId() == user.getId())
+                .concatMap(conversationListChange -> showConversationListChange(conversationListChange, user))
+                .subscribe(conversationListDiff -> ApplicationWideMetricsHolder.getInstance()
+                                .incrementCounter("conversations.live_updates", 1),
+                        throwable -> Log.e(TAG, "Failed to follow conversation list changes"));
+    }
+
+    // subscribed to on the main thread
+    private Observable<ConversationListDiff> showConversationListChange(
+            ConversationListSync.ConversationListChange conversationListChange, UserEntity user) {
+        List<AbstractFlexibleItem> shownItems = new ArrayList<>(callItems);
+        int shownItemsGeneration = callItemsGeneration;
+        return Observable.fromCallable(() -> {
+            List<Conversation> conversations = conversationListChange.applyTo(getConversations(shownItems));
+            conversationListStorageUtils.storeConversations(user.getId(), conversations);
+            return ConversationListDiff.calculate(shownItems, createSortedItems(conversations));
+        })
+                .subscribeOn(MagicSchedulers.disk())
+                .observeOn(AndroidSchedulers.mainThread())
+                .flatMap(conversationListDiff -> {
+                    // the list was replaced in the meantime, the change has to be applied to the new one instead
+                    if (shownItemsGeneration != callItemsGeneration) {
+                        return showConversationListChange(conversationListChange, user);
+                    }
+
+                    showConversationListDiff(shownItems, shownItemsGeneration, conversationListDiff);
+                    return Observable.just(conversationListDiff);
+                });
+    }
+
+    private static List<Conversation> getConversations(List<AbstractFlexibleItem> items) {
+        List<Conversation> conversations = new ArrayList<>(items.size());
+        for (AbstractFlexibleItem item : items) {
+            conversations.add(ConversationListDiff.getConversation(item));
+        }
+        return conversations;
+    }
+
+    // shows the list stored on the last fetch until the current one arrives
+    private void loadStoredConversations() {
+        long accountIdentifier = currentUser.getId();
+        storedConversationsDisposable = conversationListStorageUtils.getConversations(accountIdentifier)
+                .map(this::createSortedItems)
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(items -> {
+                    if (hasFetchedData || items.isEmpty() || currentUser == null ||
+                            currentUser.getId() != accountIdentifier) {
+                        return;
+                    }
+
+                    if (adapterWasNull) {
+                        adapterWasNull = false;
+                        progressBarView.setVisibility(View.GONE);
+                        ApplicationWideMetricsHolder.getInstance().recordTiming("conversations.time_to_stored_list",
+                                SystemClock.elapsedRealtime() - attachedAtMillis);
+                    }
+
+                    emptyLayoutView.setVisibility(View.GONE);
+                    swipeRefreshLayout.setVisibility(View.VISIBLE);
+
+                    callItems = items;
+                    callItemsGeneration++;
+                    updateSearchIndex();
+                    if (!adapter.hasFilter()) {
+                        adapter.updateDataSet(callItems, false);
+                    }
+
+                    if (searchItem != null) {
+                        searchItem.setVisible(true);
+                    }
+                }, throwable -> Log.e(TAG, "Failed to load stored conversations"));
+    }
+
+    // runs off the main thread
+    private List<AbstractFlexibleItem> createSortedItems(List<Conversation> conversations) {
+        List<AbstractFlexibleItem> items = new ArrayList<>(conversations.size());
+
+        for (Conversation conversation : conversations) {
+            if (shouldUseLastMessageLayout) {
+                items.add(new ConversationItem(conversation, currentUser));
+            } else {
+                items.add(new CallItem(conversation, currentUser));
+            }
+        }
+
+        if (currentUser.hasSpreedCapabilityWithName("last-room-activity")) {
+            Collections.sort(items, (o1, o2) -> {
+                Conversation conversation1 = ((ConversationItem) o1).getModel();
+                Conversation conversation2 = ((ConversationItem) o2).getModel();
+                return new CompareToBuilder()
+                        .append(conversation2.isFavorite(), conversation1.isFavorite())
+                        .append(conversation2.getLastActivity(), conversation1.getLastActivity())
+                        .toComparison();
+            });
+        } else {
+            Collections.sort(items, (callItem, t1) ->
+                    Long.compare(((CallItem) t1).getModel().getLastPing(),
+                            ((CallItem) callItem).getModel().getLastPing()));
+        }
+
+        return items;
+    }
+
+    private void showConversationListDiff(List<AbstractFlexibleItem> shownItems, int shownItemsGeneration,
+                                          ConversationListDiff conversationListDiff) {
+        if (conversationListDiff.getNewItems().size() > 0) {
+            if (emptyLayoutView.getVisibility() != View.GONE) {
+                emptyLayoutView.setVisibility(View.GONE);
+            }
+
+            if (swipeRefreshLayout.getVisibility() != View.VISIBLE) {
+                swipeRefreshLayout.setVisibility(View.VISIBLE);
+            }
+        } else {
+            if (emptyLayoutView.getVisibility() != View.VISIBLE) {
+                emptyLayoutView.setVisibility(View.VISIBLE);
+            }
+
+            if (swipeRefreshLayout.getVisibility() != View.GONE) {
+                swipeRefreshLayout.setVisibility(View.GONE);
+            }
+        }
+
+        applyConversationListDiff(shownItems, shownItemsGeneration, conversationListDiff);
+
+        if (conversationListSync != null) {
+            conversationListSync.setKnownConversations(getConversations(callItems));
+        }
+
+        if (searchItem != null) {
+            searchItem.setVisible(callItems.size() > 0);
+        }
+    }
+
+    private void applyConversationListDiff(List<AbstractFlexibleItem> shownItems, int shownItemsGeneration,
+                                           ConversationListDiff conversationListDiff) {
+        boolean isShownItemsCurrent = shownItemsGeneration == callItemsGeneration;
+        callItems = conversationListDiff.getNewItems();
+        callItemsGeneration++;
+        updateSearchIndex();
+
+        // a filtered adapter holds fewer items than the diff was calculated against, it is filled again
+        // by the search that follows the index update
+        if (adapter.hasFilter()) {
+            return;
+        }
+
+        // nothing to diff against on the first load, and the positions of the operations are of no use once
+        // the list changed since the diff was calculated
+        if (shownItems.isEmpty() || !isShownItemsCurrent || adapter.getItemCount() != shownItems.size()) {
+            adapter.updateDataSet(callItems, false);
+            return;
+        }
+
+        if (conversationListDiff.isEmpty()) {
+            return;
+        }
+
+        for (ConversationListDiff.Operation operation : conversationListDiff.getOperations()) {
+            switch (operation.getType()) {
+                case INSERT:
+                    adapter.addItem(operation.getToPosition(), operation.getItem());
+                    break;
+                case MOVE:
+                    adapter.moveItem(operation.getFromPosition(), operation.getToPosition());
+                    break;
+                case UPDATE:
+                    adapter.updateItem(operation.getToPosition(), operation.getItem(), null);
+                    break;
+                case REMOVE:
+                    adapter.removeItem(operation.getFromPosition());
+                    break;
+            }
+        }
+    }
+
+    // the index and the searches share one thread, so a search always sees the latest update before it
+    private void updateSearchIndex() {
+        List<Conversation> conversations = getConversations(callItems);
+        Completable.fromAction(() -> conversationSearchIndex.update(conversations))
+                .subscribeOn(Schedulers.single())
+                .subscribe(() -> {
+                    if (!TextUtils.isEmpty(currentSearchQuery)) {
+                        searchQueries.onNext(currentSearchQuery);
+                    }
+                }, throwable -> Log.e(TAG, "Failed to update the conversation search index"));
+    }
+
+    private void followSearchQueries() {
+        searchDisposable = searchQueries
+                .switchMap(query -> Observable.fromCallable(() -> TextUtils.isEmpty(query) ?
+                        Pair.create(query, Collections.<String>emptySet()) :
+                        Pair.create(query, conversationSearchIndex.search(query)))
+                        .subscribeOn(Schedulers.single()))
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(searchResult -> showSearchResults(searchResult.first, searchResult.second),
+                        throwable -> Log.e(TAG, "Failed to search conversations"));
+    }
+
+    private void showSearchResults(String query, Set<String> tokens) {
+        if (!query.equals(currentSearchQuery)) {
+            return;
+        }
+
+        if (TextUtils.isEmpty(query)) {
+            adapter.updateDataSet(callItems, false);
+            return;
+        }
+
+        List<AbstractFlexibleItem> results = new ArrayList<>(tokens.size());
+        for (AbstractFlexibleItem item : callItems) {
+            if (tokens.contains(ConversationListDiff.getConversation(item).getToken())) {
+                results.add(item);
+            }
+        }
+        adapter.updateDataSet(results, false);
+    }
+
     private void prepareViews() {
         SmoothScrollLinearLayoutManager layoutManager =
                 new SmoothScrollLinearLayoutManager(getActivity());
@@ -413,7 +657,7 @@ public class ConversationsListController extends BaseController implements Searc
                 layoutManager.getOrientation()
         ));
 
-        swipeRefreshLayout.setOnRefreshListener(() -> fetchData(false));
+        swipeRefreshLayout.setOnRefreshListener(() -> fetchData(false, true));
         swipeRefreshLayout.setColorSchemeResources(R.color.colorPrimary);
 
         emptyLayoutView.setOnClickListener(v -> showNewConversationsScreen());
@@ -476,20 +720,24 @@ public class ConversationsListController extends BaseController implements Searc
     public void onDestroy() {
         super.onDestroy();
         dispose(null);
+
+        if (storedConversationsDisposable != null && !storedConversationsDisposable.isDisposed()) {
+            storedConversationsDisposable.dispose();
+        }
     }
 
     @Override
     public boolean onQueryTextChange(String newText) {
-        if (adapter.hasNewFilter(newText) || !TextUtils.isEmpty(searchQuery)) {
+        if (!TextUtils.isEmpty(searchQuery)) {
+            newText = searchQuery;
+            searchQuery = "";
+        }
 
-            if (!TextUtils.isEmpty(searchQuery)) {
-                adapter.setFilter(searchQuery);
-                searchQuery = "";
-                adapter.filterItems();
-            } else {
-                adapter.setFilter(newText);
-                adapter.filterItems(300);
-            }
+        if (adapter.hasNewFilter(newText)) {
+            // the filter is only kept for highlighting, the items are picked by the search index
+            adapter.setFilter(newText);
+            currentSearchQuery = adapter.hasFilter() ? newText : "";
+            searchQueries.onNext(currentSearchQuery);
         }
 
         if (swipeRefreshLayout != null) {
@@ -511,7 +759,7 @@ public class ConversationsListController extends BaseController implements Searc
                 bottomSheet.setCancelable(bottomSheetLockEvent.isCancelable());
             } else {
                 if (bottomSheetLockEvent.getDelay() != 0 && bottomSheetLockEvent.isShouldRefreshData()) {
-                    fetchData(true);
+                    fetchData(true, true);
                 } else {
                     bottomSheet.setCancelable(bottomSheetLockEvent.isCancelable());
                     if (bottomSheet.isShowing() && bottomSheetLockEvent.isCancel()) {
@@ -56,6 +56,7 @@ import com.bumptech.glide.request.RequestOptions;
 import com.nextcloud.talk.BuildConfig;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NetworkTelemetry;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.controllers.base.BaseController;
 import com.nextcloud.talk.jobs.AccountRemovalWorker;
@@ -63,6 +64,7 @@ import com.nextcloud.talk.models.RingtoneSettings;
 import com.nextcloud.talk.models.database.UserEntity;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.DoNotDisturbUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.SecurityUtils;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
 import com.nextcloud.talk.utils.database.user.UserUtils;
@@ -70,10 +72,11 @@ import com.nextcloud.talk.utils.glide.GlideApp;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
 import com.nextcloud.talk.utils.preferences.MagicUserInputModule;
 import com.nextcloud.talk.utils.singletons.ApplicationWideMessageHolder;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import com.yarolegovich.lovelydialog.LovelyStandardDialog;
 import com.yarolegovich.mp.*;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import net.orange_box.storebox.listeners.OnPreferenceValueChangedListener;
 import org.greenrobot.eventbus.EventBus;
 
@@ -163,6 +166,9 @@ public class SettingsController extends BaseController {
     @BindView(R.id.message_text)
     TextView messageText;
 
+    @BindView(R.id.settings_network_statistics)
+    MaterialStandardPreference networkStatisticsButton;
+
     @Inject
     EventBus eventBus;
 
@@ -274,6 +280,8 @@ public class SettingsController extends BaseController {
 
         versionInfo.setSummary("v" + BuildConfig.VERSION_NAME);
 
+        networkStatisticsButton.addPreferenceClickListener(view14 -> showDiagnostics());
+
         settingsCallSound.setOnClickListener(v -> {
             Bundle bundle = new Bundle();
             bundle.putBoolean(BundleKeys.KEY_ARE_CALL_SOUNDS, true);
@@ -370,6 +378,8 @@ public class SettingsController extends BaseController {
 
         ((Checkable) linkPreviewsSwitchPreference.findViewById(R.id.mp_checkable)).setChecked(appPreferences.getAreLinkPreviewsAllowed());
 
+        networkStatisticsButton.setSummary(NetworkTelemetry.getInstance().getSummary());
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             KeyguardManager keyguardManager = (KeyguardManager) context.getSystemService(Context.KEYGUARD_SERVICE);
 
@@ -457,7 +467,7 @@ public class SettingsController extends BaseController {
 
             profileQueryDisposable = ncApi.getUserProfile(credentials,
                     ApiUtils.getUrlForUserProfile(currentUser.getBaseUrl()))
-                    .subscribeOn(Schedulers.newThread())
+                    .subscribeOn(MagicSchedulers.network())
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribe(userProfileOverall -> {
 
@@ -479,7 +489,7 @@ public class SettingsController extends BaseController {
                                     null,
                                     null, displayName, null, null,
                                     null, currentUser.getId(), null, null, null)
-                                    .subscribeOn(Schedulers.newThread())
+                                    .subscribeOn(MagicSchedulers.disk())
                                     .observeOn(AndroidSchedulers.mainThread())
                                     .subscribe(userEntityResult -> {
                                                 displayNameTextView.setText(userEntityResult.getDisplayName());
@@ -608,6 +618,53 @@ public class SettingsController extends BaseController {
     }
 
 
+    private void showDiagnostics() {
+        String report = getDiagnosticsReport();
+
+        new LovelyStandardDialog(getActivity())
+                .setTopColorRes(R.color.colorPrimary)
+                .setPositiveButtonColorRes(R.color.colorPrimaryDark)
+                .setNegativeButtonColorRes(R.color.nc_darkRed)
+                .setIcon(R.drawable.ic_info_white_24dp)
+                .setTitle(R.string.nc_settings_network_statistics)
+                .setMessage(report)
+                .setPositiveButton(R.string.nc_share, v -> {
+                    Intent shareIntent = new Intent(Intent.ACTION_SEND);
+                    shareIntent.setType("text/plain");
+                    shareIntent.putExtra(Intent.EXTRA_SUBJECT, String.format(getResources()
+                                    .getString(R.string.nc_settings_diagnostics_subject),
+                            getResources().getString(R.string.nc_app_name)));
+                    shareIntent.putExtra(Intent.EXTRA_TEXT, report);
+                    startActivity(Intent.createChooser(shareIntent, getResources().getString(R.string.nc_share)));
+                })
+                .setNegativeButton(R.string.nc_reset, v -> {
+                    NetworkTelemetry.getInstance().clear();
+                    ApplicationWideMetricsHolder.getInstance().clear();
+                    networkStatisticsButton.setSummary(NetworkTelemetry.getInstance().getSummary());
+                })
+                .show();
+    }
+
+    private String getDiagnosticsReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(getResources().getString(R.string.nc_app_name)).append(" v").append(BuildConfig.VERSION_NAME)
+                .append(", Android ").append(Build.VERSION.RELEASE).append("\n\n");
+
+        String networkReport = NetworkTelemetry.getInstance().getReport();
+        if (TextUtils.isEmpty(networkReport)) {
+            report.append(getResources().getString(R.string.nc_settings_network_statistics_empty)).append('\n');
+        } else {
+            report.append(networkReport);
+        }
+
+        report.append('\n');
+        for (Map.Entry<String, String> metric : ApplicationWideMetricsHolder.getInstance().getSnapshot().entrySet()) {
+            report.append(metric.getKey()).append(": ").append(metric.getValue()).append('\n');
+        }
+
+        return report.toString();
+    }
+
     private void hideProxySettings() {
         appPreferences.removeProxyHost();
         appPreferences.removeProxyPort();
@@ -45,6 +45,7 @@ import com.nextcloud.talk.controllers.base.BaseController;
 import com.nextcloud.talk.events.CertificateEvent;
 import com.nextcloud.talk.models.LoginData;
 import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
@@ -52,7 +53,6 @@ import com.nextcloud.talk.utils.singletons.ApplicationWideMessageHolder;
 import com.nextcloud.talk.utils.ssl.MagicTrustManager;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import io.requery.Persistable;
 import io.requery.reactivex.ReactiveEntityStore;
 import org.greenrobot.eventbus.EventBus;
@@ -365,7 +365,7 @@ public class WebViewLoginController extends BaseController {
                         userQueryDisposable = userUtils.createOrUpdateUser(null, loginData.getToken(),
                                 null, null, null, true,
                                 null, currentUser.getId(), null, appPreferences.getTemporaryClientCertAlias(), null)
-                                .subscribeOn(Schedulers.newThread())
+                                .subscribeOn(MagicSchedulers.disk())
                                 .observeOn(AndroidSchedulers.mainThread())
                                 .subscribe(userEntity -> {
                                             if (finalMessageType != null) {
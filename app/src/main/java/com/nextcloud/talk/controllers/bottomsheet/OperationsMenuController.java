@@ -45,6 +45,8 @@ import com.bluelinelabs.logansquare.LoganSquare;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.activities.MagicCallActivity;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
+import com.nextcloud.talk.api.RetryPolicy;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.controllers.ChatController;
 import com.nextcloud.talk.controllers.base.BaseController;
@@ -61,13 +63,13 @@ import com.nextcloud.talk.models.json.rooms.Conversation;
 import com.nextcloud.talk.models.json.rooms.RoomOverall;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.DisplayUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.bundle.BundleKeys;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.singletons.ApplicationWideMessageHolder;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import org.greenrobot.eventbus.EventBus;
 import org.parceler.Parcels;
 import retrofit2.HttpException;
@@ -97,6 +99,9 @@ public class OperationsMenuController extends BaseController {
     @Inject
     NcApi ncApi;
 
+    @Inject
+    NcApiCoalescer ncApiCoalescer;
+
     @Inject
     UserUtils userUtils;
 
@@ -187,25 +192,25 @@ public class OperationsMenuController extends BaseController {
                 case 1:
                     ncApi.removeSelfFromRoom(credentials, ApiUtils.getUrlForRemoveSelfFromRoom(currentUser.getBaseUrl
                             (), conversation.getToken()))
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(operationsObserver);
                     break;
                 case 2:
                     ncApi.renameRoom(credentials, ApiUtils.getRoom(currentUser.getBaseUrl(), conversation.getToken()),
                             conversation.getName())
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(operationsObserver);
                     break;
                 case 3:
                     ncApi.makeRoomPublic(credentials, ApiUtils.getUrlForRoomVisibility(currentUser.getBaseUrl(), conversation
                             .getToken()))
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(operationsObserver);
                     break;
                 case 4:
@@ -217,9 +222,9 @@ public class OperationsMenuController extends BaseController {
                     }
                     ncApi.setPassword(credentials, ApiUtils.getUrlForPassword(currentUser.getBaseUrl(),
                             conversation.getToken()), pass)
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(operationsObserver);
                     break;
                 case 7:
@@ -228,23 +233,23 @@ public class OperationsMenuController extends BaseController {
                 case 8:
                     ncApi.makeRoomPrivate(credentials, ApiUtils.getUrlForRoomVisibility(currentUser.getBaseUrl(), conversation
                             .getToken()))
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(operationsObserver);
                     break;
                 case 9:
                     ncApi.deleteRoom(credentials, ApiUtils.getUrlForSettingMyselfAsActiveParticipant(currentUser.getBaseUrl(), conversation.getToken()))
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(operationsObserver);
                     break;
                 case 10:
-                    ncApi.getRoom(credentials, ApiUtils.getRoom(baseUrl, conversationToken))
-                            .subscribeOn(Schedulers.newThread())
+                    ncApiCoalescer.getRoom(ncApi, credentials, ApiUtils.getRoom(baseUrl, conversationToken))
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(new Observer<RoomOverall>() {
                                 @Override
                                 public void onSubscribe(Disposable d) {
@@ -295,9 +300,9 @@ public class OperationsMenuController extends BaseController {
 
                     final boolean isGroupCallWorkaroundFinal = isGroupCallWorkaround;
                     ncApi.createRoom(credentials, retrofitBucket.getUrl(), retrofitBucket.getQueryMap())
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(new Observer<RoomOverall>() {
                                 @Override
                                 public void onSubscribe(Disposable d) {
@@ -332,25 +337,25 @@ public class OperationsMenuController extends BaseController {
                     if (operationCode == 97) {
                         ncApi.removeConversationFromFavorites(credentials, ApiUtils.getUrlForConversationFavorites(currentUser.getBaseUrl(),
                                 conversation.getToken()))
-                                .subscribeOn(Schedulers.newThread())
+                                .subscribeOn(MagicSchedulers.network())
                                 .observeOn(AndroidSchedulers.mainThread())
-                                .retry(1)
+                                .compose(RetryPolicy.retry(1))
                                 .subscribe(operationsObserver);
                     } else {
                         ncApi.addConversationToFavorites(credentials, ApiUtils.getUrlForConversationFavorites(currentUser.getBaseUrl(),
                                 conversation.getToken()))
-                                .subscribeOn(Schedulers.newThread())
+                                .subscribeOn(MagicSchedulers.network())
                                 .observeOn(AndroidSchedulers.mainThread())
-                                .retry(1)
+                                .compose(RetryPolicy.retry(1))
                                 .subscribe(operationsObserver);
                     }
                     break;
                 case 99:
                     ncApi.joinRoom(credentials, ApiUtils.getUrlForSettingMyselfAsActiveParticipant(baseUrl, conversationToken),
                             callPassword)
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(operationsObserver);
                     break;
                 default:
@@ -361,9 +366,9 @@ public class OperationsMenuController extends BaseController {
 
     private void performGroupCallWorkaround(String credentials) {
         ncApi.makeRoomPrivate(credentials, ApiUtils.getUrlForRoomVisibility(currentUser.getBaseUrl(), conversation.getToken()))
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
-                .retry(1)
+                .compose(RetryPolicy.retry(1))
                 .subscribe(new Observer<GenericOverall>() {
                     @Override
                     public void onSubscribe(Disposable d) {
@@ -448,8 +453,8 @@ public class OperationsMenuController extends BaseController {
     }
 
     private void fetchCapabilities(String credentials) {
-        ncApi.getCapabilities(credentials, ApiUtils.getUrlForCapabilities(baseUrl))
-                .subscribeOn(Schedulers.newThread())
+        ncApiCoalescer.getCapabilities(ncApi, credentials, ApiUtils.getUrlForCapabilities(baseUrl))
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(new Observer<CapabilitiesOverall>() {
                     @Override
@@ -523,9 +528,9 @@ public class OperationsMenuController extends BaseController {
                             groupId);
 
                     ncApi.addParticipant(credentials, retrofitBucket.getUrl(), retrofitBucket.getQueryMap())
-                            .subscribeOn(Schedulers.newThread())
+                            .subscribeOn(MagicSchedulers.network())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .retry(1)
+                            .compose(RetryPolicy.retry(1))
                             .subscribe(new Observer<AddParticipantOverall>() {
                                 @Override
                                 public void onSubscribe(Disposable d) {
@@ -563,9 +568,9 @@ public class OperationsMenuController extends BaseController {
                         userId);
 
                 ncApi.addParticipant(credentials, retrofitBucket.getUrl(), retrofitBucket.getQueryMap())
-                        .subscribeOn(Schedulers.newThread())
+                        .subscribeOn(MagicSchedulers.network())
                         .observeOn(AndroidSchedulers.mainThread())
-                        .retry(1)
+                        .compose(RetryPolicy.retry(1))
                         .subscribe(new Observer<AddParticipantOverall>() {
                             @Override
                             public void onSubscribe(Disposable d) {
@@ -0,0 +1,133 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.conversations;
+
+import com.nextcloud.talk.adapters.items.CallItem;
+import com.nextcloud.talk.adapters.items.ConversationItem;
+import com.nextcloud.talk.models.json.rooms.Conversation;
+import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The steps that turn the conversation list currently shown into a new snapshot of it, matched by token.
+ * Calculated off the main thread, so that the main thread only has to apply the steps.
+ */
+public class ConversationListDiff {
+    private final List<AbstractFlexibleItem> newItems;
+    private final List<Operation> operations;
+
+    private ConversationListDiff(List<AbstractFlexibleItem> newItems, List<Operation> operations) {
+        this.newItems = newItems;
+        this.operations = operations;
+    }
+
+    /**
+     * @param oldItems the items as they are in the adapter right now, left untouched
+     * @param newItems the sorted items of the new snapshot
+     */
+    public static ConversationListDiff calculate(List<AbstractFlexibleItem> oldItems,
+                                                 List<AbstractFlexibleItem> newItems) {
+        List<AbstractFlexibleItem> currentItems = new ArrayList<>(oldItems);
+        List<Operation> operations = new ArrayList<>();
+
+        // everything before position i already matches the new snapshot
+        for (int i = 0; i < newItems.size(); i++) {
+            AbstractFlexibleItem newItem = newItems.get(i);
+            String token = getConversation(newItem).getToken();
+            int currentPosition = indexOfToken(currentItems, token, i);
+
+            if (currentPosition == -1) {
+                operations.add(new Operation(OperationType.INSERT, -1, i, newItem));
+                currentItems.add(i, newItem);
+                continue;
+            }
+
+            if (currentPosition != i) {
+                operations.add(new Operation(OperationType.MOVE, currentPosition, i, null));
+                currentItems.add(i, currentItems.remove(currentPosition));
+            }
+
+            if (hasChanged(getConversation(currentItems.get(i)), getConversation(newItem)) ||
+                    currentItems.get(i).getClass() != newItem.getClass()) {
+                operations.add(new Operation(OperationType.UPDATE, i, i, newItem));
+                currentItems.set(i, newItem);
+            }
+        }
+
+        // what is left at the end is gone from the new snapshot
+        for (int i = currentItems.size() - 1; i >= newItems.size(); i--) {
+            operations.add(new Operation(OperationType.REMOVE, i, -1, null));
+        }
+
+        return new ConversationListDiff(newItems, operations);
+    }
+
+    public static Conversation getConversation(AbstractFlexibleItem item) {
+        if (item instanceof ConversationItem) {
+            return ((ConversationItem) item).getModel();
+        } else {
+            return ((CallItem) item).getModel();
+        }
+    }
+
+    private static int indexOfToken(List<AbstractFlexibleItem> items, String token, int fromPosition) {
+        for (int i = fromPosition; i < items.size(); i++) {
+            if (token.equals(getConversation(items.get(i)).getToken())) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    // the last activity changes with nearly everything that is shown, the full comparison catches the rest
+    private static boolean hasChanged(Conversation oldConversation, Conversation newConversation) {
+        return oldConversation.getLastActivity() != newConversation.getLastActivity() ||
+                !oldConversation.equals(newConversation);
+    }
+
+    public List<AbstractFlexibleItem> getNewItems() {
+        return newItems;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    public enum OperationType {
+        INSERT, MOVE, UPDATE, REMOVE
+    }
+
+    @Data
+    public static class Operation {
+        private final OperationType type;
+        private final int fromPosition;
+        private final int toPosition;
+        private final AbstractFlexibleItem item;
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.conversations;
+
+import android.text.TextUtils;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import com.bluelinelabs.logansquare.LoganSquare;
+import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.events.WebSocketCommunicationEvent;
+import com.nextcloud.talk.models.ExternalSignalingServer;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.models.json.rooms.Conversation;
+import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import com.nextcloud.talk.webrtc.MagicWebSocketInstance;
+import com.nextcloud.talk.webrtc.WebSocketConnectionHelper;
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+import lombok.Data;
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
+import retrofit2.HttpException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the conversation list of one account current while it is shown.
+ * <p>
+ * With an external signaling server the rooms named in its room list, participant and chat events
+ * are fetched one by one. Without one, the room list is polled with its ETag, less often the longer
+ * it stays the same. The same polling stands in for the events whenever the WebSocket is not connected,
+ * and once it is again the list is fetched once to catch up with what was missed.
+ */
+public class ConversationListSync {
+    private static final String TAG = "ConversationListSync";
+
+    // signaling events come in bursts, e.g. one per participant joining a call
+    private static final long EVENT_BATCH_MILLIS = 1000;
+    private static final long MIN_POLL_INTERVAL_SECONDS = 30;
+    private static final long MAX_POLL_INTERVAL_SECONDS = 300;
+    private static final long WEB_SOCKET_CHECK_SECONDS = 30;
+
+    private final NcApi ncApi;
+    private final EventBus eventBus;
+    private final UserEntity userEntity;
+    private final String credentials;
+    @Nullable
+    private final ExternalSignalingServer externalSignalingServer;
+
+    // posted to from the threads of all web sockets
+    private final Subject<String> changedTokens = PublishSubject.<String>create().toSerialized();
+    private volatile Set<String> knownTokens = Collections.emptySet();
+
+    private String eTag;
+    private List<Conversation> lastPolledConversations;
+    private long pollIntervalSeconds = MIN_POLL_INTERVAL_SECONDS;
+
+    public ConversationListSync(NcApi ncApi, EventBus eventBus, UserEntity userEntity) {
+        this.ncApi = ncApi;
+        this.eventBus = eventBus;
+        this.userEntity = userEntity;
+        this.credentials = ApiUtils.getCredentials(userEntity.getUsername(), userEntity.getToken());
+        this.externalSignalingServer = getExternalSignalingServer(userEntity);
+    }
+
+    @Nullable
+    private static ExternalSignalingServer getExternalSignalingServer(UserEntity userEntity) {
+        if (TextUtils.isEmpty(userEntity.getExternalSignalingServer())) {
+            return null;
+        }
+
+        try {
+            ExternalSignalingServer externalSignalingServer = LoganSquare.parse(userEntity.getExternalSignalingServer(),
+                    ExternalSignalingServer.class);
+            if (!TextUtils.isEmpty(externalSignalingServer.getExternalSignalingServer()) &&
+                    !TextUtils.isEmpty(externalSignalingServer.getExternalSignalingTicket())) {
+                return externalSignalingServer;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to parse external signaling server");
+        }
+
+        return null;
+    }
+
+    public boolean isEventDriven() {
+        return externalSignalingServer != null;
+    }
+
+    /**
+     * The tokens of the conversations that are shown right now; events about other rooms are only
+     * followed when they are addressed to this account.
+     */
+    public void setKnownConversations(List<Conversation> conversations) {
+        Set<String> tokens = new HashSet<>();
+        for (Conversation conversation : conversations) {
+            tokens.add(conversation.getToken());
+        }
+        knownTokens = tokens;
+    }
+
+    /**
+     * Emits the changes to the conversation list until disposed, starting with the next one.
+     */
+    public Observable<ConversationListChange> getChanges() {
+        if (isEventDriven()) {
+            return Observable.merge(getSignalingChanges(), getChangesWhileDisconnected());
+        } else {
+            return getPolledChanges();
+        }
+    }
+
+    private Observable<ConversationListChange> getSignalingChanges() {
+        return changedTokens
+                .buffer(EVENT_BATCH_MILLIS, TimeUnit.MILLISECONDS)
+                .filter(tokens -> !tokens.isEmpty())
+                .concatMap(tokens -> Observable.fromIterable(new LinkedHashSet<>(tokens))
+                        .concatMap(this::fetchConversation)
+                        .toList()
+                        .toObservable())
+                .map(ConversationListChange::fromConversationChanges)
+                .doOnSubscribe(disposable -> eventBus.register(this))
+                .doFinally(() -> eventBus.unregister(this));
+    }
+
+    // no events arrive while the WebSocket is down, so the list is polled until it is connected again
+    private Observable<ConversationListChange> getChangesWhileDisconnected() {
+        return Observable.interval(0, WEB_SOCKET_CHECK_SECONDS, TimeUnit.SECONDS, MagicSchedulers.compute())
+                .map(tick -> isWebSocketConnected())
+                .startWith(true)
+                .distinctUntilChanged()
+                .skip(1)
+                .switchMap(isConnected -> {
+                    if (isConnected) {
+                        return pollRooms().onErrorResumeNext(Observable.<ConversationListChange>empty());
+                    }
+
+                    pollIntervalSeconds = MIN_POLL_INTERVAL_SECONDS;
+                    return getPolledChanges();
+                });
+    }
+
+    private boolean isWebSocketConnected() {
+        MagicWebSocketInstance magicWebSocketInstance = WebSocketConnectionHelper.getExternalSignalingInstanceForServer(
+                externalSignalingServer.getExternalSignalingServer(), userEntity,
+                externalSignalingServer.getExternalSignalingTicket());
+        return magicWebSocketInstance != null && magicWebSocketInstance.isConnected();
+    }
+
+    private Observable<ConversationChange> fetchConversation(String token) {
+        return ncApi.getRoom(credentials, ApiUtils.getRoom(userEntity.getBaseUrl(), token))
+                .subscribeOn(MagicSchedulers.network())
+                .doOnNext(roomOverall -> ApplicationWideMetricsHolder.getInstance()
+                        .incrementCounter("conversations.single_room_fetches", 1))
+                .map(roomOverall -> new ConversationChange(token, roomOverall.getOcs().getData()))
+                .onErrorResumeNext(throwable -> {
+                    if (throwable instanceof HttpException && (((HttpException) throwable).code() == 403 ||
+                            ((HttpException) throwable).code() == 404)) {
+                        // left, removed or deleted
+                        return Observable.just(new ConversationChange(token, null));
+                    }
+                    Log.w(TAG, "Failed to fetch changed conversation");
+                    return Observable.empty();
+                });
+    }
+
+    private Observable<ConversationListChange> getPolledChanges() {
+        return pollRooms()
+                .delaySubscription(MIN_POLL_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .retryWhen(errors -> errors.flatMap(throwable -> {
+                    pollIntervalSeconds = Math.min(pollIntervalSeconds * 2, MAX_POLL_INTERVAL_SECONDS);
+                    return Observable.timer(pollIntervalSeconds, TimeUnit.SECONDS);
+                }))
+                .repeatWhen(completions -> completions.flatMap(completion ->
+                        Observable.timer(pollIntervalSeconds - MIN_POLL_INTERVAL_SECONDS, TimeUnit.SECONDS)));
+    }
+
+    // emits the list if it changed since the last poll
+    private Observable<ConversationListChange> pollRooms() {
+        return Observable.defer(() -> ncApi.getRoomsIfNoneMatch(credentials, eTag,
+                ApiUtils.getUrlForGetRooms(userEntity.getBaseUrl())))
+                .subscribeOn(MagicSchedulers.network())
+                .<ConversationListChange>flatMap(response -> {
+                    ApplicationWideMetricsHolder.getInstance().incrementCounter("conversations.polls", 1);
+
+                    List<Conversation> conversations = null;
+                    if (response.isSuccessful() && response.body() != null) {
+                        eTag = response.headers().get("ETag");
+                        conversations = response.body().getOcs().getData();
+                    } else if (response.code() != 304) {
+                        throw new HttpException(response);
+                    }
+
+                    if (conversations == null || conversations.equals(lastPolledConversations)) {
+                        pollIntervalSeconds = Math.min(pollIntervalSeconds * 2, MAX_POLL_INTERVAL_SECONDS);
+                        return Observable.empty();
+                    }
+
+                    lastPolledConversations = conversations;
+                    pollIntervalSeconds = MIN_POLL_INTERVAL_SECONDS;
+                    return Observable.just(ConversationListChange.fromConversations(conversations));
+                });
+    }
+
+    @Subscribe(threadMode = ThreadMode.BACKGROUND)
+    public void onMessageEvent(WebSocketCommunicationEvent webSocketCommunicationEvent) {
+        HashMap<String, String> hashMap = webSocketCommunicationEvent.getHashMap();
+        // every account has its own WebSocket, and the same room may be shared by several of them
+        if (hashMap == null || TextUtils.isEmpty(hashMap.get("roomToken")) ||
+                !Long.toString(userEntity.getId()).equals(hashMap.get("internalUserId"))) {
+            return;
+        }
+
+        String roomToken = hashMap.get("roomToken");
+        switch (webSocketCommunicationEvent.getType()) {
+            case "roomListUpdate":
+                changedTokens.onNext(roomToken);
+                break;
+            case "participantsUpdate":
+            case "refreshChat":
+                if (knownTokens.contains(roomToken)) {
+                    changedTokens.onNext(roomToken);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Either the complete list, or the conversations that changed and the tokens of those that are gone.
+     */
+    @Data
+    public static class ConversationListChange {
+        private final boolean complete;
+        private final List<Conversation> conversations;
+        private final Set<String> removedTokens;
+
+        static ConversationListChange fromConversations(List<Conversation> conversations) {
+            return new ConversationListChange(true, conversations, Collections.emptySet());
+        }
+
+        static ConversationListChange fromConversationChanges(List<ConversationChange> conversationChanges) {
+            List<Conversation> conversations = new ArrayList<>();
+            Set<String> removedTokens = new HashSet<>();
+            for (ConversationChange conversationChange : conversationChanges) {
+                if (conversationChange.conversation != null) {
+                    conversations.add(conversationChange.conversation);
+                } else {
+                    removedTokens.add(conversationChange.token);
+                }
+            }
+            return new ConversationListChange(false, conversations, removedTokens);
+        }
+
+        /**
+         * Applies the change to the conversations shown right now.
+         */
+        public List<Conversation> applyTo(List<Conversation> shownConversations) {
+            if (complete) {
+                return conversations;
+            }
+
+            Map<String, Conversation> changedConversations = new LinkedHashMap<>();
+            for (Conversation conversation : conversations) {
+                changedConversations.put(conversation.getToken(), conversation);
+            }
+
+            List<Conversation> result = new ArrayList<>(shownConversations.size() + conversations.size());
+            for (Conversation conversation : shownConversations) {
+                if (removedTokens.contains(conversation.getToken())) {
+                    continue;
+                }
+                Conversation changedConversation = changedConversations.remove(conversation.getToken());
+                result.add(changedConversation != null ? changedConversation : conversation);
+            }
+            // whatever is left was not shown yet, e.g. after being invited
+            result.addAll(changedConversations.values());
+            return result;
+        }
+    }
+
+    private static class ConversationChange {
+        final String token;
+        @Nullable
+        final Conversation conversation;
+
+        ConversationChange(String token, @Nullable Conversation conversation) {
+            this.token = token;
+            this.conversation = conversation;
+        }
+    }
+}
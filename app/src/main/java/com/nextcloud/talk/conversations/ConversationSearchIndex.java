@@ -0,0 +1,142 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.conversations;
+
+import androidx.annotation.Nullable;
+import com.nextcloud.talk.models.json.rooms.Conversation;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+
+import java.util.*;
+
+/**
+ * Trigram index over the display names of the conversations of one account, so that a search only has
+ * to look at the rooms sharing the rarest trigram of the query instead of every room.
+ * <p>
+ * Matches the same rooms as a case insensitive substring search. Safe to update and query from any thread.
+ */
+public class ConversationSearchIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<String, String> namesByToken = new HashMap<>();
+    private final Map<String, Set<String>> tokensByTrigram = new HashMap<>();
+
+    private static String normalize(@Nullable String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> getTrigrams(String text) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Brings the index in line with the current list; only rooms that are new, renamed or gone are touched.
+     */
+    public synchronized void update(List<Conversation> conversations) {
+        Set<String> currentTokens = new HashSet<>(conversations.size());
+
+        for (Conversation conversation : conversations) {
+            String token = conversation.getToken();
+            String name = normalize(conversation.getDisplayName());
+            currentTokens.add(token);
+
+            String indexedName = namesByToken.get(token);
+            if (name.equals(indexedName)) {
+                continue;
+            }
+
+            if (indexedName != null) {
+                removeTrigrams(token, indexedName);
+            }
+
+            namesByToken.put(token, name);
+            for (String trigram : getTrigrams(name)) {
+                Set<String> tokens = tokensByTrigram.get(trigram);
+                if (tokens == null) {
+                    tokens = new HashSet<>();
+                    tokensByTrigram.put(trigram, tokens);
+                }
+                tokens.add(token);
+            }
+        }
+
+        Iterator<Map.Entry<String, String>> iterator = namesByToken.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (!currentTokens.contains(entry.getKey())) {
+                removeTrigrams(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeTrigrams(String token, String name) {
+        for (String trigram : getTrigrams(name)) {
+            Set<String> tokens = tokensByTrigram.get(trigram);
+            if (tokens != null) {
+                tokens.remove(token);
+                if (tokens.isEmpty()) {
+                    tokensByTrigram.remove(trigram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the tokens of the conversations whose display name contains the query
+     */
+    public synchronized Set<String> search(String query) {
+        long startNanos = System.nanoTime();
+        String normalizedQuery = normalize(query);
+        Set<String> results = new HashSet<>();
+
+        Collection<String> candidates;
+        if (normalizedQuery.length() < GRAM_LENGTH) {
+            // too short for a trigram, but a contains() on every name is still cheap for a thousand rooms
+            candidates = namesByToken.keySet();
+        } else {
+            candidates = null;
+            for (String trigram : getTrigrams(normalizedQuery)) {
+                Set<String> tokens = tokensByTrigram.get(trigram);
+                if (tokens == null) {
+                    candidates = Collections.emptySet();
+                    break;
+                } else if (candidates == null || tokens.size() < candidates.size()) {
+                    candidates = tokens;
+                }
+            }
+        }
+
+        // a name holding all trigrams of the query does not necessarily hold them in a row
+        for (String token : candidates) {
+            if (namesByToken.get(token).contains(normalizedQuery)) {
+                results.add(token);
+            }
+        }
+
+        ApplicationWideMetricsHolder.getInstance().recordTiming("conversations.search_query",
+                (System.nanoTime() - startNanos) / 1000000);
+        return results;
+    }
+}
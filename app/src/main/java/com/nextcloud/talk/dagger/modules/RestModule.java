@@ -26,9 +26,14 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.github.aurae.retrofit2.LoganSquareConverterFactory;
 import com.nextcloud.talk.BuildConfig;
+import com.nextcloud.talk.api.CircuitBreakerInterceptor;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
+import com.nextcloud.talk.api.NcApiRegistry;
+import com.nextcloud.talk.api.NetworkTelemetry;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
 import com.nextcloud.talk.utils.singletons.AvatarStatusCodeHolder;
@@ -37,13 +42,14 @@ import com.nextcloud.talk.utils.ssl.MagicTrustManager;
 import com.nextcloud.talk.utils.ssl.SSLSocketFactoryCompat;
 import dagger.Module;
 import dagger.Provides;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.Scheduler;
 import okhttp3.*;
 import okhttp3.internal.tls.OkHostnameVerifier;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 
+import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.X509KeyManager;
@@ -61,7 +67,16 @@ import java.util.concurrent.TimeUnit;
 @Module(includes = DatabaseModule.class)
 public class RestModule {
 
+    public static final String LONG_POLL = "longPoll";
+    public static final String IMAGES = "images";
+
     private static final String TAG = "RestModule";
+    private static final int PING_TIMEOUT_SECONDS = 10;
+    // what the server uses when the request doesn't say, for signaling there is no choice
+    private static final int DEFAULT_LONG_POLL_SECONDS = 30;
+    private static final int LONG_POLL_MARGIN_SECONDS = 15;
+    private static final int MAX_IMAGE_REQUESTS = 8;
+    private static final int MAX_IMAGE_REQUESTS_PER_HOST = 4;
 
     @Singleton
     @Provides
@@ -69,6 +84,29 @@ public class RestModule {
         return retrofit.create(NcApi.class);
     }
 
+    /**
+     * The API for chat and signaling long polls. Its calls run on their own threads, so requests that wait
+     * on the server never hold up interactive ones.
+     */
+    @Singleton
+    @Provides
+    @Named(LONG_POLL)
+    NcApi provideLongPollNcApi(OkHttpClient httpClient) {
+        return buildRetrofit(httpClient, MagicSchedulers.longPoll()).create(NcApi.class);
+    }
+
+    @Singleton
+    @Provides
+    NcApiCoalescer provideNcApiCoalescer() {
+        return new NcApiCoalescer();
+    }
+
+    @Singleton
+    @Provides
+    NcApiRegistry provideNcApiRegistry(Retrofit retrofit, OkHttpClient httpClient) {
+        return new NcApiRegistry(retrofit, httpClient);
+    }
+
     @Singleton
     @Provides
     Proxy provideProxy(AppPreferences appPreferences) {
@@ -92,10 +130,14 @@ public class RestModule {
     @Singleton
     @Provides
     Retrofit provideRetrofit(OkHttpClient httpClient) {
+        return buildRetrofit(httpClient, MagicSchedulers.network());
+    }
+
+    private Retrofit buildRetrofit(OkHttpClient httpClient, Scheduler scheduler) {
         Retrofit.Builder retrofitBuilder = new Retrofit.Builder()
                 .client(httpClient)
                 .baseUrl("https://nextcloud.com")
-                .addCallAdapterFactory(RxJava2CallAdapterFactory.createWithScheduler(Schedulers.io()))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.createWithScheduler(scheduler))
                 .addConverterFactory(LoganSquareConverterFactory.create());
 
         return retrofitBuilder.build();
@@ -191,6 +233,7 @@ public class RestModule {
         httpClient.hostnameVerifier(magicTrustManager.getHostnameVerifier(OkHostnameVerifier.INSTANCE));
 
         httpClient.dispatcher(dispatcher);
+        httpClient.eventListenerFactory(NetworkTelemetry.getInstance().getEventListenerFactory());
         if (!Proxy.NO_PROXY.equals(proxy)) {
             httpClient.proxy(proxy);
 
@@ -203,11 +246,81 @@ public class RestModule {
             }
         }
 
+        httpClient.addInterceptor(CircuitBreakerInterceptor.getInstance());
         httpClient.addInterceptor(new HeadersInterceptor());
+        httpClient.addInterceptor(new TimeoutInterceptor());
 
         return httpClient.build();
     }
 
+    /**
+     * The client for avatars and previews. It shares the connections of the API client, but has its own
+     * dispatcher, so a screen full of images can't use up the requests the dispatcher allows.
+     */
+    @Singleton
+    @Provides
+    @Named(IMAGES)
+    OkHttpClient provideImageHttpClient(OkHttpClient httpClient) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_IMAGE_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_IMAGE_REQUESTS_PER_HOST);
+
+        return httpClient.newBuilder().dispatcher(dispatcher).build();
+    }
+
+    /**
+     * Adjusts the timeouts of the shared client to requests that don't fit them: pings are given up quickly,
+     * as the next one follows in a few seconds, and long polls may take as long as the server holds them.
+     */
+    public static class TimeoutInterceptor implements Interceptor {
+
+        @Override
+        public Response intercept(@NonNull Chain chain) throws IOException {
+            Request request = chain.request();
+            String path = request.url().encodedPath();
+
+            if (path.endsWith("/ping")) {
+                return chain.withConnectTimeout(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .withReadTimeout(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .withWriteTimeout(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                        .proceed(request);
+            }
+
+            int longPollSeconds = getLongPollSeconds(request);
+            if (longPollSeconds >= 0) {
+                return chain.withReadTimeout(longPollSeconds + LONG_POLL_MARGIN_SECONDS, TimeUnit.SECONDS)
+                        .proceed(request);
+            }
+
+            return chain.proceed(request);
+        }
+
+        /**
+         * Returns how long the server may hold the request open if it is a chat or signaling long poll,
+         * -1 for any other request.
+         */
+        public static int getLongPollSeconds(Request request) {
+            if (!"GET".equals(request.method())) {
+                return -1;
+            }
+
+            String path = request.url().encodedPath();
+            if (path.contains("/apps/spreed/api/v1/chat/") &&
+                    "1".equals(request.url().queryParameter("lookIntoFuture"))) {
+                String timeout = request.url().queryParameter("timeout");
+                if (!TextUtils.isEmpty(timeout) && TextUtils.isDigitsOnly(timeout)) {
+                    return Integer.parseInt(timeout);
+                }
+                return DEFAULT_LONG_POLL_SECONDS;
+            } else if (path.contains("/apps/spreed/api/v1/signaling") && !path.endsWith("/settings") &&
+                    !path.endsWith("/backend")) {
+                return DEFAULT_LONG_POLL_SECONDS;
+            }
+
+            return -1;
+        }
+    }
+
     public static class HeadersInterceptor implements Interceptor {
 
         @Override
@@ -33,24 +33,27 @@ import autodagger.AutoInjector;
 import com.bluelinelabs.logansquare.LoganSquare;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiRegistry;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.chat.ChatSyncHelper;
 import com.nextcloud.talk.models.database.UserEntity;
 import com.nextcloud.talk.models.json.generic.GenericOverall;
 import com.nextcloud.talk.models.json.push.PushConfigurationState;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.database.arbitrarystorage.ArbitraryStorageUtils;
+import com.nextcloud.talk.utils.database.chat.ChatMessageSearchUtils;
+import com.nextcloud.talk.utils.database.chat.ChatMessageStorageUtils;
+import com.nextcloud.talk.utils.database.contacts.ContactDirectoryStorageUtils;
+import com.nextcloud.talk.utils.database.conversations.ConversationListStorageUtils;
+import com.nextcloud.talk.utils.database.outbox.OutgoingMessageStorageUtils;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.webrtc.WebSocketConnectionHelper;
 import io.reactivex.CompletableObserver;
 import io.reactivex.Observer;
 import io.reactivex.disposables.Disposable;
-import okhttp3.JavaNetCookieJar;
-import okhttp3.OkHttpClient;
-import retrofit2.Retrofit;
 
 import javax.inject.Inject;
 import java.io.IOException;
-import java.net.CookieManager;
 import java.util.HashMap;
 import java.util.zip.CRC32;
 
@@ -65,10 +68,22 @@ public class AccountRemovalWorker extends Worker {
     ArbitraryStorageUtils arbitraryStorageUtils;
 
     @Inject
-    Retrofit retrofit;
+    ChatMessageStorageUtils chatMessageStorageUtils;
 
     @Inject
-    OkHttpClient okHttpClient;
+    ChatMessageSearchUtils chatMessageSearchUtils;
+
+    @Inject
+    OutgoingMessageStorageUtils outgoingMessageStorageUtils;
+
+    @Inject
+    ConversationListStorageUtils conversationListStorageUtils;
+
+    @Inject
+    ContactDirectoryStorageUtils contactDirectoryStorageUtils;
+
+    @Inject
+    NcApiRegistry ncApiRegistry;
 
     NcApi ncApi;
 
@@ -85,6 +100,12 @@ public class AccountRemovalWorker extends Worker {
         String credentials;
         for (Object userEntityObject : userUtils.getUsersScheduledForDeletion()) {
             UserEntity userEntity = (UserEntity) userEntityObject;
+            ChatSyncHelper.deleteChatSyncEngineForUserEntity(userEntity.getId());
+            chatMessageStorageUtils.deleteAllEntriesForAccountIdentifier(userEntity.getId()).blockingSubscribe();
+            chatMessageSearchUtils.deleteAllEntriesForAccountIdentifier(userEntity.getId()).blockingSubscribe();
+            outgoingMessageStorageUtils.deleteAllEntriesForAccountIdentifier(userEntity.getId()).blockingSubscribe();
+            conversationListStorageUtils.deleteAllEntriesForAccountIdentifier(userEntity.getId()).blockingSubscribe();
+            contactDirectoryStorageUtils.deleteAllEntriesForAccountIdentifier(userEntity.getId()).blockingSubscribe();
             try {
                 if (!TextUtils.isEmpty(userEntity.getPushConfigurationState())) {
                     pushConfigurationState = LoganSquare.parse(userEntity.getPushConfigurationState(),
@@ -93,8 +114,7 @@ public class AccountRemovalWorker extends Worker {
 
                     credentials = ApiUtils.getCredentials(userEntity.getUsername(), userEntity.getToken());
 
-                    ncApi = retrofit.newBuilder().client(okHttpClient.newBuilder().cookieJar(new
-                            JavaNetCookieJar(new CookieManager())).build()).build().create(NcApi.class);
+                    ncApi = ncApiRegistry.getNcApi(userEntity.getId());
 
                     String finalCredentials = credentials;
                     ncApi.unregisterDeviceForNotificationsWithNextcloud(credentials, ApiUtils.getUrlNextcloudPush(userEntity
@@ -244,6 +264,9 @@ public class AccountRemovalWorker extends Worker {
                             }
                         });
             }
+
+            // requests still running keep the client they got, it is only no longer handed out
+            ncApiRegistry.removeAccount(userEntity.getId());
         }
 
         return Result.success();
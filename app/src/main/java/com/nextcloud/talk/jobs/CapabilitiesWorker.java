@@ -29,6 +29,9 @@ import androidx.work.WorkerParameters;
 import autodagger.AutoInjector;
 import com.bluelinelabs.logansquare.LoganSquare;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
+import com.nextcloud.talk.api.NcApiRegistry;
+import com.nextcloud.talk.api.RetryPolicy;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.events.EventStatus;
 import com.nextcloud.talk.models.database.UserEntity;
@@ -38,14 +41,10 @@ import com.nextcloud.talk.utils.bundle.BundleKeys;
 import com.nextcloud.talk.utils.database.user.UserUtils;
 import io.reactivex.Observer;
 import io.reactivex.disposables.Disposable;
-import okhttp3.JavaNetCookieJar;
-import okhttp3.OkHttpClient;
 import org.greenrobot.eventbus.EventBus;
-import retrofit2.Retrofit;
 
 import javax.inject.Inject;
 import java.io.IOException;
-import java.net.CookieManager;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -57,13 +56,13 @@ public class CapabilitiesWorker extends Worker {
     UserUtils userUtils;
 
     @Inject
-    Retrofit retrofit;
+    EventBus eventBus;
 
     @Inject
-    EventBus eventBus;
+    NcApiRegistry ncApiRegistry;
 
     @Inject
-    OkHttpClient okHttpClient;
+    NcApiCoalescer ncApiCoalescer;
 
     NcApi ncApi;
 
@@ -128,12 +127,11 @@ public class CapabilitiesWorker extends Worker {
         for (Object userEntityObject : userEntityObjectList) {
             UserEntity internalUserEntity = (UserEntity) userEntityObject;
 
-            ncApi = retrofit.newBuilder().client(okHttpClient.newBuilder().cookieJar(new
-                    JavaNetCookieJar(new CookieManager())).build()).build().create(NcApi.class);
+            ncApi = ncApiRegistry.getNcApi(internalUserEntity.getId());
 
-            ncApi.getCapabilities(ApiUtils.getCredentials(internalUserEntity.getUsername(),
+            ncApiCoalescer.getCapabilities(ncApi, ApiUtils.getCredentials(internalUserEntity.getUsername(),
                     internalUserEntity.getToken()), ApiUtils.getUrlForCapabilities(internalUserEntity.getBaseUrl()))
-                    .retry(3)
+                    .compose(RetryPolicy.retry(3))
                     .blockingSubscribe(new Observer<CapabilitiesOverall>() {
                         @Override
                         public void onSubscribe(Disposable d) {
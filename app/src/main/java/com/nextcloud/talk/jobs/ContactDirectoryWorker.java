@@ -0,0 +1,151 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.jobs;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import autodagger.AutoInjector;
+import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.contacts.ContactsFetcher;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
+import com.nextcloud.talk.utils.bundle.BundleKeys;
+import com.nextcloud.talk.utils.database.contacts.ContactDirectoryStorageUtils;
+import com.nextcloud.talk.utils.database.user.UserUtils;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches all users and groups of an account, page by page on servers before 14 and in one request
+ * after, and brings the local contact directory in line with them. Skipped if the directory was synced
+ * recently, unless forced.
+ */
+@AutoInjector(NextcloudTalkApplication.class)
+public class ContactDirectoryWorker extends Worker {
+    public static final String TAG = "ContactDirectoryWorker";
+    private static final String KEY_FORCE_SYNC = "KEY_FORCE_SYNC";
+
+    private static final long SYNC_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(12);
+    private static final int PAGE_SIZE = 100;
+    // 20000 contacts, more are left to the server search
+    private static final int MAX_PAGES = 200;
+
+    @Inject
+    UserUtils userUtils;
+
+    @Inject
+    ContactDirectoryStorageUtils contactDirectoryStorageUtils;
+
+    @Inject
+    NcApi ncApi;
+
+    public ContactDirectoryWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    public static void enqueue(long internalUserId, boolean forceSync) {
+        Data data = new Data.Builder()
+                .putLong(BundleKeys.KEY_INTERNAL_USER_ID, internalUserId)
+                .putBoolean(KEY_FORCE_SYNC, forceSync)
+                .build();
+
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        OneTimeWorkRequest contactDirectoryWork = new OneTimeWorkRequest.Builder(ContactDirectoryWorker.class)
+                .setInputData(data)
+                .setConstraints(constraints)
+                .build();
+
+        WorkManager.getInstance().enqueueUniqueWork(TAG + internalUserId,
+                forceSync ? ExistingWorkPolicy.REPLACE : ExistingWorkPolicy.KEEP, contactDirectoryWork);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        NextcloudTalkApplication.getSharedApplication().getComponentApplication().inject(this);
+
+        long internalUserId = getInputData().getLong(BundleKeys.KEY_INTERNAL_USER_ID, -1);
+        UserEntity userEntity = userUtils.getUserWithInternalId(internalUserId);
+
+        if (userEntity == null) {
+            return Result.success();
+        }
+
+        if (!getInputData().getBoolean(KEY_FORCE_SYNC, false) && System.currentTimeMillis() -
+                contactDirectoryStorageUtils.getLastSyncTime(internalUserId) < SYNC_INTERVAL_MILLIS) {
+            return Result.success();
+        }
+
+        Set<AutocompleteUser> contacts = new LinkedHashSet<>();
+        boolean isPaged = ContactsFetcher.isPaged(userEntity);
+        boolean isComplete = false;
+        try {
+            for (int page = 1; page <= MAX_PAGES && !isComplete; page++) {
+                if (isStopped()) {
+                    return Result.retry();
+                }
+
+                List<AutocompleteUser> pageContacts = ContactsFetcher.getContacts(ncApi, userEntity, "", page,
+                        PAGE_SIZE).toList().blockingGet();
+                int knownContacts = contacts.size();
+                for (AutocompleteUser autocompleteUser : pageContacts) {
+                    if (!autocompleteUser.getId().equals(userEntity.getUserId())) {
+                        contacts.add(autocompleteUser);
+                    }
+                }
+
+                // a page without anything new means the server ignores paging and sent the same list again
+                isComplete = !isPaged || pageContacts.size() < PAGE_SIZE ||
+                        (page > 1 && contacts.size() == knownContacts);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to fetch the contacts of an account", e);
+            return Result.retry();
+        }
+
+        // contacts beyond the last page are not known to be gone, so they are only removed after a complete fetch
+        int changedContacts = contactDirectoryStorageUtils.syncContacts(internalUserId,
+                new ArrayList<>(contacts), isComplete);
+        ApplicationWideMetricsHolder.getInstance().setGauge("contacts.directory_size", contacts.size());
+        ApplicationWideMetricsHolder.getInstance().incrementCounter("contacts.directory_changes", changedContacts);
+
+        return Result.success();
+    }
+}
@@ -48,7 +48,10 @@ import com.bluelinelabs.logansquare.LoganSquare;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.activities.MagicCallActivity;
 import com.nextcloud.talk.activities.MainActivity;
+import com.nextcloud.talk.api.ConnectionPrewarmer;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiCoalescer;
+import com.nextcloud.talk.api.NcApiRegistry;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.models.RingtoneSettings;
 import com.nextcloud.talk.models.SignatureVerification;
@@ -69,16 +72,13 @@ import com.nextcloud.talk.utils.preferences.AppPreferences;
 import com.nextcloud.talk.utils.singletons.ApplicationWideCurrentRoomHolder;
 import io.reactivex.Observer;
 import io.reactivex.disposables.Disposable;
-import okhttp3.JavaNetCookieJar;
 import okhttp3.OkHttpClient;
 import org.parceler.Parcels;
-import retrofit2.Retrofit;
 
 import javax.crypto.Cipher;
 import javax.crypto.NoSuchPaddingException;
 import javax.inject.Inject;
 import java.io.IOException;
-import java.net.CookieManager;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
@@ -97,7 +97,10 @@ public class NotificationWorker extends Worker {
     ArbitraryStorageUtils arbitraryStorageUtils;
 
     @Inject
-    Retrofit retrofit;
+    NcApiRegistry ncApiRegistry;
+
+    @Inject
+    NcApiCoalescer ncApiCoalescer;
 
     @Inject
     OkHttpClient okHttpClient;
@@ -127,7 +130,7 @@ public class NotificationWorker extends Worker {
         }
 
         if (!muteCalls) {
-            ncApi.getRoom(credentials, ApiUtils.getRoom(userEntity.getBaseUrl(),
+            ncApiCoalescer.getRoom(ncApi, credentials, ApiUtils.getRoom(userEntity.getBaseUrl(),
                     intent.getExtras().getString(BundleKeys.KEY_ROOM_TOKEN)))
                     .blockingSubscribe(new Observer<RoomOverall>() {
                         @Override
@@ -423,8 +426,10 @@ public class NotificationWorker extends Worker {
                     credentials = ApiUtils.getCredentials(signatureVerification.getUserEntity().getUsername(),
                             signatureVerification.getUserEntity().getToken());
 
-                    ncApi = retrofit.newBuilder().client(okHttpClient.newBuilder().cookieJar(new
-                            JavaNetCookieJar(new CookieManager())).build()).build().create(NcApi.class);
+                    ncApi = ncApiRegistry.getNcApi(signatureVerification.getUserEntity().getId());
+                    // the user is likely to open the app from the notification
+                    ConnectionPrewarmer.getInstance().prewarm(okHttpClient,
+                            signatureVerification.getUserEntity().getBaseUrl());
 
                     boolean hasChatSupport = signatureVerification.getUserEntity().
                             hasSpreedCapabilityWithName("chat-v2");
@@ -0,0 +1,326 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.jobs;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import autodagger.AutoInjector;
+import com.nextcloud.talk.api.CircuitBreakerOpenException;
+import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.events.OutgoingMessageEvent;
+import com.nextcloud.talk.models.database.OutgoingChatMessage;
+import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+import com.nextcloud.talk.models.json.chat.ChatOverall;
+import com.nextcloud.talk.models.json.chat.ChatOverallSingleMessage;
+import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.bundle.BundleKeys;
+import com.nextcloud.talk.utils.database.outbox.OutgoingMessageStorageUtils;
+import com.nextcloud.talk.utils.database.user.UserUtils;
+import org.greenrobot.eventbus.EventBus;
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+import javax.inject.Inject;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the queued chat messages of an account. Messages of a room are sent one after another in the order
+ * they were written; if one of them can't be sent, the rest of that room waits for the next attempt while the
+ * other rooms go on.
+ * <p>
+ * There is a single worker per account that drains everything queued for it, so a newly queued message
+ * replaces a worker that is waiting to retry and goes out right away.
+ * <p>
+ * Sending a message is not idempotent: if it failed after the server may have taken it already, the newest
+ * messages of the room are checked for it before it is sent again.
+ */
+@AutoInjector(NextcloudTalkApplication.class)
+public class OutgoingMessagesWorker extends Worker {
+    public static final String TAG = "OutgoingMessagesWorker";
+    private static final long INITIAL_BACKOFF_SECONDS = 10;
+    // how far back a message that may have been taken already is looked for
+    private static final int SENT_COPY_LOOKUP_LIMIT = 100;
+    // the message is queued with the time of the device, which may be ahead of the server
+    private static final long SENT_COPY_CLOCK_SKEW_SECONDS = 600;
+
+    // a replaced worker may still be sending; its replacement waits for it so that nothing is sent twice
+    private static final Map<Long, Object> accountLocks = new HashMap<>();
+
+    @Inject
+    UserUtils userUtils;
+
+    @Inject
+    OutgoingMessageStorageUtils outgoingMessageStorageUtils;
+
+    // the shared client, so that a backlog goes out over the already open connection
+    @Inject
+    NcApi ncApi;
+
+    @Inject
+    EventBus eventBus;
+
+    public OutgoingMessagesWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    public static void enqueue(long internalUserId) {
+        Data data = new Data.Builder()
+                .putLong(BundleKeys.KEY_INTERNAL_USER_ID, internalUserId)
+                .build();
+
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+
+        OneTimeWorkRequest outgoingMessagesWork = new OneTimeWorkRequest.Builder(OutgoingMessagesWorker.class)
+                .setInputData(data)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, INITIAL_BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+
+        // replacing instead of appending, so that a failed or backing off worker never holds up new messages
+        WorkManager.getInstance().enqueueUniqueWork(TAG + internalUserId, ExistingWorkPolicy.REPLACE,
+                outgoingMessagesWork);
+    }
+
+    private static Object getAccountLock(long internalUserId) {
+        synchronized (accountLocks) {
+            Object accountLock = accountLocks.get(internalUserId);
+            if (accountLock == null) {
+                accountLock = new Object();
+                accountLocks.put(internalUserId, accountLock);
+            }
+            return accountLock;
+        }
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        NextcloudTalkApplication.getSharedApplication().getComponentApplication().inject(this);
+
+        long internalUserId = getInputData().getLong(BundleKeys.KEY_INTERNAL_USER_ID, -1);
+
+        synchronized (getAccountLock(internalUserId)) {
+            if (isStopped()) {
+                return Result.retry();
+            }
+
+            try {
+                return sendQueuedMessages(internalUserId);
+            } catch (Exception e) {
+                // anything unexpected only postpones the messages, a failed worker would never pick them up again
+                Log.e(TAG, "Failed to send queued chat messages", e);
+                return Result.retry();
+            }
+        }
+    }
+
+    private Result sendQueuedMessages(long internalUserId) {
+        UserEntity userEntity = userUtils.getUserWithInternalId(internalUserId);
+
+        if (userEntity == null) {
+            return Result.success();
+        }
+
+        String credentials = ApiUtils.getCredentials(userEntity.getUsername(), userEntity.getToken());
+        Set<String> blockedRoomTokens = new HashSet<>();
+        // messages of the room that a queued message was matched with, so that no two are matched with the same
+        Set<Integer> sentMessageIds = new HashSet<>();
+        boolean sentAny;
+
+        do {
+            sentAny = false;
+            List<OutgoingChatMessage> outgoingChatMessages =
+                    outgoingMessageStorageUtils.getMessagesForAccount(internalUserId);
+
+            for (OutgoingChatMessage outgoingChatMessage : outgoingChatMessages) {
+                if (isStopped()) {
+                    return Result.retry();
+                }
+
+                if (blockedRoomTokens.contains(outgoingChatMessage.getRoomToken())) {
+                    continue;
+                }
+
+                if (outgoingChatMessage.getDeliveryUncertain()) {
+                    ChatMessage sentCopy;
+                    try {
+                        sentCopy = findSentCopy(credentials, userEntity, outgoingChatMessage, sentMessageIds);
+                    } catch (Exception e) {
+                        Log.w(TAG, "Failed to look for a queued chat message among the sent ones");
+                        blockedRoomTokens.add(outgoingChatMessage.getRoomToken());
+                        continue;
+                    }
+
+                    if (sentCopy != null) {
+                        onMessageSent(internalUserId, outgoingChatMessage, sentCopy.getJsonMessageId(), sentMessageIds);
+                        sentAny = true;
+                        continue;
+                    }
+                }
+
+                int[] sentMessageId = new int[1];
+                Throwable throwable = ncApi.sendChatMessage(credentials,
+                        ApiUtils.getUrlForChat(userEntity.getBaseUrl(), outgoingChatMessage.getRoomToken()),
+                        outgoingChatMessage.getMessage(), outgoingChatMessage.getActorDisplayName())
+                        .doOnNext(chatOverallSingleMessage -> sentMessageId[0] = getMessageId(chatOverallSingleMessage))
+                        .ignoreElements()
+                        .blockingGet();
+
+                if (throwable == null || isSuccessful(throwable)) {
+                    onMessageSent(internalUserId, outgoingChatMessage, sentMessageId[0], sentMessageIds);
+                    sentAny = true;
+                } else if (isRefused(throwable)) {
+                    Log.w(TAG, "Server refused a queued chat message: " + ((HttpException) throwable).code());
+                    outgoingMessageStorageUtils.deleteMessage(outgoingChatMessage);
+                    eventBus.post(new OutgoingMessageEvent(internalUserId, outgoingChatMessage.getRoomToken(),
+                            outgoingChatMessage.getId(), false, 0));
+                } else {
+                    if (isDeliveryUncertain(throwable) && !outgoingChatMessage.getDeliveryUncertain()) {
+                        outgoingMessageStorageUtils.markDeliveryUncertain(outgoingChatMessage);
+                    }
+                    blockedRoomTokens.add(outgoingChatMessage.getRoomToken());
+                }
+            }
+        } while (sentAny);
+
+        return blockedRoomTokens.isEmpty() ? Result.success() : Result.retry();
+    }
+
+    private void onMessageSent(long internalUserId, OutgoingChatMessage outgoingChatMessage, int sentMessageId,
+                               Set<Integer> sentMessageIds) {
+        outgoingMessageStorageUtils.deleteMessage(outgoingChatMessage);
+        sentMessageIds.add(sentMessageId);
+        eventBus.post(new OutgoingMessageEvent(internalUserId, outgoingChatMessage.getRoomToken(),
+                outgoingChatMessage.getId(), true, sentMessageId));
+    }
+
+    /**
+     * Looks for the message among the newest ones of its room, oldest first, in case the server took it
+     * while sending it failed.
+     */
+    @Nullable
+    private ChatMessage findSentCopy(String credentials, UserEntity userEntity,
+                                     OutgoingChatMessage outgoingChatMessage, Set<Integer> sentMessageIds) {
+        Map<String, Integer> fieldMap = new HashMap<>();
+        fieldMap.put("lookIntoFuture", 0);
+        fieldMap.put("limit", SENT_COPY_LOOKUP_LIMIT);
+
+        Response<ChatOverall> response = ncApi.pullChatMessages(credentials,
+                ApiUtils.getUrlForChat(userEntity.getBaseUrl(), outgoingChatMessage.getRoomToken()), fieldMap)
+                .blockingFirst();
+
+        if (response.code() == 304) {
+            return null;
+        } else if (response.code() != 200 || response.body() == null) {
+            throw new HttpException(response);
+        }
+
+        List<ChatMessage> chatMessages = response.body().getOcs().getData();
+        for (int i = chatMessages.size() - 1; i >= 0; i--) {
+            ChatMessage chatMessage = chatMessages.get(i);
+            if ("users".equals(chatMessage.getActorType()) &&
+                    userEntity.getUserId().equals(chatMessage.getActorId()) &&
+                    chatMessage.getTimestamp() >= outgoingChatMessage.getTimestamp() - SENT_COPY_CLOCK_SKEW_SECONDS &&
+                    !sentMessageIds.contains(chatMessage.getJsonMessageId()) &&
+                    isSameText(chatMessage, outgoingChatMessage.getMessage())) {
+                return chatMessage;
+            }
+        }
+
+        return null;
+    }
+
+    // the server hands mentions back as placeholders, which are turned back into what was written
+    private boolean isSameText(ChatMessage chatMessage, String message) {
+        String text = chatMessage.getMessage();
+        if (text == null) {
+            return false;
+        }
+
+        if (chatMessage.getMessageParameters() != null) {
+            for (Map.Entry<String, HashMap<String, String>> parameter :
+                    chatMessage.getMessageParameters().entrySet()) {
+                if ("user".equals(parameter.getValue().get("type"))) {
+                    text = text.replace("{" + parameter.getKey() + "}", "@" + parameter.getValue().get("id"));
+                }
+            }
+        }
+
+        return text.trim().equals(message.trim());
+    }
+
+    private int getMessageId(ChatOverallSingleMessage chatOverallSingleMessage) {
+        if (chatOverallSingleMessage.getOcs() == null || chatOverallSingleMessage.getOcs().getData() == null) {
+            return 0;
+        }
+
+        return chatOverallSingleMessage.getOcs().getData().getJsonMessageId();
+    }
+
+    private boolean isSuccessful(Throwable throwable) {
+        return throwable instanceof HttpException && Integer.toString(((HttpException) throwable).code())
+                .startsWith("2");
+    }
+
+    // the server may have taken the message unless no connection could be made or it answered that it didn't
+    private boolean isDeliveryUncertain(Throwable throwable) {
+        if (throwable instanceof HttpException) {
+            int code = ((HttpException) throwable).code();
+            return code == 408 || code >= 500;
+        }
+
+        return !(throwable instanceof ConnectException || throwable instanceof UnknownHostException ||
+                throwable instanceof NoRouteToHostException || throwable instanceof CircuitBreakerOpenException);
+    }
+
+    // client errors will not go away by trying again, except for timeouts and rate limiting
+    private boolean isRefused(Throwable throwable) {
+        if (!(throwable instanceof HttpException)) {
+            return false;
+        }
+
+        int code = ((HttpException) throwable).code();
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
+}
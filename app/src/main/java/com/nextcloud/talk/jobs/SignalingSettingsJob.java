@@ -27,7 +27,7 @@ import androidx.annotation.NonNull;
 import androidx.work.*;
 import autodagger.AutoInjector;
 import com.bluelinelabs.logansquare.LoganSquare;
-import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.NcApiRegistry;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
 import com.nextcloud.talk.events.EventStatus;
 import com.nextcloud.talk.models.ExternalSignalingServer;
@@ -53,7 +53,7 @@ public class SignalingSettingsJob extends Worker {
     UserUtils userUtils;
 
     @Inject
-    NcApi ncApi;
+    NcApiRegistry ncApiRegistry;
 
     @Inject
     EventBus eventBus;
@@ -82,7 +82,7 @@ public class SignalingSettingsJob extends Worker {
         for (int i = 0; i < userEntityList.size(); i++) {
             userEntity = userEntityList.get(i);
             UserEntity finalUserEntity = userEntity;
-            ncApi.getSignalingSettings(ApiUtils.getCredentials(userEntity.getUsername(), userEntity.getToken()),
+            ncApiRegistry.getNcApi(userEntity.getId()).getSignalingSettings(ApiUtils.getCredentials(userEntity.getUsername(), userEntity.getToken()),
                     ApiUtils.getUrlForSignalingSettings(userEntity.getBaseUrl()))
                     .blockingSubscribe(new Observer<SignalingSettingsOverall>() {
                         @Override
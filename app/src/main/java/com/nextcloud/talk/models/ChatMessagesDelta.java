@@ -0,0 +1,43 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.models;
+
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class ChatMessagesDelta {
+    private String roomToken;
+    private List<ChatMessage> chatMessages;
+    private int lastKnownMessageId;
+    // messages between the ones known before and these were skipped, they are left to history paging
+    private boolean afterGap;
+
+    public ChatMessagesDelta(String roomToken, List<ChatMessage> chatMessages, int lastKnownMessageId,
+                             boolean afterGap) {
+        this.roomToken = roomToken;
+        this.chatMessages = chatMessages;
+        this.lastKnownMessageId = lastKnownMessageId;
+        this.afterGap = afterGap;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.models;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class RenderedRichMessage {
+    private String text;
+    private List<MentionRange> mentionRanges;
+
+    public RenderedRichMessage(String text, List<MentionRange> mentionRanges) {
+        this.text = text;
+        this.mentionRanges = mentionRanges;
+    }
+
+    @Data
+    public static class MentionRange {
+        private int start;
+        private int end;
+        private String id;
+        private String type;
+
+        public MentionRange(int start, int end, String id, String type) {
+            this.start = start;
+            this.end = end;
+            this.id = id;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.models.database;
+
+import android.os.Parcelable;
+import io.requery.Entity;
+import io.requery.Generated;
+import io.requery.Index;
+import io.requery.Key;
+import io.requery.Persistable;
+
+import java.io.Serializable;
+
+@Entity
+public interface DirectoryContact extends Parcelable, Persistable, Serializable {
+    @Key
+    @Generated
+    long getId();
+
+    @Index("directory_contact_account_index")
+    long getAccountIdentifier();
+
+    String getUserId();
+
+    String getDisplayName();
+
+    // "users" or "groups", as in the autocomplete response
+    String getSource();
+
+    // when the last complete sync of the account saw the contact, in milliseconds
+    long getSyncedAt();
+}
@@ -0,0 +1,52 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.models.database;
+
+import android.os.Parcelable;
+import io.requery.Entity;
+import io.requery.Generated;
+import io.requery.Index;
+import io.requery.Key;
+import io.requery.Persistable;
+
+import java.io.Serializable;
+
+@Entity
+public interface OutgoingChatMessage extends Parcelable, Persistable, Serializable {
+    // also defines the order in which messages of a room are sent
+    @Key
+    @Generated
+    long getId();
+
+    @Index("outgoing_chat_message_account_index")
+    long getAccountIdentifier();
+
+    String getRoomToken();
+
+    String getMessage();
+
+    String getActorDisplayName();
+
+    long getTimestamp();
+
+    // sending it failed in a way that doesn't tell whether the server took it, so the room is checked first
+    boolean getDeliveryUncertain();
+}
@@ -26,6 +26,8 @@ import com.bluelinelabs.logansquare.annotation.JsonIgnore;
 import com.bluelinelabs.logansquare.annotation.JsonObject;
 import com.nextcloud.talk.R;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.chat.RichObjectTemplateRenderer;
+import com.nextcloud.talk.models.RenderedRichMessage;
 import com.nextcloud.talk.models.json.converters.EnumSystemMessageTypeConverter;
 import com.nextcloud.talk.utils.ApiUtils;
 import com.nextcloud.talk.utils.TextMatchers;
@@ -49,7 +51,26 @@ public class ChatMessage implements IMessage, MessageContentType, MessageContent
     public Map<String, String> selectedIndividualHashMap;
     @JsonIgnore
     public boolean isLinkPreviewAllowed;
-    List<MessageType> messageTypesToIgnore = Arrays.asList(MessageType.REGULAR_TEXT_MESSAGE,
+    // derived from the fields below, computed once by preprocess() or on first access
+    @JsonIgnore
+    transient MessageType cachedMessageType;
+    @JsonIgnore
+    transient RenderedRichMessage cachedRenderedMessage;
+    @JsonIgnore
+    transient String cachedImageUrl;
+    @JsonIgnore
+    transient boolean imageUrlResolved;
+    @JsonIgnore
+    transient Boolean cachedSingleEmoticonOnly;
+    // id in the outgoing message queue while the message is not yet known to the server, 0 otherwise
+    @JsonIgnore
+    long pendingMessageId;
+    // whether the queued message went out, and the id the server gave it if it told (0 otherwise)
+    @JsonIgnore
+    boolean pendingMessageSent;
+    @JsonIgnore
+    int sentMessageId;
+    private static final List<MessageType> messageTypesToIgnore = Arrays.asList(MessageType.REGULAR_TEXT_MESSAGE,
             MessageType.SYSTEM_MESSAGE, MessageType.SINGLE_LINK_VIDEO_MESSAGE,
             MessageType.SINGLE_LINK_AUDIO_MESSAGE, MessageType.SINGLE_LINK_MESSAGE);
     String baseUrl;
@@ -88,9 +109,30 @@ public class ChatMessage implements IMessage, MessageContentType, MessageContent
         return false;
     }
 
+    /**
+     * Computes everything the view holders need from this message so that binding doesn't have to.
+     * Meant to be called off the main thread once base url, active user and link preview settings are set.
+     */
+    public void preprocess() {
+        getMessageType();
+        getText();
+        getImageUrl();
+        isSingleEmoticonOnly();
+    }
+
     @Nullable
     @Override
     public String getImageUrl() {
+        if (!imageUrlResolved) {
+            cachedImageUrl = resolveImageUrl();
+            imageUrlResolved = true;
+        }
+
+        return cachedImageUrl;
+    }
+
+    @Nullable
+    private String resolveImageUrl() {
         if (messageParameters != null && messageParameters.size() > 0) {
             for (String key : messageParameters.keySet()) {
                 Map<String, String> individualHashMap = messageParameters.get(key);
@@ -111,15 +153,31 @@ public class ChatMessage implements IMessage, MessageContentType, MessageContent
     }
 
     public MessageType getMessageType() {
-        if (!TextUtils.isEmpty(getSystemMessage())) {
-            return MessageType.SYSTEM_MESSAGE;
+        if (cachedMessageType == null) {
+            if (!TextUtils.isEmpty(getSystemMessage())) {
+                cachedMessageType = MessageType.SYSTEM_MESSAGE;
+            } else if (hasFileAttachment()) {
+                cachedMessageType = MessageType.SINGLE_NC_ATTACHMENT_MESSAGE;
+            } else {
+                cachedMessageType = TextMatchers.getMessageTypeFromString(getText());
+            }
         }
 
-        if (hasFileAttachment()) {
-            return MessageType.SINGLE_NC_ATTACHMENT_MESSAGE;
+        return cachedMessageType;
+    }
+
+    public boolean isSingleEmoticonOnly() {
+        if (cachedSingleEmoticonOnly == null) {
+            cachedSingleEmoticonOnly = (messageParameters == null || messageParameters.size() == 0) &&
+                    TextMatchers.isMessageWithSingleEmoticonOnly(getText());
         }
 
-        return TextMatchers.getMessageTypeFromString(getText());
+        return cachedSingleEmoticonOnly;
+    }
+
+    public void setLinkPreviewAllowed(boolean linkPreviewAllowed) {
+        isLinkPreviewAllowed = linkPreviewAllowed;
+        imageUrlResolved = false;
     }
 
     public Map<String, String> getSelectedIndividualHashMap() {
@@ -136,16 +194,37 @@ public class ChatMessage implements IMessage, MessageContentType, MessageContent
 
     public void setBaseUrl(String baseUrl) {
         this.baseUrl = baseUrl;
+        imageUrlResolved = false;
     }
 
     @Override
     public String getId() {
+        if (isPending()) {
+            return "pending-" + pendingMessageId;
+        }
+
         return Integer.toString(jsonMessageId);
     }
 
+    public boolean isPending() {
+        return pendingMessageId != 0;
+    }
+
     @Override
     public String getText() {
-        return ChatUtils.getParsedMessage(getMessage(), getMessageParameters());
+        return getRenderedMessage().getText();
+    }
+
+    public List<RenderedRichMessage.MentionRange> getMentionRanges() {
+        return getRenderedMessage().getMentionRanges();
+    }
+
+    private RenderedRichMessage getRenderedMessage() {
+        if (cachedRenderedMessage == null) {
+            cachedRenderedMessage = RichObjectTemplateRenderer.render(getMessage(), getMessageParameters());
+        }
+
+        return cachedRenderedMessage;
     }
 
     public String getLastMessageDisplayText() {
@@ -20,24 +20,13 @@
 
 package com.nextcloud.talk.models.json.chat;
 
+import com.nextcloud.talk.chat.RichObjectTemplateRenderer;
+
 import java.util.HashMap;
 
 public class ChatUtils {
 
     public static String getParsedMessage(String message, HashMap<String, HashMap<String, String>> messageParameters) {
-        if (messageParameters != null && messageParameters.size() > 0) {
-            for (String key : messageParameters.keySet()) {
-                HashMap<String, String> individualHashMap = messageParameters.get(key);
-                if (individualHashMap.get("type").equals("user") || individualHashMap.get("type").equals("guest")) {
-                    message = message.replaceAll("\\{" + key + "\\}", "@" +
-                            messageParameters.get(key).get("name"));
-                } else if (individualHashMap.get("type").equals("file")) {
-                    message = message.replaceAll("\\{" + key + "\\}", messageParameters.get(key).get("name"));
-                }
-            }
-        }
-
-
-        return message;
+        return RichObjectTemplateRenderer.render(message, messageParameters).getText();
     }
 }
@@ -21,32 +21,39 @@
 package com.nextcloud.talk.presenters;
 
 import android.content.Context;
+import android.util.Log;
 import android.view.View;
 import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 import autodagger.AutoInjector;
 import com.nextcloud.talk.adapters.items.MentionAutocompleteItem;
 import com.nextcloud.talk.api.NcApi;
+import com.nextcloud.talk.api.RetryPolicy;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.chat.RoomRoster;
+import com.nextcloud.talk.chat.RoomRosterCache;
 import com.nextcloud.talk.models.database.UserEntity;
 import com.nextcloud.talk.models.json.mention.Mention;
-import com.nextcloud.talk.models.json.mention.MentionOverall;
 import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.database.user.UserUtils;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
 import com.otaliastudios.autocomplete.RecyclerViewPresenter;
 import eu.davidea.flexibleadapter.FlexibleAdapter;
 import eu.davidea.flexibleadapter.items.AbstractFlexibleItem;
-import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 @AutoInjector(NextcloudTalkApplication.class)
 public class MentionAutocompletePresenter extends RecyclerViewPresenter<Mention> implements FlexibleAdapter.OnItemClickListener {
+    private static final String TAG = "MentionAutocompletePresenter";
+    private static final int MAX_SUGGESTIONS = 5;
+
     @Inject
     NcApi ncApi;
     @Inject
@@ -56,6 +63,8 @@ public class MentionAutocompletePresenter extends RecyclerViewPresenter<Mention>
     private Context context;
 
     private String roomToken;
+    private Disposable queryDisposable;
+    private Disposable rosterDisposable;
 
     private List<AbstractFlexibleItem> abstractFlexibleItemList = new ArrayList<>();
 
@@ -72,6 +81,10 @@ public class MentionAutocompletePresenter extends RecyclerViewPresenter<Mention>
         this.context = context;
         NextcloudTalkApplication.getSharedApplication().getComponentApplication().inject(this);
         currentUser = userUtils.getCurrentUser();
+
+        if (RoomRosterCache.getInstance().getRoster(currentUser.getId(), roomToken) == null) {
+            loadRoomRoster();
+        }
     }
 
     @Override
@@ -81,6 +94,21 @@ public class MentionAutocompletePresenter extends RecyclerViewPresenter<Mention>
         return adapter;
     }
 
+    // the participants of the room, so that most mentions can be suggested without asking the server
+    private void loadRoomRoster() {
+        if (roomToken == null || (rosterDisposable != null && !rosterDisposable.isDisposed())) {
+            return;
+        }
+
+        long accountIdentifier = currentUser.getId();
+        rosterDisposable = ncApi.getPeersForCall(ApiUtils.getCredentials(currentUser.getUsername(),
+                currentUser.getToken()), ApiUtils.getUrlForParticipants(currentUser.getBaseUrl(), roomToken))
+                .subscribeOn(MagicSchedulers.network())
+                .subscribe(participantsOverall -> RoomRosterCache.getInstance().putParticipants(accountIdentifier,
+                        roomToken, participantsOverall.getOcs().getData()),
+                        throwable -> Log.w(TAG, "Failed to fetch the participants of the room"));
+    }
+
     @Override
     protected void onQuery(@Nullable CharSequence query) {
 
@@ -92,49 +120,58 @@ public class MentionAutocompletePresenter extends RecyclerViewPresenter<Mention>
         }
 
         adapter.setFilter(queryString);
-        ncApi.getMentionAutocompleteSuggestions(ApiUtils.getCredentials(currentUser.getUsername(), currentUser
+
+        // a newer query makes the answer to an older one useless
+        if (queryDisposable != null && !queryDisposable.isDisposed()) {
+            queryDisposable.dispose();
+        }
+
+        RoomRoster roomRoster = roomToken != null ?
+                RoomRosterCache.getInstance().getRoster(currentUser.getId(), roomToken) : null;
+        if (roomRoster == null) {
+            loadRoomRoster();
+        } else if (queryString.isEmpty() || !"all".startsWith(queryString.toLowerCase(Locale.ROOT))) {
+            // only the server knows whether the room itself can be mentioned with "all"
+            List<Mention> mentionsList = roomRoster.search(queryString, MAX_SUGGESTIONS, currentUser.getUserId());
+            if (!mentionsList.isEmpty()) {
+                ApplicationWideMetricsHolder.getInstance().incrementCounter("mentions.roster_hits", 1);
+                showMentions(mentionsList);
+                return;
+            }
+        }
+
+        ApplicationWideMetricsHolder.getInstance().incrementCounter("mentions.server_queries", 1);
+        long accountIdentifier = currentUser.getId();
+        queryDisposable = ncApi.getMentionAutocompleteSuggestions(ApiUtils.getCredentials(currentUser.getUsername(), currentUser
                         .getToken()), ApiUtils.getUrlForMentionSuggestions(currentUser.getBaseUrl(), roomToken),
-                queryString, 5)
-                .subscribeOn(Schedulers.newThread())
+                queryString, MAX_SUGGESTIONS)
+                .subscribeOn(MagicSchedulers.network())
                 .observeOn(AndroidSchedulers.mainThread())
-                .retry(3)
-                .subscribe(new Observer<MentionOverall>() {
-                    @Override
-                    public void onSubscribe(Disposable d) {
-                    }
-
-                    @Override
-                    public void onNext(MentionOverall mentionOverall) {
-                        List<Mention> mentionsList = mentionOverall.getOcs().getData();
-
-                        if (mentionsList.size() == 0) {
-                            adapter.clear();
-                        } else {
-                            List<AbstractFlexibleItem> internalAbstractFlexibleItemList = new ArrayList<>();
-                            for (Mention mention : mentionsList) {
-                                internalAbstractFlexibleItemList.add(
-                                        new MentionAutocompleteItem(mention.getId(), mention.getLabel(),
-                                                currentUser));
-                            }
-
-                            if (adapter.getItemCount() != 0) {
-                                adapter.clear();
-                            }
-
-                            adapter.updateDataSet(internalAbstractFlexibleItemList);
-                        }
-                    }
-
-                    @Override
-                    public void onError(Throwable e) {
-                        adapter.clear();
-                    }
-
-                    @Override
-                    public void onComplete() {
-
-                    }
-                });
+                .compose(RetryPolicy.retry(3))
+                .subscribe(mentionOverall -> {
+                    List<Mention> mentionsList = mentionOverall.getOcs().getData();
+                    RoomRosterCache.getInstance().addMentions(accountIdentifier, roomToken, mentionsList);
+                    showMentions(mentionsList);
+                }, throwable -> adapter.clear());
+    }
+
+    private void showMentions(List<Mention> mentionsList) {
+        if (mentionsList.size() == 0) {
+            adapter.clear();
+        } else {
+            List<AbstractFlexibleItem> internalAbstractFlexibleItemList = new ArrayList<>();
+            for (Mention mention : mentionsList) {
+                internalAbstractFlexibleItemList.add(
+                        new MentionAutocompleteItem(mention.getId(), mention.getLabel(),
+                                currentUser));
+            }
+
+            if (adapter.getItemCount() != 0) {
+                adapter.clear();
+            }
+
+            adapter.updateDataSet(internalAbstractFlexibleItemList);
+        }
     }
 
 
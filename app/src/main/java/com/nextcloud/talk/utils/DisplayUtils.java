@@ -213,19 +213,25 @@ public class DisplayUtils {
                 .matcher(text);
 
 
-        int textSize = NextcloudTalkApplication.getSharedApplication().getResources().getDimensionPixelSize(R.dimen
-                .chat_text_size);
         while (m.find()) {
             int start = text.indexOf(m.group());
             int end = text.indexOf(m.group()) + m.group().length();
-            spannable.setSpan(new ForegroundColorSpan(color), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            spannable.setSpan(new StyleSpan(Typeface.BOLD), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-            spannable.setSpan(new AbsoluteSizeSpan(textSize), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+            colorRange(spannable, start, end, color);
         }
 
         return spannable;
     }
 
+    public static Spannable colorRange(Spannable spannable, int start, int end, @ColorInt int color) {
+        int textSize = NextcloudTalkApplication.getSharedApplication().getResources().getDimensionPixelSize(R.dimen
+                .chat_text_size);
+        spannable.setSpan(new ForegroundColorSpan(color), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        spannable.setSpan(new StyleSpan(Typeface.BOLD), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        spannable.setSpan(new AbsoluteSizeSpan(textSize), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+
+        return spannable;
+    }
+
     public static Drawable getMessageSelector(@ColorInt int normalColor, @ColorInt int selectedColor,
                                               @ColorInt int pressedColor, @DrawableRes int shape) {
 
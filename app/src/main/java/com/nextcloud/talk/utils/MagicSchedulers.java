@@ -0,0 +1,186 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.utils;
+
+import androidx.annotation.NonNull;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The schedulers to run work off the main thread with, instead of a new thread per task. Every kind
+ * of work gets a bounded pool of named threads, and the number of running and waiting tasks of each
+ * pool is kept as the "schedulers.&lt;name&gt;.active" and "schedulers.&lt;name&gt;.queued" gauges.
+ * <p>
+ * The long poll pool is the exception: a waiting long poll would stall its room, so it is sized by the
+ * long polls that are running, see {@link #trackLongPoll()}.
+ */
+public class MagicSchedulers {
+    private static final int NETWORK_THREADS = 16;
+    // each long poll holds its thread for as long as the server keeps the request open, so there is always
+    // a thread for every running one plus a few to spare for the one that is started next
+    private static final int MIN_LONG_POLL_THREADS = 4;
+    private static final int SPARE_LONG_POLL_THREADS = 2;
+    // processes what the chat sync fetched, in the order it arrived
+    private static final int CHAT_SYNC_THREADS = 2;
+    // SQLCipher serializes writes anyway, the second thread lets reads pass a running write
+    private static final int DISK_THREADS = 2;
+    private static final int COMPUTE_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long IDLE_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private static final Scheduler networkScheduler = createScheduler("network", NETWORK_THREADS);
+    private static final GaugedThreadPoolExecutor longPollExecutor =
+            new GaugedThreadPoolExecutor("long_poll", MIN_LONG_POLL_THREADS);
+    private static final Scheduler longPollScheduler = Schedulers.from(longPollExecutor);
+    private static final Scheduler chatSyncScheduler = createScheduler("chat_sync", CHAT_SYNC_THREADS);
+    private static final Scheduler diskScheduler = createScheduler("disk", DISK_THREADS);
+    private static final Scheduler computeScheduler = createScheduler("compute", COMPUTE_THREADS);
+
+    private static int runningLongPolls;
+
+    /**
+     * For requests to the server.
+     */
+    public static Scheduler network() {
+        return networkScheduler;
+    }
+
+    /**
+     * For requests the server keeps open until there is something new, so that they never take the
+     * threads of interactive requests.
+     */
+    public static Scheduler longPoll() {
+        return longPollScheduler;
+    }
+
+    /**
+     * To be composed into a stream that keeps long polling, e.g. for a room, for as long as it is subscribed to;
+     * the long poll pool grows by one thread while it runs.
+     */
+    public static <T> ObservableTransformer<T, T> trackLongPoll() {
+        return upstream -> upstream
+                .doOnSubscribe(disposable -> onLongPollsChanged(1))
+                .doFinally(() -> onLongPollsChanged(-1));
+    }
+
+    private static synchronized void onLongPollsChanged(int delta) {
+        runningLongPolls += delta;
+        ApplicationWideMetricsHolder.getInstance().setGauge("schedulers.long_poll.polls", runningLongPolls);
+
+        int threads = Math.max(MIN_LONG_POLL_THREADS, runningLongPolls + SPARE_LONG_POLL_THREADS);
+        // the maximum may never drop below the core size, so the order depends on the direction
+        if (threads > longPollExecutor.getMaximumPoolSize()) {
+            longPollExecutor.setMaximumPoolSize(threads);
+            longPollExecutor.setCorePoolSize(threads);
+        } else if (threads < longPollExecutor.getMaximumPoolSize()) {
+            longPollExecutor.setCorePoolSize(threads);
+            longPollExecutor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * For processing the messages of the chat sync.
+     */
+    public static Scheduler chatSync() {
+        return chatSyncScheduler;
+    }
+
+    /**
+     * For database and file access.
+     */
+    public static Scheduler disk() {
+        return diskScheduler;
+    }
+
+    /**
+     * For CPU bound work that should stay off the main thread.
+     */
+    public static Scheduler compute() {
+        return computeScheduler;
+    }
+
+    private static Scheduler createScheduler(String name, int threads) {
+        return Schedulers.from(new GaugedThreadPoolExecutor(name, threads));
+    }
+
+    private static class GaugedThreadPoolExecutor extends ThreadPoolExecutor {
+        private final String activeGauge;
+        private final String queuedGauge;
+
+        GaugedThreadPoolExecutor(String name, int threads) {
+            // with an unbounded queue the pool never grows past its core size, so core and maximum are the same
+            super(threads, threads, IDLE_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new NamedThreadFactory(name));
+            allowCoreThreadTimeOut(true);
+            activeGauge = "schedulers." + name + ".active";
+            queuedGauge = "schedulers." + name + ".queued";
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            super.execute(command);
+            updateGauges(0);
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            super.beforeExecute(t, r);
+            updateGauges(0);
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            super.afterExecute(r, t);
+            // the finished task still counts as active until this returns
+            updateGauges(1);
+        }
+
+        private void updateGauges(int finishingTasks) {
+            ApplicationWideMetricsHolder metricsHolder = ApplicationWideMetricsHolder.getInstance();
+            metricsHolder.setGauge(activeGauge, getActiveCount() - finishingTasks);
+            metricsHolder.setGauge(queuedGauge, getQueue().size());
+        }
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(String name) {
+            namePrefix = "nc-" + name + "-";
+        }
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+            // like the threads of the Rx schedulers, these never keep the process alive
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
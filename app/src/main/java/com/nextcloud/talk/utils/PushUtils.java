@@ -38,7 +38,6 @@ import com.nextcloud.talk.utils.database.user.UserUtils;
 import com.nextcloud.talk.utils.preferences.AppPreferences;
 import io.reactivex.Observer;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 import org.greenrobot.eventbus.EventBus;
 
 import javax.inject.Inject;
@@ -269,7 +268,7 @@ public class PushUtils {
 
                                             ncApi.registerDeviceForNotificationsWithProxy(finalCredentials,
                                                     ApiUtils.getUrlPushProxy(), proxyMap)
-                                                    .subscribeOn(Schedulers.newThread())
+                                                    .subscribeOn(MagicSchedulers.network())
                                                     .subscribe(new Observer<Void>() {
                                                         @Override
                                                         public void onSubscribe(Disposable d) {
@@ -42,6 +42,15 @@ public final class TextMatchers {
 
     private static final String TAG = "TextMatchers";
 
+    private static final Pattern TENOR_GIF_PATTERN = Pattern.compile("https://media.*\\.tenor\\.com.*\\.gif.*",
+            Pattern.CASE_INSENSITIVE);
+
+    static {
+        MimeUtil.registerMimeDetector(MagicMimeMimeDetector.class.getName());
+        MimeUtil.registerMimeDetector(ExtensionMimeDetector.class.getName());
+        MimeUtil.registerMimeDetector(OpendesktopMimeDetector.class.getName());
+    }
+
     public static ChatMessage.MessageType getMessageTypeFromString(@NonNull final String text) {
         List<String> links = new ArrayList<>();
         Matcher m = Patterns.WEB_URL.matcher(text);
@@ -54,18 +63,12 @@ public final class TextMatchers {
             String specialLink = links.get(0);
             if (specialLink.startsWith("https://media.giphy.com/") && specialLink.endsWith(".gif")) {
                 return ChatMessage.MessageType.SINGLE_LINK_GIPHY_MESSAGE;
-            } else if (specialLink.contains("tenor.com/") &&
-                    Pattern.compile("https://media.*\\.tenor\\.com.*\\.gif.*",
-                            Pattern.CASE_INSENSITIVE).matcher(specialLink).matches()) {
+            } else if (specialLink.contains("tenor.com/") && TENOR_GIF_PATTERN.matcher(specialLink).matches()) {
                 return ChatMessage.MessageType.SINGLE_LINK_TENOR_MESSAGE;
             } else {
                 if (specialLink.contains("?")) {
                     specialLink = specialLink.substring(0, specialLink.indexOf("?"));
                 }
-                MimeUtil.registerMimeDetector(MagicMimeMimeDetector.class.getName());
-                MimeUtil.registerMimeDetector(ExtensionMimeDetector.class.getName());
-                MimeUtil.registerMimeDetector(OpendesktopMimeDetector.class.getName());
-
                 String mimeType = MimeUtil.getMostSpecificMimeType(MimeUtil.getMimeTypes(specialLink)).toString();
                 if (mimeType.startsWith("image/")) {
                     if (mimeType.equalsIgnoreCase("image/gif")) {
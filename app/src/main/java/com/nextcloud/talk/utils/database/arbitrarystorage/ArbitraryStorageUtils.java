@@ -22,8 +22,8 @@ package com.nextcloud.talk.utils.database.arbitrarystorage;
 import androidx.annotation.Nullable;
 import com.nextcloud.talk.models.database.ArbitraryStorage;
 import com.nextcloud.talk.models.database.ArbitraryStorageEntity;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import io.reactivex.Observable;
-import io.reactivex.schedulers.Schedulers;
 import io.requery.Persistable;
 import io.requery.query.Result;
 import io.requery.reactivex.ReactiveEntityStore;
@@ -46,7 +46,7 @@ public class ArbitraryStorageUtils {
 
         dataStore.upsert(arbitraryStorageEntity)
                 .toObservable()
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.disk())
                 .subscribe();
     }
 
@@ -63,6 +63,6 @@ public class ArbitraryStorageUtils {
         ReactiveScalar<Integer> deleteResult = dataStore.delete(ArbitraryStorage.class).where(ArbitraryStorageEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)).get();
 
         return deleteResult.single().toObservable()
-                .subscribeOn(Schedulers.newThread());
+                .subscribeOn(MagicSchedulers.disk());
     }
 }
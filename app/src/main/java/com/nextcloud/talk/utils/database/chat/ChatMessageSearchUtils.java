@@ -0,0 +1,211 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.utils.database.chat;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import io.reactivex.Observable;
+import io.requery.android.sqlcipher.SqlCipherDatabaseSource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full-text index over the cached chat messages, kept in an FTS4 table next to the message cache in the
+ * encrypted database. The table is not a requery entity, so it is created and queried with plain SQL.
+ * <p>
+ * The index is written by {@link ChatMessageStorageUtils} only, within the transaction that changes the
+ * cached messages, so that it always covers the same messages as the cache.
+ */
+public class ChatMessageSearchUtils {
+    // the docid of a message is made of the account and the message id, which is unique per server
+    private static final int ACCOUNT_IDENTIFIER_SHIFT = 40;
+
+    private SqlCipherDatabaseSource databaseSource;
+    private volatile boolean isTableCreated;
+
+    ChatMessageSearchUtils(SqlCipherDatabaseSource databaseSource) {
+        this.databaseSource = databaseSource;
+    }
+
+    /**
+     * Returns the ids of up to {@code limit} messages of a room that contain all words of the query
+     * (as prefixes), newest first.
+     */
+    public Observable<List<Integer>> searchMessageIds(long accountIdentifier, String roomToken, String query,
+                                                      int limit) {
+        return Observable.fromCallable(() -> findMessageIds(accountIdentifier, roomToken, query, limit))
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    public Observable deleteAllEntriesForAccountIdentifier(long accountIdentifier) {
+        return Observable.fromCallable(() -> {
+            try (Connection connection = databaseSource.getConnection()) {
+                createTableIfNeeded(connection);
+
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "DELETE FROM chat_message_search WHERE docid >= ? AND docid < ?")) {
+                    statement.setLong(1, accountIdentifier << ACCOUNT_IDENTIFIER_SHIFT);
+                    statement.setLong(2, (accountIdentifier + 1) << ACCOUNT_IDENTIFIER_SHIFT);
+                    return statement.executeUpdate();
+                }
+            }
+        }).subscribeOn(MagicSchedulers.disk());
+    }
+
+    // not synchronized, as it may run within a transaction of the message cache; creating the table twice is harmless
+    private void createTableIfNeeded(Connection connection) throws SQLException {
+        if (isTableCreated) {
+            return;
+        }
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE VIRTUAL TABLE IF NOT EXISTS chat_message_search USING fts4(" +
+                    "body, scope, message_id, notindexed=message_id, tokenize=unicode61)");
+        }
+
+        isTableCreated = true;
+    }
+
+    /**
+     * Indexes the given messages of a room. Meant to be called within the transaction that stores them.
+     */
+    void writeMessages(long accountIdentifier, String roomToken, List<ChatMessage> chatMessages) throws SQLException {
+        try (Connection connection = databaseSource.getConnection()) {
+            createTableIfNeeded(connection);
+
+            try (PreparedStatement deleteStatement = connection.prepareStatement(
+                    "DELETE FROM chat_message_search WHERE docid = ?");
+                 PreparedStatement insertStatement = connection.prepareStatement(
+                         "INSERT INTO chat_message_search(docid, body, scope, message_id) VALUES (?, ?, ?, ?)")) {
+                for (ChatMessage chatMessage : chatMessages) {
+                    if (!TextUtils.isEmpty(chatMessage.getSystemMessage())) {
+                        continue;
+                    }
+
+                    long docId = (accountIdentifier << ACCOUNT_IDENTIFIER_SHIFT) + chatMessage.getJsonMessageId();
+
+                    deleteStatement.setLong(1, docId);
+                    deleteStatement.executeUpdate();
+
+                    insertStatement.setLong(1, docId);
+                    insertStatement.setString(2, chatMessage.getText() + " " + chatMessage.getActorDisplayName());
+                    insertStatement.setString(3, getScope(accountIdentifier, roomToken));
+                    insertStatement.setInt(4, chatMessage.getJsonMessageId());
+                    insertStatement.executeUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the messages of a room older than {@code messageId} from the index. Meant to be called within the
+     * transaction that drops them from the cache.
+     *
+     * @return the number of messages dropped
+     */
+    int deleteMessagesOlderThan(long accountIdentifier, String roomToken, int messageId) throws SQLException {
+        try (Connection connection = databaseSource.getConnection()) {
+            createTableIfNeeded(connection);
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "DELETE FROM chat_message_search WHERE docid >= ? AND docid < ? AND chat_message_search MATCH ?")) {
+                statement.setLong(1, accountIdentifier << ACCOUNT_IDENTIFIER_SHIFT);
+                statement.setLong(2, (accountIdentifier << ACCOUNT_IDENTIFIER_SHIFT) + messageId);
+                statement.setString(3, "scope:" + getScope(accountIdentifier, roomToken));
+                return statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Drops all messages of a room from the index. Meant to be called within the transaction that drops them
+     * from the cache.
+     */
+    int deleteMessages(long accountIdentifier, String roomToken) throws SQLException {
+        return deleteMessagesOlderThan(accountIdentifier, roomToken, Integer.MAX_VALUE);
+    }
+
+    private List<Integer> findMessageIds(long accountIdentifier, String roomToken, String query, int limit)
+            throws SQLException {
+        List<Integer> messageIds = new ArrayList<>();
+        String matchExpression = getMatchExpression(query);
+
+        if (matchExpression.isEmpty()) {
+            return messageIds;
+        }
+
+        long startMillis = SystemClock.elapsedRealtime();
+
+        try (Connection connection = databaseSource.getConnection()) {
+            createTableIfNeeded(connection);
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT message_id FROM chat_message_search WHERE chat_message_search MATCH ? " +
+                            "ORDER BY docid DESC LIMIT ?")) {
+                statement.setString(1, matchExpression + " scope:" + getScope(accountIdentifier, roomToken));
+                statement.setInt(2, limit);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        messageIds.add(resultSet.getInt(1));
+                    }
+                }
+            }
+        }
+
+        ApplicationWideMetricsHolder metricsHolder = ApplicationWideMetricsHolder.getInstance();
+        metricsHolder.recordTiming("chat.search_query", SystemClock.elapsedRealtime() - startMillis);
+        metricsHolder.setGauge("chat.search_last_result_count", messageIds.size());
+
+        return messageIds;
+    }
+
+    // a single token, so that the room of a message can be matched through the index as well
+    private String getScope(long accountIdentifier, String roomToken) {
+        return "a" + accountIdentifier + "r" + roomToken.toLowerCase();
+    }
+
+    // every word of the query becomes a prefix match on the body, anything FTS would treat as syntax is dropped
+    private String getMatchExpression(String query) {
+        StringBuilder matchExpression = new StringBuilder();
+
+        for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                if (matchExpression.length() > 0) {
+                    matchExpression.append(' ');
+                }
+
+                matchExpression.append("body:").append(word).append('*');
+            }
+        }
+
+        return matchExpression.toString();
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.nextcloud.talk.utils.database.chat;
+
+import android.util.Log;
+import com.bluelinelabs.logansquare.LoganSquare;
+import com.nextcloud.talk.models.database.ChatMessageCache;
+import com.nextcloud.talk.models.database.ChatMessageCacheEntity;
+import com.nextcloud.talk.models.json.chat.ChatMessage;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import com.nextcloud.talk.utils.singletons.ApplicationWideMetricsHolder;
+import io.reactivex.Observable;
+import io.requery.Persistable;
+import io.requery.reactivex.ReactiveEntityStore;
+import io.requery.reactivex.ReactiveScalar;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ChatMessageStorageUtils {
+    private static final String TAG = "ChatMessageStorageUtils";
+    // the newest messages of a room that are kept, older ones are pulled from the server again
+    private static final int MAX_MESSAGES_PER_ROOM = 1000;
+
+    private ReactiveEntityStore<Persistable> dataStore;
+    private ChatMessageSearchUtils chatMessageSearchUtils;
+
+    ChatMessageStorageUtils(ReactiveEntityStore<Persistable> dataStore, ChatMessageSearchUtils chatMessageSearchUtils) {
+        this.dataStore = dataStore;
+        this.chatMessageSearchUtils = chatMessageSearchUtils;
+    }
+
+    /**
+     * Stores the messages of a room and adds them to the search index.
+     */
+    public void storeMessages(long accountIdentifier, String roomToken, List<ChatMessage> chatMessages) {
+        storeMessages(accountIdentifier, roomToken, chatMessages, false);
+    }
+
+    /**
+     * Stores the newest messages of a room in place of everything cached for it before, for when the
+     * messages in between were skipped and the cache would otherwise have a hole.
+     */
+    public void replaceMessages(long accountIdentifier, String roomToken, List<ChatMessage> chatMessages) {
+        storeMessages(accountIdentifier, roomToken, chatMessages, true);
+    }
+
+    private void storeMessages(long accountIdentifier, String roomToken, List<ChatMessage> chatMessages,
+                               boolean replace) {
+        Observable.fromCallable(() -> {
+            List<ChatMessageCacheEntity> chatMessageCacheEntities = new ArrayList<>();
+            ChatMessageCacheEntity chatMessageCacheEntity;
+            for (ChatMessage chatMessage : chatMessages) {
+                try {
+                    chatMessageCacheEntity = new ChatMessageCacheEntity();
+                    chatMessageCacheEntity.setAccountIdentifier(accountIdentifier);
+                    chatMessageCacheEntity.setRoomToken(roomToken);
+                    chatMessageCacheEntity.setMessageId(chatMessage.getJsonMessageId());
+                    chatMessageCacheEntity.setTimestamp(chatMessage.getTimestamp());
+                    chatMessageCacheEntity.setMessage(LoganSquare.serialize(chatMessage));
+                    chatMessageCacheEntities.add(chatMessageCacheEntity);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to serialize chat message " + chatMessage.getJsonMessageId());
+                }
+            }
+            return chatMessageCacheEntities;
+        })
+                .filter(chatMessageCacheEntities -> chatMessageCacheEntities.size() > 0)
+                // the search index is kept in the same transaction, so it never points at messages that aren't cached
+                .map(chatMessageCacheEntities -> dataStore.toBlocking().runInTransaction(() -> {
+                    if (replace) {
+                        dataStore.delete(ChatMessageCache.class)
+                                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken)))
+                                .get()
+                                .value();
+                        chatMessageSearchUtils.deleteMessages(accountIdentifier, roomToken);
+                    }
+
+                    dataStore.toBlocking().upsert(chatMessageCacheEntities);
+                    chatMessageSearchUtils.writeMessages(accountIdentifier, roomToken, chatMessages);
+                    pruneMessages(accountIdentifier, roomToken);
+                    return chatMessageCacheEntities.size();
+                }))
+                .subscribeOn(MagicSchedulers.disk())
+                .subscribe(count -> {
+                }, throwable -> Log.e(TAG, "Failed to store chat messages"));
+    }
+
+    private void pruneMessages(long accountIdentifier, String roomToken) throws SQLException {
+        ChatMessageCache oldestKeptMessage = dataStore.select(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken)))
+                .orderBy(ChatMessageCacheEntity.MESSAGE_ID.desc())
+                .limit(1)
+                .offset(MAX_MESSAGES_PER_ROOM - 1)
+                .get()
+                .firstOrNull();
+
+        if (oldestKeptMessage == null) {
+            return;
+        }
+
+        int prunedMessages = dataStore.delete(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken))
+                        .and(ChatMessageCacheEntity.MESSAGE_ID.lt(oldestKeptMessage.getMessageId())))
+                .get()
+                .value();
+        chatMessageSearchUtils.deleteMessagesOlderThan(accountIdentifier, roomToken, oldestKeptMessage.getMessageId());
+
+        if (prunedMessages > 0) {
+            ApplicationWideMetricsHolder.getInstance().incrementCounter("chat.cache_pruned_messages", prunedMessages);
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} of the newest cached messages for a room, newest first - the same order
+     * in which the server hands out history.
+     */
+    public Observable<List<ChatMessage>> getMessages(long accountIdentifier, String roomToken, int limit) {
+        return dataStore.select(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken)))
+                .orderBy(ChatMessageCacheEntity.MESSAGE_ID.desc())
+                .limit(limit)
+                .get()
+                .observable()
+                .map(chatMessageCache -> LoganSquare.parse(chatMessageCache.getMessage(), ChatMessage.class))
+                .toList()
+                .toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    /**
+     * Returns up to {@code limit} cached messages of a room that directly follow {@code messageId},
+     * newest first.
+     */
+    public Observable<List<ChatMessage>> getMessagesNewerThan(long accountIdentifier, String roomToken,
+                                                              int messageId, int limit) {
+        return dataStore.select(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken))
+                        .and(ChatMessageCacheEntity.MESSAGE_ID.gt(messageId)))
+                .orderBy(ChatMessageCacheEntity.MESSAGE_ID.asc())
+                .limit(limit)
+                .get()
+                .observable()
+                .map(chatMessageCache -> LoganSquare.parse(chatMessageCache.getMessage(), ChatMessage.class))
+                .toList()
+                .map(chatMessages -> {
+                    Collections.reverse(chatMessages);
+                    return chatMessages;
+                })
+                .toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    /**
+     * Returns up to {@code limit} cached messages of a room that directly follow {@code messageId}, newest
+     * first. Completes without a result if {@code messageId} itself isn't cached (anymore), as the messages
+     * following it may have been pruned along with it.
+     */
+    public Observable<List<ChatMessage>> getMessagesFollowing(long accountIdentifier, String roomToken,
+                                                              int messageId, int limit) {
+        return dataStore.select(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken))
+                        .and(ChatMessageCacheEntity.MESSAGE_ID.gte(messageId)))
+                .orderBy(ChatMessageCacheEntity.MESSAGE_ID.asc())
+                .limit(limit + 1)
+                .get()
+                .observable()
+                .toList()
+                .toObservable()
+                .filter(chatMessageCaches -> chatMessageCaches.size() > 0 &&
+                        chatMessageCaches.get(0).getMessageId() == messageId)
+                .map(chatMessageCaches -> {
+                    List<ChatMessage> chatMessages = new ArrayList<>();
+                    for (int i = chatMessageCaches.size() - 1; i > 0; i--) {
+                        chatMessages.add(LoganSquare.parse(chatMessageCaches.get(i).getMessage(), ChatMessage.class));
+                    }
+                    return chatMessages;
+                })
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    /**
+     * Returns up to {@code limit} cached messages of a room up to and including {@code messageId},
+     * newest first.
+     */
+    public Observable<List<ChatMessage>> getMessagesUpTo(long accountIdentifier, String roomToken, int messageId,
+                                                         int limit) {
+        return dataStore.select(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken))
+                        .and(ChatMessageCacheEntity.MESSAGE_ID.lte(messageId)))
+                .orderBy(ChatMessageCacheEntity.MESSAGE_ID.desc())
+                .limit(limit)
+                .get()
+                .observable()
+                .map(chatMessageCache -> LoganSquare.parse(chatMessageCache.getMessage(), ChatMessage.class))
+                .toList()
+                .toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    /**
+     * Returns the cached messages of a room with the given ids, newest first.
+     */
+    public Observable<List<ChatMessage>> getMessagesWithIds(long accountIdentifier, String roomToken,
+                                                            List<Integer> messageIds) {
+        return dataStore.select(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(ChatMessageCacheEntity.ROOM_TOKEN.eq(roomToken))
+                        .and(ChatMessageCacheEntity.MESSAGE_ID.in(messageIds)))
+                .orderBy(ChatMessageCacheEntity.MESSAGE_ID.desc())
+                .get()
+                .observable()
+                .map(chatMessageCache -> LoganSquare.parse(chatMessageCache.getMessage(), ChatMessage.class))
+                .toList()
+                .toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    public Observable deleteAllEntriesForAccountIdentifier(long accountIdentifier) {
+        ReactiveScalar<Integer> deleteResult = dataStore.delete(ChatMessageCache.class)
+                .where(ChatMessageCacheEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)).get();
+
+        return deleteResult.single().toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.utils.database.contacts;
+
+import com.nextcloud.talk.models.database.DirectoryContact;
+import com.nextcloud.talk.models.database.DirectoryContactEntity;
+import com.nextcloud.talk.models.json.autocomplete.AutocompleteUser;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import io.reactivex.Observable;
+import io.requery.Persistable;
+import io.requery.reactivex.ReactiveEntityStore;
+import io.requery.reactivex.ReactiveScalar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The users and groups of every account, so that people can be picked without asking the server.
+ */
+public class ContactDirectoryStorageUtils {
+    private ReactiveEntityStore<Persistable> dataStore;
+
+    ContactDirectoryStorageUtils(ReactiveEntityStore<Persistable> dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    private static String getKey(String source, String userId) {
+        return source + "\n" + userId;
+    }
+
+    /**
+     * Emits the stored contacts of the account, empty if it was never synced.
+     */
+    public Observable<List<AutocompleteUser>> getContacts(long accountIdentifier) {
+        return dataStore.select(DirectoryContact.class)
+                .where(DirectoryContactEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier))
+                .get()
+                .observable()
+                .map(directoryContact -> {
+                    AutocompleteUser autocompleteUser = new AutocompleteUser();
+                    autocompleteUser.setId(directoryContact.getUserId());
+                    autocompleteUser.setLabel(directoryContact.getDisplayName());
+                    autocompleteUser.setSource(directoryContact.getSource());
+                    return autocompleteUser;
+                })
+                .toList()
+                .toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    /**
+     * @return when the account was synced completely the last time, in milliseconds, or 0 if never
+     */
+    public long getLastSyncTime(long accountIdentifier) {
+        DirectoryContact directoryContact = dataStore.select(DirectoryContact.class)
+                .where(DirectoryContactEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier))
+                .orderBy(DirectoryContactEntity.SYNCED_AT.desc())
+                .limit(1)
+                .get()
+                .firstOrNull();
+
+        return directoryContact != null ? directoryContact.getSyncedAt() : 0;
+    }
+
+    /**
+     * Brings the stored contacts of the account in line with the list just fetched. Only the contacts that
+     * are new, changed or gone are written.
+     *
+     * @param isComplete whether the list holds all contacts of the account; only then are the stored
+     *                   contacts that are missing from it removed
+     * @return the number of contacts that were added, changed or removed
+     */
+    public int syncContacts(long accountIdentifier, List<AutocompleteUser> autocompleteUsers, boolean isComplete) {
+        Map<String, DirectoryContactEntity> storedContacts = new HashMap<>();
+        for (DirectoryContact directoryContact : dataStore.select(DirectoryContact.class)
+                .where(DirectoryContactEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier))
+                .get()
+                .toList()) {
+            storedContacts.put(getKey(directoryContact.getSource(), directoryContact.getUserId()),
+                    (DirectoryContactEntity) directoryContact);
+        }
+
+        long now = System.currentTimeMillis();
+        List<DirectoryContactEntity> addedContacts = new ArrayList<>();
+        List<DirectoryContactEntity> changedContacts = new ArrayList<>();
+
+        for (AutocompleteUser autocompleteUser : autocompleteUsers) {
+            DirectoryContactEntity directoryContactEntity =
+                    storedContacts.remove(getKey(autocompleteUser.getSource(), autocompleteUser.getId()));
+
+            if (directoryContactEntity == null) {
+                directoryContactEntity = new DirectoryContactEntity();
+                directoryContactEntity.setAccountIdentifier(accountIdentifier);
+                directoryContactEntity.setUserId(autocompleteUser.getId());
+                directoryContactEntity.setSource(autocompleteUser.getSource());
+                directoryContactEntity.setDisplayName(autocompleteUser.getLabel());
+                directoryContactEntity.setSyncedAt(now);
+                addedContacts.add(directoryContactEntity);
+            } else if (autocompleteUser.getLabel() != null &&
+                    !autocompleteUser.getLabel().equals(directoryContactEntity.getDisplayName())) {
+                directoryContactEntity.setDisplayName(autocompleteUser.getLabel());
+                changedContacts.add(directoryContactEntity);
+            }
+        }
+
+        if (!addedContacts.isEmpty()) {
+            dataStore.insert(addedContacts).blockingGet();
+        }
+
+        if (!changedContacts.isEmpty()) {
+            dataStore.update(changedContacts).blockingGet();
+        }
+
+        if (!isComplete) {
+            storedContacts.clear();
+        }
+
+        // whatever was not seen again is gone from the server
+        if (!storedContacts.isEmpty()) {
+            dataStore.delete(storedContacts.values()).blockingAwait();
+        }
+
+        dataStore.update(DirectoryContact.class)
+                .set(DirectoryContactEntity.SYNCED_AT, now)
+                .where(DirectoryContactEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier))
+                .get()
+                .value();
+
+        return addedContacts.size() + changedContacts.size() + storedContacts.size();
+    }
+
+    public Observable deleteAllEntriesForAccountIdentifier(long accountIdentifier) {
+        ReactiveScalar<Integer> deleteResult = dataStore.delete(DirectoryContact.class)
+                .where(DirectoryContactEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)).get();
+
+        return deleteResult.single().toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.utils.database.conversations;
+
+import android.util.Log;
+import com.bluelinelabs.logansquare.LoganSquare;
+import com.nextcloud.talk.models.database.ConversationListSnapshot;
+import com.nextcloud.talk.models.database.ConversationListSnapshotEntity;
+import com.nextcloud.talk.models.json.rooms.Conversation;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import io.reactivex.Observable;
+import io.requery.Persistable;
+import io.requery.reactivex.ReactiveEntityStore;
+import io.requery.reactivex.ReactiveScalar;
+
+import java.util.List;
+
+/**
+ * Keeps the last conversation list seen for every account, so that it can be shown right away on the next
+ * start while the list is fetched again.
+ */
+public class ConversationListStorageUtils {
+    private static final String TAG = "ConversationListStorage";
+
+    private ReactiveEntityStore<Persistable> dataStore;
+
+    ConversationListStorageUtils(ReactiveEntityStore<Persistable> dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    public void storeConversations(long accountIdentifier, List<Conversation> conversations) {
+        Observable.fromCallable(() -> {
+            ConversationListSnapshotEntity conversationListSnapshotEntity = new ConversationListSnapshotEntity();
+            conversationListSnapshotEntity.setAccountIdentifier(accountIdentifier);
+            conversationListSnapshotEntity.setTimestamp(System.currentTimeMillis());
+            conversationListSnapshotEntity.setConversations(LoganSquare.serialize(conversations, Conversation.class));
+            return conversationListSnapshotEntity;
+        })
+                .flatMapSingle(conversationListSnapshotEntity -> dataStore.upsert(conversationListSnapshotEntity))
+                .subscribeOn(MagicSchedulers.disk())
+                .subscribe(conversationListSnapshotEntity -> {
+                }, throwable -> Log.e(TAG, "Failed to store conversation list"));
+    }
+
+    /**
+     * Emits the last stored conversation list of the account, or nothing if there is none.
+     */
+    public Observable<List<Conversation>> getConversations(long accountIdentifier) {
+        return dataStore.select(ConversationListSnapshot.class)
+                .where(ConversationListSnapshotEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier))
+                .limit(1)
+                .get()
+                .observable()
+                .map(conversationListSnapshot -> LoganSquare.parseList(conversationListSnapshot.getConversations(),
+                        Conversation.class))
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    public Observable deleteAllEntriesForAccountIdentifier(long accountIdentifier) {
+        ReactiveScalar<Integer> deleteResult = dataStore.delete(ConversationListSnapshot.class)
+                .where(ConversationListSnapshotEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)).get();
+
+        return deleteResult.single().toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.utils.database.outbox;
+
+import com.nextcloud.talk.models.database.OutgoingChatMessage;
+import com.nextcloud.talk.models.database.OutgoingChatMessageEntity;
+import com.nextcloud.talk.utils.MagicSchedulers;
+import io.reactivex.Observable;
+import io.requery.Persistable;
+import io.requery.reactivex.ReactiveEntityStore;
+import io.requery.reactivex.ReactiveScalar;
+
+import java.util.List;
+
+public class OutgoingMessageStorageUtils {
+    private ReactiveEntityStore<Persistable> dataStore;
+
+    OutgoingMessageStorageUtils(ReactiveEntityStore<Persistable> dataStore) {
+        this.dataStore = dataStore;
+    }
+
+    public Observable<OutgoingChatMessageEntity> storeMessage(long accountIdentifier, String roomToken,
+                                                              String message, String actorDisplayName) {
+        OutgoingChatMessageEntity outgoingChatMessageEntity = new OutgoingChatMessageEntity();
+        outgoingChatMessageEntity.setAccountIdentifier(accountIdentifier);
+        outgoingChatMessageEntity.setRoomToken(roomToken);
+        outgoingChatMessageEntity.setMessage(message);
+        outgoingChatMessageEntity.setActorDisplayName(actorDisplayName);
+        outgoingChatMessageEntity.setTimestamp(System.currentTimeMillis() / 1000L);
+
+        return dataStore.insert(outgoingChatMessageEntity)
+                .toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    /**
+     * Returns the messages of a room that still have to be sent, oldest first.
+     */
+    public Observable<List<OutgoingChatMessage>> getMessagesForRoom(long accountIdentifier, String roomToken) {
+        return dataStore.select(OutgoingChatMessage.class)
+                .where(OutgoingChatMessageEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)
+                        .and(OutgoingChatMessageEntity.ROOM_TOKEN.eq(roomToken)))
+                .orderBy(OutgoingChatMessageEntity.ID.asc())
+                .get()
+                .observable()
+                .toList()
+                .toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+
+    /**
+     * Returns all messages of an account that still have to be sent, oldest first.
+     */
+    public List<OutgoingChatMessage> getMessagesForAccount(long accountIdentifier) {
+        return dataStore.select(OutgoingChatMessage.class)
+                .where(OutgoingChatMessageEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier))
+                .orderBy(OutgoingChatMessageEntity.ID.asc())
+                .get()
+                .toList();
+    }
+
+    public void deleteMessage(OutgoingChatMessage outgoingChatMessage) {
+        dataStore.delete(outgoingChatMessage).blockingAwait();
+    }
+
+    public void markDeliveryUncertain(OutgoingChatMessage outgoingChatMessage) {
+        dataStore.update(OutgoingChatMessage.class)
+                .set(OutgoingChatMessageEntity.DELIVERY_UNCERTAIN, true)
+                .where(OutgoingChatMessageEntity.ID.eq(outgoingChatMessage.getId()))
+                .get()
+                .value();
+    }
+
+    public Observable deleteAllEntriesForAccountIdentifier(long accountIdentifier) {
+        ReactiveScalar<Integer> deleteResult = dataStore.delete(OutgoingChatMessage.class)
+                .where(OutgoingChatMessageEntity.ACCOUNT_IDENTIFIER.eq(accountIdentifier)).get();
+
+        return deleteResult.single().toObservable()
+                .subscribeOn(MagicSchedulers.disk());
+    }
+}
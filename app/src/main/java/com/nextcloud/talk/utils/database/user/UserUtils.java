@@ -24,10 +24,10 @@ import android.text.TextUtils;
 import androidx.annotation.Nullable;
 import com.nextcloud.talk.models.database.User;
 import com.nextcloud.talk.models.database.UserEntity;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.schedulers.Schedulers;
 import io.requery.Persistable;
 import io.requery.query.Result;
 import io.requery.reactivex.ReactiveEntityStore;
@@ -90,7 +90,7 @@ public class UserUtils {
         UserEntity user = (UserEntity) findUserQueryResult.firstOrNull();
 
         return dataStore.delete(user)
-                .subscribeOn(Schedulers.newThread())
+                .subscribeOn(MagicSchedulers.disk())
                 .observeOn(AndroidSchedulers.mainThread());
 
     }
@@ -101,7 +101,7 @@ public class UserUtils {
         UserEntity user = (UserEntity) findUserQueryResult.firstOrNull();
 
         return dataStore.delete(user)
-                .subscribeOn(Schedulers.newThread());
+                .subscribeOn(MagicSchedulers.disk());
 
     }
 
@@ -257,7 +257,7 @@ public class UserUtils {
 
         return dataStore.upsert(user)
                 .toObservable()
-                .subscribeOn(Schedulers.newThread());
+                .subscribeOn(MagicSchedulers.disk());
     }
 
 }
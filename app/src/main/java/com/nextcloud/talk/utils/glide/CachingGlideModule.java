@@ -31,15 +31,18 @@ import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
 import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.module.AppGlideModule;
 import com.nextcloud.talk.application.NextcloudTalkApplication;
+import com.nextcloud.talk.dagger.modules.RestModule;
 import okhttp3.OkHttpClient;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.io.InputStream;
 
 @AutoInjector(NextcloudTalkApplication.class)
 @GlideModule
 public class CachingGlideModule extends AppGlideModule {
     @Inject
+    @Named(RestModule.IMAGES)
     OkHttpClient okHttpClient;
 
     @Override
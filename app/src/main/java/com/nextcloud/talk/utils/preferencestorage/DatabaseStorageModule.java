@@ -28,11 +28,11 @@ import com.nextcloud.talk.models.database.ArbitraryStorageEntity;
 import com.nextcloud.talk.models.database.UserEntity;
 import com.nextcloud.talk.models.json.generic.GenericOverall;
 import com.nextcloud.talk.utils.ApiUtils;
+import com.nextcloud.talk.utils.MagicSchedulers;
 import com.nextcloud.talk.utils.database.arbitrarystorage.ArbitraryStorageUtils;
 import com.yarolegovich.mp.io.StorageModule;
 import io.reactivex.Observer;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
 
 import javax.inject.Inject;
 import java.util.Set;
@@ -86,7 +86,7 @@ public class DatabaseStorageModule implements StorageModule {
                 ncApi.setNotificationLevel(ApiUtils.getCredentials(conversationUser.getUsername(), conversationUser.getToken()),
                         ApiUtils.getUrlForSettingNotificationlevel(conversationUser.getBaseUrl(), conversationToken),
                         intValue)
-                        .subscribeOn(Schedulers.newThread())
+                        .subscribeOn(MagicSchedulers.network())
                         .subscribe(new Observer<GenericOverall>() {
                             @Override
                             public void onSubscribe(Disposable d) {
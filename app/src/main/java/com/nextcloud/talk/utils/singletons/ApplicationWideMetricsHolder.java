@@ -0,0 +1,98 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.utils.singletons;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory gauges, counters and timings collected while the app is running, keyed by a dotted name
+ * such as "chat.resident_messages". Nothing is persisted or sent anywhere.
+ */
+public class ApplicationWideMetricsHolder {
+    private static final ApplicationWideMetricsHolder holder = new ApplicationWideMetricsHolder();
+    private final Map<String, Long> gauges = new TreeMap<>();
+    private final Map<String, Long> counters = new TreeMap<>();
+    private final Map<String, Timing> timings = new TreeMap<>();
+
+    public static ApplicationWideMetricsHolder getInstance() {
+        return holder;
+    }
+
+    public synchronized void setGauge(String name, long value) {
+        gauges.put(name, value);
+    }
+
+    public synchronized void incrementCounter(String name, long delta) {
+        Long value = counters.get(name);
+        counters.put(name, value == null ? delta : value + delta);
+    }
+
+    public synchronized void recordTiming(String name, long millis) {
+        Timing timing = timings.get(name);
+        if (timing == null) {
+            timing = new Timing();
+            timings.put(name, timing);
+        }
+
+        timing.count++;
+        timing.totalMillis += millis;
+        timing.maxMillis = Math.max(timing.maxMillis, millis);
+    }
+
+    /**
+     * Returns a readable line for every metric, sorted by name.
+     */
+    public synchronized Map<String, String> getSnapshot() {
+        Map<String, String> snapshot = new TreeMap<>();
+
+        for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+            snapshot.put(gauge.getKey(), Long.toString(gauge.getValue()));
+        }
+
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            snapshot.put(counter.getKey(), Long.toString(counter.getValue()));
+        }
+
+        for (Map.Entry<String, Timing> timing : timings.entrySet()) {
+            snapshot.put(timing.getKey(), timing.getValue().toString());
+        }
+
+        return snapshot;
+    }
+
+    public synchronized void clear() {
+        gauges.clear();
+        counters.clear();
+        timings.clear();
+    }
+
+    private static class Timing {
+        private long count;
+        private long totalMillis;
+        private long maxMillis;
+
+        @Override
+        public String toString() {
+            return "n=" + count + " avg=" + (totalMillis / count) + "ms max=" + maxMillis + "ms";
+        }
+    }
+}
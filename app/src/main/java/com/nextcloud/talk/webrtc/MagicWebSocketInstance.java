@@ -64,11 +64,15 @@ public class MagicWebSocketInstance extends WebSocketListener {
     private String connectionUrl;
 
     private String currentRoomToken;
+    // the backend session the room was joined with last, the chat and a call join with different ones
+    private String currentRoomSession;
     private boolean isPermanentlyClosed = false;
     private int restartCount = 0;
 
     private HashMap<String, String> displayNameHashMap;
     private HashMap<String, String> userIdSesssionHashMap;
+    // only the newest participants update of a room is kept until somebody picks it up
+    private HashMap<String, Integer> participantsUpdateJobIds;
 
     MagicWebSocketInstance(UserEntity conversationUser, String connectionUrl, String webSocketTicket) {
         NextcloudTalkApplication.getSharedApplication().getComponentApplication().inject(this);
@@ -79,6 +83,7 @@ public class MagicWebSocketInstance extends WebSocketListener {
         this.webSocketConnectionHelper = new WebSocketConnectionHelper();
         this.displayNameHashMap = new HashMap<>();
         this.userIdSesssionHashMap = new HashMap<>();
+        this.participantsUpdateJobIds = new HashMap<>();
         magicMap = new MagicMap();
 
         restartWebSocket();
@@ -117,7 +122,7 @@ public class MagicWebSocketInstance extends WebSocketListener {
                     sessionId = helloResponseWebSocketMessage.getHelloResponseWebSocketMessage().getSessionId();
                     hasMCU = helloResponseWebSocketMessage.getHelloResponseWebSocketMessage().serverHasMCUSupport();
                     connected = true;
-                    eventBus.post(new WebSocketCommunicationEvent("hello", null));
+                    postEvent("hello", new HashMap<>());
                     break;
                 case "error":
                     ErrorOverallWebSocketMessage errorOverallWebSocketMessage = LoganSquare.parse(text, ErrorOverallWebSocketMessage.class);
@@ -135,7 +140,7 @@ public class MagicWebSocketInstance extends WebSocketListener {
                     if (joinedRoomOverallWebSocketMessage.getRoomWebSocketMessage().getRoomPropertiesWebSocketMessage() != null && !TextUtils.isEmpty(currentRoomToken)) {
                         HashMap<String, String> joinRoomHashMap = new HashMap<>();
                         joinRoomHashMap.put("roomToken", currentRoomToken);
-                        eventBus.post(new WebSocketCommunicationEvent("roomJoined", joinRoomHashMap));
+                        postEvent("roomJoined", joinRoomHashMap);
                     } else {
                         userIdSesssionHashMap = new HashMap<>();
                         displayNameHashMap = new HashMap<>();
@@ -158,7 +163,7 @@ public class MagicWebSocketInstance extends WebSocketListener {
                                                 if (shouldRefreshChat) {
                                                     HashMap<String, String> refreshChatHashMap = new HashMap<>();
                                                     refreshChatHashMap.put("roomToken", (String) eventOverallWebSocketMessage.getEventMap().get("roomid"));
-                                                    eventBus.post(new WebSocketCommunicationEvent("refreshChat", refreshChatHashMap));
+                                                    postEvent("refreshChat", refreshChatHashMap);
                                                 }
                                             }
                                         }
@@ -178,9 +183,26 @@ public class MagicWebSocketInstance extends WebSocketListener {
                                 if (eventOverallWebSocketMessage.getEventMap().get("type").equals("update")) {
                                     HashMap<String, String> refreshChatHashMap = new HashMap<>();
                                     HashMap<String, Object> updateEventMap = (HashMap<String, Object>) eventOverallWebSocketMessage.getEventMap().get("update");
-                                    refreshChatHashMap.put("roomToken", (String) updateEventMap.get("roomid"));
-                                    refreshChatHashMap.put("jobId", Integer.toString(magicMap.add(updateEventMap.get("users"))));
-                                    eventBus.post(new WebSocketCommunicationEvent("participantsUpdate", refreshChatHashMap));
+                                    String updatedRoomToken = (String) updateEventMap.get("roomid");
+                                    int jobId = magicMap.add(updateEventMap.get("users"));
+                                    Integer previousJobId = participantsUpdateJobIds.put(updatedRoomToken, jobId);
+                                    if (previousJobId != null && previousJobId != jobId) {
+                                        magicMap.remove(previousJobId);
+                                    }
+                                    refreshChatHashMap.put("roomToken", updatedRoomToken);
+                                    refreshChatHashMap.put("jobId", Integer.toString(jobId));
+                                    postEvent("participantsUpdate", refreshChatHashMap);
+                                }
+                                break;
+                            case "roomlist":
+                                // "invite", "disinvite" or "update", each carrying the room it is about
+                                String roomListEventType = (String) eventOverallWebSocketMessage.getEventMap().get("type");
+                                Map<String, Object> roomListEventMap = (Map<String, Object>) eventOverallWebSocketMessage.getEventMap().get(roomListEventType);
+                                if (roomListEventMap != null && roomListEventMap.containsKey("roomid")) {
+                                    HashMap<String, String> roomListHashMap = new HashMap<>();
+                                    roomListHashMap.put("type", roomListEventType);
+                                    roomListHashMap.put("roomToken", (String) roomListEventMap.get("roomid"));
+                                    postEvent("roomListUpdate", roomListHashMap);
                                 }
                                 break;
                         }
@@ -196,7 +218,7 @@ public class MagicWebSocketInstance extends WebSocketListener {
                     if (!TextUtils.isEmpty(ncSignalingMessage.getFrom())) {
                         HashMap<String, String> messageHashMap = new HashMap<>();
                         messageHashMap.put("jobId", Integer.toString(magicMap.add(ncSignalingMessage)));
-                        eventBus.post(new WebSocketCommunicationEvent("signalingMessage", messageHashMap));
+                        postEvent("signalingMessage", messageHashMap);
                     }
                     break;
                 case "bye":
@@ -210,6 +232,12 @@ public class MagicWebSocketInstance extends WebSocketListener {
         }
     }
 
+    // every account has its own WebSocket, the listeners tell them apart by the account an event is about
+    private void postEvent(String type, HashMap<String, String> hashMap) {
+        hashMap.put("internalUserId", Long.toString(conversationUser.getId()));
+        eventBus.post(new WebSocketCommunicationEvent(type, hashMap));
+    }
+
     @Override
     public void onMessage(WebSocket webSocket, ByteString bytes) {
         Log.d(TAG, "Receiving bytes : " + bytes.hex());
@@ -240,11 +268,17 @@ public class MagicWebSocketInstance extends WebSocketListener {
         return hasMCU;
     }
 
+    /**
+     * Joins the room with the given backend session, or leaves the current room if the token is empty. A
+     * room that is joined already is joined again if the session differs, so that a call can take over the
+     * room from the chat.
+     */
     public void joinRoomWithRoomTokenAndSession(String roomToken, String normalBackendSession) {
-        if (!roomToken.equals(currentRoomToken)) {
+        if (!roomToken.equals(currentRoomToken) || !TextUtils.equals(normalBackendSession, currentRoomSession)) {
             if (isConnected()) {
                 try {
                     webSocket.send(LoganSquare.serialize(webSocketConnectionHelper.getAssembledJoinOrLeaveRoomModel(roomToken, normalBackendSession)));
+                    currentRoomSession = normalBackendSession;
                 } catch (IOException e) {
                     Log.e(TAG, "Failed to serialize room overall websocket message");
                 }
@@ -252,7 +286,7 @@ public class MagicWebSocketInstance extends WebSocketListener {
         } else {
             HashMap<String, String> joinRoomHashMap = new HashMap<>();
             joinRoomHashMap.put("roomToken", currentRoomToken);
-            eventBus.post(new WebSocketCommunicationEvent("roomJoined", joinRoomHashMap));
+            postEvent("roomJoined", joinRoomHashMap);
         }
     }
 
@@ -299,6 +333,14 @@ public class MagicWebSocketInstance extends WebSocketListener {
         return connected;
     }
 
+    public String getCurrentRoomToken() {
+        return currentRoomToken;
+    }
+
+    public String getCurrentRoomSession() {
+        return currentRoomSession;
+    }
+
     boolean isPermanentlyClosed() {
         return isPermanentlyClosed;
     }
@@ -0,0 +1,123 @@
+/*
+ * Nextcloud Talk application
+ *
+ * @author Mario Danic
+ * Copyright (C) 2017-2018 Mario Danic <mario@lovelyhq.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.nextcloud.talk.chat;
+
+import com.nextcloud.talk.models.RenderedRichMessage;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for {@link RichObjectTemplateRenderer}.
+ */
+public class RichObjectTemplateRendererTest {
+
+    private static HashMap<String, String> parameter(String type, String id, String name) {
+        HashMap<String, String> parameter = new HashMap<>();
+        parameter.put("type", type);
+        parameter.put("id", id);
+        parameter.put("name", name);
+        return parameter;
+    }
+
+    private static void assertMention(RenderedRichMessage.MentionRange mentionRange, int start, int end,
+                                      String id, String type) {
+        assertEquals(start, mentionRange.getStart());
+        assertEquals(end, mentionRange.getEnd());
+        assertEquals(id, mentionRange.getId());
+        assertEquals(type, mentionRange.getType());
+    }
+
+    @Test
+    public void rendersUserMentionWithRange() throws Exception {
+        HashMap<String, HashMap<String, String>> parameters = new HashMap<>();
+        parameters.put("mention-user1", parameter("user", "alice", "Alice"));
+
+        RenderedRichMessage renderedRichMessage = RichObjectTemplateRenderer.render("Hi {mention-user1}!", parameters);
+
+        assertEquals("Hi @Alice!", renderedRichMessage.getText());
+        assertEquals(1, renderedRichMessage.getMentionRanges().size());
+        assertMention(renderedRichMessage.getMentionRanges().get(0), 3, 9, "alice", "user");
+    }
+
+    @Test
+    public void mentionRangesFollowEarlierSubstitutions() throws Exception {
+        HashMap<String, HashMap<String, String>> parameters = new HashMap<>();
+        parameters.put("file", parameter("file", "42", "notes.txt"));
+        parameters.put("mention-user1", parameter("user", "bob", "Bob Builder"));
+        parameters.put("mention-guest1", parameter("guest", "guest/abc", "Carol"));
+
+        RenderedRichMessage renderedRichMessage = RichObjectTemplateRenderer.render(
+                "{file} for {mention-user1} and {mention-guest1}", parameters);
+
+        String text = renderedRichMessage.getText();
+        assertEquals("notes.txt for @Bob Builder and @Carol", text);
+
+        List<RenderedRichMessage.MentionRange> mentionRanges = renderedRichMessage.getMentionRanges();
+        assertEquals(2, mentionRanges.size());
+        assertMention(mentionRanges.get(0), 14, 26, "bob", "user");
+        assertMention(mentionRanges.get(1), 31, 37, "guest/abc", "guest");
+        assertEquals("@Bob Builder", text.substring(mentionRanges.get(0).getStart(), mentionRanges.get(0).getEnd()));
+        assertEquals("@Carol", text.substring(mentionRanges.get(1).getStart(), mentionRanges.get(1).getEnd()));
+    }
+
+    @Test
+    public void rendersRepeatedPlaceholders() throws Exception {
+        HashMap<String, HashMap<String, String>> parameters = new HashMap<>();
+        parameters.put("actor", parameter("user", "alice", "Alice"));
+
+        RenderedRichMessage renderedRichMessage = RichObjectTemplateRenderer.render("{actor} and {actor}", parameters);
+
+        assertEquals("@Alice and @Alice", renderedRichMessage.getText());
+        assertEquals(2, renderedRichMessage.getMentionRanges().size());
+        assertMention(renderedRichMessage.getMentionRanges().get(0), 0, 6, "alice", "user");
+        assertMention(renderedRichMessage.getMentionRanges().get(1), 11, 17, "alice", "user");
+    }
+
+    @Test
+    public void leavesUnknownPlaceholdersUntouched() throws Exception {
+        HashMap<String, HashMap<String, String>> parameters = new HashMap<>();
+        parameters.put("call", parameter("call", "abc", "Weekly"));
+        parameters.put("actor", parameter("user", "alice", "Alice"));
+
+        RenderedRichMessage renderedRichMessage = RichObjectTemplateRenderer.render(
+                "{ {missing} {call} {actor} {", parameters);
+
+        assertEquals("{ {missing} {call} @Alice {", renderedRichMessage.getText());
+        assertEquals(1, renderedRichMessage.getMentionRanges().size());
+        assertMention(renderedRichMessage.getMentionRanges().get(0), 19, 25, "alice", "user");
+    }
+
+    @Test
+    public void returnsTemplateWhenThereIsNothingToRender() throws Exception {
+        HashMap<String, HashMap<String, String>> parameters = new HashMap<>();
+        parameters.put("actor", parameter("user", "alice", "Alice"));
+
+        assertEquals("plain text", RichObjectTemplateRenderer.render("plain text", parameters).getText());
+        assertEquals("{actor}", RichObjectTemplateRenderer.render("{actor}", null).getText());
+        assertEquals("{actor}", RichObjectTemplateRenderer.render("{actor}", new HashMap<>()).getText());
+        assertNull(RichObjectTemplateRenderer.render(null, parameters).getText());
+        assertTrue(RichObjectTemplateRenderer.render("plain text", parameters).getMentionRanges().isEmpty());
+    }
+}